@@ -0,0 +1,142 @@
+package co.dvchain.trade.websocket;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import co.dvchain.trade.clientmessages.Clientmessages.ClientMessage;
+import co.dvchain.trade.clientmessages.Clientmessages.LevelData;
+import co.dvchain.trade.clientmessages.Clientmessages.OrderCancelled;
+import co.dvchain.trade.clientmessages.Clientmessages.OrderFilled;
+import co.dvchain.trade.clientmessages.Clientmessages.OrderOpened;
+import co.dvchain.trade.clientmessages.Clientmessages.PricesData;
+
+/**
+ * Delivers only the newest level and price update per market to a delegate that
+ * may fall behind the feed. Updates that are replaced before the delegate gets
+ * to them are dropped and counted per market, so pending work never exceeds one
+ * book and one price per market. Raw messages and order notifications are passed
+ * through on the calling thread.
+ */
+public class ConflatingListener implements WebsocketListener {
+    private static final Logger logger = Logger.getLogger(ConflatingListener.class.getName());
+
+    private final WebsocketListener delegate;
+    private final ConcurrentHashMap<String, MarketSlot> slots = new ConcurrentHashMap<>();
+    private final BlockingQueue<MarketSlot> pending = new LinkedBlockingQueue<>();
+    private final Thread drainer;
+    private volatile boolean running = true;
+
+    public ConflatingListener(WebsocketListener delegate) {
+        this.delegate = delegate;
+        this.drainer = new Thread(this::drain, "websocket-conflation");
+        this.drainer.setDaemon(true);
+        this.drainer.start();
+    }
+
+    @Override
+    public void onLevelUpdate(LevelData levelData) {
+        MarketSlot slot = slot(levelData.getMarket());
+        if (slot.level.getAndSet(levelData) != null) {
+            slot.droppedLevels.incrementAndGet();
+        }
+        schedule(slot);
+    }
+
+    @Override
+    public void onPriceUpdate(PricesData pricesData) {
+        MarketSlot slot = slot(pricesData.getMarket());
+        if (slot.prices.getAndSet(pricesData) != null) {
+            slot.droppedPrices.incrementAndGet();
+        }
+        schedule(slot);
+    }
+
+    @Override
+    public void onClientMessage(ClientMessage message) {
+        delegate.onClientMessage(message);
+    }
+
+    @Override
+    public void onOrderFill(OrderFilled orderFilled) {
+        delegate.onOrderFill(orderFilled);
+    }
+
+    @Override
+    public void onOrderCancel(OrderCancelled orderCancelled) {
+        delegate.onOrderCancel(orderCancelled);
+    }
+
+    @Override
+    public void onOrderOpened(OrderOpened orderOpened) {
+        delegate.onOrderOpened(orderOpened);
+    }
+
+    public long getDroppedLevelUpdates(String market) {
+        MarketSlot slot = slots.get(market);
+        return slot != null ? slot.droppedLevels.get() : 0;
+    }
+
+    public long getDroppedPriceUpdates(String market) {
+        MarketSlot slot = slots.get(market);
+        return slot != null ? slot.droppedPrices.get() : 0;
+    }
+
+    public void stop() {
+        running = false;
+        drainer.interrupt();
+    }
+
+    private MarketSlot slot(String market) {
+        MarketSlot slot = slots.get(market);
+        if (slot == null) {
+            slot = slots.computeIfAbsent(market, key -> new MarketSlot());
+        }
+        return slot;
+    }
+
+    private void schedule(MarketSlot slot) {
+        if (slot.queued.compareAndSet(false, true)) {
+            pending.offer(slot);
+        }
+    }
+
+    private void drain() {
+        while (running) {
+            MarketSlot slot;
+            try {
+                slot = pending.take();
+            } catch (InterruptedException e) {
+                return;
+            }
+            // Clear the flag before taking the values, an update racing with us is
+            // either taken now or queues the market again.
+            slot.queued.set(false);
+            LevelData levelData = slot.level.getAndSet(null);
+            PricesData pricesData = slot.prices.getAndSet(null);
+            try {
+                if (levelData != null) {
+                    delegate.onLevelUpdate(levelData);
+                }
+                if (pricesData != null) {
+                    delegate.onPriceUpdate(pricesData);
+                }
+            } catch (Exception e) {
+                logger.log(Level.WARNING, "Conflated listener failed", e);
+            }
+        }
+    }
+
+    private static final class MarketSlot {
+        final AtomicReference<LevelData> level = new AtomicReference<>();
+        final AtomicReference<PricesData> prices = new AtomicReference<>();
+        final AtomicBoolean queued = new AtomicBoolean();
+        final AtomicLong droppedLevels = new AtomicLong();
+        final AtomicLong droppedPrices = new AtomicLong();
+    }
+}
@@ -0,0 +1,15 @@
+package co.dvchain.trade.websocket;
+
+/**
+ * Lifecycle of a {@link WebsocketClient} connection. A client only leaves
+ * {@link #DISCONNECTED} through {@code connect()} and only returns to it
+ * through {@code disconnect()}; any other loss of the socket goes through
+ * {@link #BACKOFF} before the next {@link #CONNECTING}.
+ */
+public enum ConnectionState {
+    DISCONNECTED,
+    CONNECTING,
+    OPEN,
+    CLOSING,
+    BACKOFF
+}
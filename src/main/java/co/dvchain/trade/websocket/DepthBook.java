@@ -0,0 +1,138 @@
+package co.dvchain.trade.websocket;
+
+import co.dvchain.trade.clientmessages.Clientmessages.Level;
+import co.dvchain.trade.clientmessages.Clientmessages.LevelData;
+import co.dvchain.trade.clientmessages.Clientmessages.OrderSide;
+
+/**
+ * Size tiers of one {@link LevelData}, built once per quote so that sizing
+ * questions are answered by a binary search instead of a walk over the levels.
+ * Each level is a tier: a quote for any quantity up to its {@code max_quantity}
+ * at its price, so a whole order fills at the price of the first level large
+ * enough for it; quantities are not summed across levels. A buy is priced at
+ * the levels' {@code buy_price}s, a sell at their {@code sell_price}s. Each
+ * side ends at its first level without a positive price or quantity, so the two
+ * sides can differ in depth. Immutable, so it can be shared between threads
+ * freely.
+ */
+public final class DepthBook {
+    private final LevelData levelData;
+    private final Side bids;
+    private final Side asks;
+
+    private DepthBook(LevelData levelData, Side bids, Side asks) {
+        this.levelData = levelData;
+        this.bids = bids;
+        this.asks = asks;
+    }
+
+    public static DepthBook of(LevelData levelData) {
+        return new DepthBook(levelData, new Side(levelData, false), new Side(levelData, true));
+    }
+
+    /** Whether this is the depth of that very {@code LevelData} instance. */
+    boolean isOf(LevelData levelData) {
+        return this.levelData == levelData;
+    }
+
+    public String getMarket() {
+        return levelData.getMarket();
+    }
+
+    public long getLastUpdate() {
+        return levelData.getLastUpdate();
+    }
+
+    /** The largest quantity the side that fills an order of {@code side} is quoted for. */
+    public double depth(OrderSide side) {
+        return book(side).largest();
+    }
+
+    /**
+     * The price of the first level quoted for at least {@code quantity}, the
+     * price the whole order fills at, or NaN if no level is that large.
+     */
+    public double priceForQuantity(OrderSide side, double quantity) {
+        Side book = book(side);
+        int level = book.levelOf(quantity);
+        return level < 0 ? Double.NaN : book.prices[level];
+    }
+
+    /** Best bid and ask averaged, or NaN if either side is empty. */
+    public double mid() {
+        if (bids.depth == 0 || asks.depth == 0) {
+            return Double.NaN;
+        }
+        return (bids.prices[0] + asks.prices[0]) / 2;
+    }
+
+    /**
+     * What buying and then selling {@code quantity} costs per unit: the buy
+     * price of the first tier large enough minus the sell price of the first
+     * tier large enough, or NaN if either side has no tier that large.
+     */
+    public double spread(double quantity) {
+        return priceForQuantity(OrderSide.Buy, quantity) - priceForQuantity(OrderSide.Sell, quantity);
+    }
+
+    private Side book(OrderSide side) {
+        switch (side) {
+            case Buy:
+                return asks;
+            case Sell:
+                return bids;
+            default:
+                throw new IllegalArgumentException("unknown side " + side);
+        }
+    }
+
+    /** Tier prices, best level first, with the largest quantity quoted up to each. */
+    private static final class Side {
+        private final int depth;
+        private final double[] prices;
+        /** The running maximum of quantities, so tiers quoted out of size order are still searched in order. */
+        private final double[] largestQuantities;
+
+        Side(LevelData levelData, boolean asks) {
+            int count = levelData.getLevelsCount();
+            double[] prices = new double[count];
+            double[] largestQuantities = new double[count];
+            double largest = 0;
+            int depth = 0;
+            for (int i = 0; i < count; i++) {
+                Level level = levelData.getLevels(i);
+                double price = asks ? level.getBuyPrice() : level.getSellPrice();
+                double size = level.getMaxQuantity();
+                if (!(price > 0) || !(size > 0)) {
+                    break;
+                }
+                largest = Math.max(largest, size);
+                prices[depth] = price;
+                largestQuantities[depth] = largest;
+                depth++;
+            }
+            this.depth = depth;
+            this.prices = prices;
+            this.largestQuantities = largestQuantities;
+        }
+
+        double largest() {
+            return depth > 0 ? largestQuantities[depth - 1] : 0;
+        }
+
+        /** The first level quoted for at least {@code quantity}, or -1. */
+        int levelOf(double quantity) {
+            int lo = 0;
+            int hi = depth;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (largestQuantities[mid] < quantity) {
+                    lo = mid + 1;
+                } else {
+                    hi = mid;
+                }
+            }
+            return lo < depth ? lo : -1;
+        }
+    }
+}
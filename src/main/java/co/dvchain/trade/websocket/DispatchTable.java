@@ -0,0 +1,198 @@
+package co.dvchain.trade.websocket;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * Resolves the short strings the server sends as events and topics to small
+ * integer handler ids. Keys are bucketed by length and compared element by
+ * element, so a lookup never hashes or allocates and only touches the few keys
+ * that share its length. Tables are built once and then only read.
+ */
+final class DispatchTable {
+    static final int UNKNOWN = 0;
+
+    private String[] keys = new String[0];
+    private byte[][] keyBytes = new byte[0][];
+    private int[] ids = new int[0];
+    private int[][] byCharLength = new int[0][];
+    private int[][] byByteLength = new int[0][];
+
+    private byte[][] prefixes = new byte[0][];
+    private String[] prefixKeys = new String[0];
+    private int[] prefixIds = new int[0];
+
+    /**
+     * A table of exactly {@code ids}, built in one pass; {@link #put} copies its
+     * arrays on every key, which only suits small tables built once.
+     */
+    static DispatchTable of(Map<String, Integer> ids) {
+        DispatchTable table = new DispatchTable();
+        int count = ids.size();
+        table.keys = new String[count];
+        table.keyBytes = new byte[count][];
+        table.ids = new int[count];
+        int maxCharLength = -1;
+        int maxByteLength = -1;
+        int index = 0;
+        for (Map.Entry<String, Integer> entry : ids.entrySet()) {
+            int id = entry.getValue();
+            if (id == UNKNOWN) {
+                throw new IllegalArgumentException("id " + UNKNOWN + " is reserved for unknown keys");
+            }
+            table.keys[index] = entry.getKey();
+            table.keyBytes[index] = entry.getKey().getBytes(StandardCharsets.UTF_8);
+            table.ids[index] = id;
+            maxCharLength = Math.max(maxCharLength, entry.getKey().length());
+            maxByteLength = Math.max(maxByteLength, table.keyBytes[index].length);
+            index++;
+        }
+        table.byCharLength = new int[maxCharLength + 1][];
+        table.byByteLength = new int[maxByteLength + 1][];
+        int[] charFill = new int[maxCharLength + 1];
+        int[] byteFill = new int[maxByteLength + 1];
+        for (int i = 0; i < count; i++) {
+            charFill[table.keys[i].length()]++;
+            byteFill[table.keyBytes[i].length]++;
+        }
+        allocate(table.byCharLength, charFill);
+        allocate(table.byByteLength, byteFill);
+        for (int i = 0; i < count; i++) {
+            int charLength = table.keys[i].length();
+            table.byCharLength[charLength][charFill[charLength]++] = i;
+            int byteLength = table.keyBytes[i].length;
+            table.byByteLength[byteLength][byteFill[byteLength]++] = i;
+        }
+        return table;
+    }
+
+    /** Sizes each bucket from its key count and resets the counts to fill positions. */
+    private static void allocate(int[][] buckets, int[] counts) {
+        for (int length = 0; length < counts.length; length++) {
+            if (counts[length] > 0) {
+                buckets[length] = new int[counts[length]];
+                counts[length] = 0;
+            }
+        }
+    }
+
+    DispatchTable put(String key, int id) {
+        if (id == UNKNOWN) {
+            throw new IllegalArgumentException("id " + UNKNOWN + " is reserved for unknown keys");
+        }
+        int index = keys.length;
+        keys = Arrays.copyOf(keys, index + 1);
+        keyBytes = Arrays.copyOf(keyBytes, index + 1);
+        ids = Arrays.copyOf(ids, index + 1);
+        keys[index] = key;
+        keyBytes[index] = key.getBytes(StandardCharsets.UTF_8);
+        ids[index] = id;
+        byCharLength = addToBucket(byCharLength, key.length(), index);
+        byByteLength = addToBucket(byByteLength, keyBytes[index].length, index);
+        return this;
+    }
+
+    /**
+     * Registers a key that matches any string starting with {@code prefix}, such as
+     * {@code cancelorder/<id>}. Exact keys win over prefixes.
+     */
+    DispatchTable putPrefix(String prefix, int id) {
+        if (id == UNKNOWN) {
+            throw new IllegalArgumentException("id " + UNKNOWN + " is reserved for unknown keys");
+        }
+        int index = prefixes.length;
+        prefixes = Arrays.copyOf(prefixes, index + 1);
+        prefixKeys = Arrays.copyOf(prefixKeys, index + 1);
+        prefixIds = Arrays.copyOf(prefixIds, index + 1);
+        prefixes[index] = prefix.getBytes(StandardCharsets.UTF_8);
+        prefixKeys[index] = prefix;
+        prefixIds[index] = id;
+        return this;
+    }
+
+    int lookup(CharSequence key) {
+        int length = key.length();
+        if (length < byCharLength.length && byCharLength[length] != null) {
+            for (int index : byCharLength[length]) {
+                if (matches(keys[index], key, length)) {
+                    return ids[index];
+                }
+            }
+        }
+        for (int i = 0; i < prefixKeys.length; i++) {
+            String prefix = prefixKeys[i];
+            if (length >= prefix.length() && matches(prefix, key, prefix.length())) {
+                return prefixIds[i];
+            }
+        }
+        return UNKNOWN;
+    }
+
+    int lookup(byte[] buffer, int offset, int length) {
+        int index = indexOf(buffer, offset, length);
+        if (index >= 0) {
+            return ids[index];
+        }
+        for (int i = 0; i < prefixes.length; i++) {
+            byte[] prefix = prefixes[i];
+            if (length >= prefix.length && matches(prefix, buffer, offset, prefix.length)) {
+                return prefixIds[i];
+            }
+        }
+        return UNKNOWN;
+    }
+
+    /**
+     * Returns the registered key instance equal to the given bytes, or null. Lets
+     * callers hand out a canonical String without decoding one per message.
+     */
+    String key(byte[] buffer, int offset, int length) {
+        int index = indexOf(buffer, offset, length);
+        return index >= 0 ? keys[index] : null;
+    }
+
+    private int indexOf(byte[] buffer, int offset, int length) {
+        if (length < byByteLength.length && byByteLength[length] != null) {
+            for (int index : byByteLength[length]) {
+                if (matches(keyBytes[index], buffer, offset, length)) {
+                    return index;
+                }
+            }
+        }
+        return -1;
+    }
+
+    private static boolean matches(String expected, CharSequence actual, int length) {
+        for (int i = 0; i < length; i++) {
+            if (expected.charAt(i) != actual.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean matches(byte[] expected, byte[] buffer, int offset, int length) {
+        for (int i = 0; i < length; i++) {
+            if (expected[i] != buffer[offset + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int[][] addToBucket(int[][] buckets, int length, int index) {
+        if (length >= buckets.length) {
+            buckets = Arrays.copyOf(buckets, length + 1);
+        }
+        int[] bucket = buckets[length];
+        if (bucket == null) {
+            bucket = new int[] { index };
+        } else {
+            bucket = Arrays.copyOf(bucket, bucket.length + 1);
+            bucket[bucket.length - 1] = index;
+        }
+        buckets[length] = bucket;
+        return buckets;
+    }
+}
@@ -0,0 +1,136 @@
+package co.dvchain.trade.websocket;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import co.dvchain.trade.clientmessages.Clientmessages.LevelData;
+import co.dvchain.trade.clientmessages.Clientmessages.OrderCancelled;
+import co.dvchain.trade.clientmessages.Clientmessages.OrderFilled;
+import co.dvchain.trade.clientmessages.Clientmessages.OrderOpened;
+import co.dvchain.trade.clientmessages.Clientmessages.PricesData;
+
+/**
+ * Merges the updates and order notifications that several connections receive
+ * into one listener, dropping the copies. Each connection is a numbered
+ * source. A level or price update is delivered if it comes from the same
+ * source as the last one delivered for its market, as a connection's own
+ * stream is in order even when timestamps repeat or go back, or if its
+ * {@code last_update} is newer than that one; the check and the delivery
+ * happen under one lock per market, so a market's updates reach the listener
+ * one at a time, whichever reader threads they arrive on. {@link #resetLevels}
+ * and {@link #resetPrices} forget a market's last delivery, after which the
+ * next update from any source passes. Order notifications are matched by order
+ * id and status time and delivered one at a time.
+ */
+final class FeedMerger {
+    private static final int RECENT_NOTIFICATIONS = 4096;
+
+    private final ConcurrentHashMap<String, Gate> levelGates = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Gate> priceGates = new ConcurrentHashMap<>();
+    private final Map<String, Boolean> recentNotifications = new LinkedHashMap<String, Boolean>(256, 0.75f, false) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+            return size() > RECENT_NOTIFICATIONS;
+        }
+    };
+    private final AtomicLong duplicates = new AtomicLong();
+
+    /** Updates and notifications dropped because another connection delivered them first. */
+    long getDuplicateCount() {
+        return duplicates.get();
+    }
+
+    void onLevelUpdate(WebsocketListener listener, int source, LevelData levelData) {
+        Gate gate = gate(levelGates, levelData.getMarket());
+        synchronized (gate) {
+            if (gate.pass(source, levelData.getLastUpdate())) {
+                listener.onLevelUpdate(levelData);
+            }
+        }
+    }
+
+    void onPriceUpdate(WebsocketListener listener, int source, PricesData pricesData) {
+        Gate gate = gate(priceGates, pricesData.getMarket());
+        synchronized (gate) {
+            if (gate.pass(source, pricesData.getLastUpdate())) {
+                listener.onPriceUpdate(pricesData);
+            }
+        }
+    }
+
+    void resetLevels(String market) {
+        reset(levelGates.get(market));
+    }
+
+    void resetPrices(String market) {
+        reset(priceGates.get(market));
+    }
+
+    private static void reset(Gate gate) {
+        if (gate != null) {
+            synchronized (gate) {
+                gate.source = -1;
+                gate.lastUpdate = Long.MIN_VALUE;
+            }
+        }
+    }
+
+    void onOrderFill(WebsocketListener listener, OrderFilled orderFilled) {
+        synchronized (recentNotifications) {
+            if (firstNotification("filled/" + orderFilled.getData().getId() + "/" + orderFilled.getData().getFilledAt())) {
+                listener.onOrderFill(orderFilled);
+            }
+        }
+    }
+
+    void onOrderCancel(WebsocketListener listener, OrderCancelled orderCancelled) {
+        synchronized (recentNotifications) {
+            if (firstNotification("cancelled/" + orderCancelled.getData().getId() + "/" + orderCancelled.getData().getCancelledAt())) {
+                listener.onOrderCancel(orderCancelled);
+            }
+        }
+    }
+
+    void onOrderOpened(WebsocketListener listener, OrderOpened orderOpened) {
+        synchronized (recentNotifications) {
+            if (firstNotification("opened/" + orderOpened.getData().getId() + "/" + orderOpened.getData().getCreatedAt())) {
+                listener.onOrderOpened(orderOpened);
+            }
+        }
+    }
+
+    /** Guarded by recentNotifications. */
+    private boolean firstNotification(String key) {
+        if (recentNotifications.put(key, Boolean.TRUE) == null) {
+            return true;
+        }
+        duplicates.incrementAndGet();
+        return false;
+    }
+
+    private Gate gate(ConcurrentHashMap<String, Gate> gates, String market) {
+        Gate gate = gates.get(market);
+        if (gate == null) {
+            gate = gates.computeIfAbsent(market, k -> new Gate());
+        }
+        return gate;
+    }
+
+    /** The last update delivered for one market and where it came from; its monitor orders the deliveries. */
+    private final class Gate {
+        private int source = -1;
+        private long lastUpdate = Long.MIN_VALUE;
+
+        boolean pass(int from, long update) {
+            if (from != source && update <= lastUpdate) {
+                duplicates.incrementAndGet();
+                return false;
+            }
+            source = from;
+            lastUpdate = update;
+            return true;
+        }
+    }
+}
@@ -0,0 +1,158 @@
+package co.dvchain.trade.websocket;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+/**
+ * Watches the level and price feed of every subscribed market. A market is
+ * flagged when nothing arrived for it within the stale threshold, or when its
+ * {@code last_update} moved backwards, and is then resynchronised by
+ * unsubscribing and resubscribing just that market. Each market is resynced at
+ * most once per threshold, and the clock only runs while the connection is
+ * open, so a reconnect does not flag every market at once.
+ */
+public final class FeedMonitor {
+    private final static Logger logger = Logger.getLogger(FeedMonitor.class.getName());
+
+    private final WebsocketClient client;
+    private final long staleNanos;
+    private final ConcurrentHashMap<String, Feed> levels = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Feed> prices = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService scheduler;
+    private final AtomicLong resyncs = new AtomicLong();
+    private final AtomicLong regressions = new AtomicLong();
+    private boolean wasOpen;
+
+    FeedMonitor(WebsocketClient client, long staleAfter, TimeUnit unit) {
+        this.client = client;
+        this.staleNanos = unit.toNanos(staleAfter);
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "websocket-feed-monitor");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long period = Math.max(TimeUnit.MILLISECONDS.toNanos(1), staleNanos / 4);
+        scheduler.scheduleWithFixedDelay(this::check, period, period, TimeUnit.NANOSECONDS);
+    }
+
+    /** Number of markets resubscribed, for any reason. */
+    public long getResyncCount() {
+        return resyncs.get();
+    }
+
+    /** Number of updates whose {@code last_update} was older than the previous one of their market. */
+    public long getTimestampRegressions() {
+        return regressions.get();
+    }
+
+    /** Markets whose level feed is currently considered stale. */
+    public List<String> getStaleLevelMarkets() {
+        return staleMarkets(levels);
+    }
+
+    public List<String> getStalePriceMarkets() {
+        return staleMarkets(prices);
+    }
+
+    public void stop() {
+        scheduler.shutdownNow();
+    }
+
+    void onLevelUpdate(String market, long lastUpdate) {
+        record(levels, market, lastUpdate);
+    }
+
+    void onPriceUpdate(String market, long lastUpdate) {
+        record(prices, market, lastUpdate);
+    }
+
+    private void record(ConcurrentHashMap<String, Feed> feeds, String market, long lastUpdate) {
+        Feed feed = feeds.get(market);
+        if (feed == null) {
+            feed = feeds.computeIfAbsent(market, k -> new Feed(System.nanoTime()));
+        }
+        feed.lastReceived = System.nanoTime();
+        feed.stale = false;
+        if (lastUpdate < feed.lastUpdate) {
+            regressions.incrementAndGet();
+            feed.regressed = true;
+        } else {
+            feed.lastUpdate = lastUpdate;
+        }
+    }
+
+    synchronized void check() {
+        long now = System.nanoTime();
+        if (client.getConnectionState() != ConnectionState.OPEN) {
+            wasOpen = false;
+            return;
+        }
+        if (!wasOpen) {
+            wasOpen = true;
+            restartClocks(levels, now);
+            restartClocks(prices, now);
+        }
+        check(levels, client.levelTopics(), true, now);
+        check(prices, client.priceTopics(), false, now);
+    }
+
+    private void check(ConcurrentHashMap<String, Feed> feeds, List<String> subscribed, boolean isLevels, long now) {
+        feeds.keySet().retainAll(subscribed);
+        for (String market : subscribed) {
+            Feed feed = feeds.computeIfAbsent(market, k -> new Feed(now));
+            boolean quiet = now - feed.lastReceived > staleNanos;
+            if (!quiet && !feed.regressed || now - feed.lastResync < staleNanos) {
+                continue;
+            }
+            logger.warning((isLevels ? "Levels" : "Prices") + " of " + market
+                    + (feed.regressed ? " went back in time" : " went quiet") + ", resubscribing");
+            feed.stale = quiet;
+            feed.regressed = false;
+            // Whatever arrives after the resubscribe starts a new sequence.
+            feed.lastUpdate = Long.MIN_VALUE;
+            feed.lastResync = now;
+            feed.lastReceived = now;
+            resyncs.incrementAndGet();
+            if (isLevels) {
+                client.resubscribeLevel(market);
+            } else {
+                client.resubscribePrices(market);
+            }
+        }
+    }
+
+    private static void restartClocks(ConcurrentHashMap<String, Feed> feeds, long now) {
+        for (Feed feed : feeds.values()) {
+            feed.lastReceived = now;
+        }
+    }
+
+    private static List<String> staleMarkets(ConcurrentHashMap<String, Feed> feeds) {
+        List<String> stale = new ArrayList<>();
+        feeds.forEach((market, feed) -> {
+            if (feed.stale) {
+                stale.add(market);
+            }
+        });
+        return stale;
+    }
+
+    private static final class Feed {
+        private volatile long lastReceived;
+        private volatile long lastUpdate = Long.MIN_VALUE;
+        private volatile boolean regressed;
+        private volatile boolean stale;
+        private long lastResync;
+
+        Feed(long now) {
+            this.lastReceived = now;
+            this.lastResync = now - Long.MAX_VALUE / 2;
+        }
+    }
+}
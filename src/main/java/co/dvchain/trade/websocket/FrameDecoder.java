@@ -0,0 +1,69 @@
+package co.dvchain.trade.websocket;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.function.Predicate;
+
+import com.google.protobuf.CodedInputStream;
+
+import co.dvchain.trade.clientmessages.Clientmessages.ClientMessage;
+
+/**
+ * Decodes inbound websocket frames into {@link ClientMessage}s without copying
+ * the frame onto a fresh byte[] first. Not thread safe, each reader thread
+ * should own its decoder.
+ */
+class FrameDecoder {
+    private final WireReader reader = new WireReader();
+    private final FrameHeader header = new FrameHeader();
+    private byte[] scratch = new byte[1024];
+
+    ClientMessage decode(ByteBuffer frame) throws IOException {
+        if (frame.hasArray()) {
+            return decode(frame.array(), frame.arrayOffset() + frame.position(), frame.remaining());
+        }
+        // Direct buffers are read in place, read-only heap buffers are copied by protobuf.
+        CodedInputStream input = CodedInputStream.newInstance(frame);
+        input.enableAliasing(true);
+        return ClientMessage.parseFrom(input);
+    }
+
+    /**
+     * Heap frames are read in place. Direct frames are read in place when fully
+     * decoded, but copied to a reused scratch array for header-first decoding.
+     */
+    ClientMessage decode(ByteBuffer frame, Predicate<FrameHeader> filter) throws IOException {
+        if (frame.hasArray()) {
+            return decode(frame.array(), frame.arrayOffset() + frame.position(), frame.remaining(), filter);
+        }
+        if (filter == null) {
+            return decode(frame);
+        }
+        int length = frame.remaining();
+        if (scratch.length < length) {
+            scratch = new byte[Math.max(length, scratch.length * 2)];
+        }
+        int position = frame.position();
+        frame.get(scratch, 0, length);
+        frame.position(position);
+        return decode(scratch, 0, length, filter);
+    }
+
+    ClientMessage decode(byte[] frame, int offset, int length) throws IOException {
+        CodedInputStream input = CodedInputStream.newInstance(frame, offset, length);
+        input.enableAliasing(true);
+        return ClientMessage.parseFrom(input);
+    }
+
+    ClientMessage decode(byte[] frame, int offset, int length, Predicate<FrameHeader> filter) throws IOException {
+        if (filter != null) {
+            reader.wrap(frame, offset, length);
+            header.read(reader);
+            reader.wrap(null, 0, 0);
+            if (!filter.test(header)) {
+                return null;
+            }
+        }
+        return decode(frame, offset, length);
+    }
+}
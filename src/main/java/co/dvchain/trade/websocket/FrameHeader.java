@@ -0,0 +1,85 @@
+package co.dvchain.trade.websocket;
+
+import com.google.protobuf.InvalidProtocolBufferException;
+
+import co.dvchain.trade.clientmessages.Clientmessages.Types;
+
+/**
+ * The {@code type}, {@code event} and {@code topic} of a ClientMessage frame,
+ * read without decoding its {@code data} payload. Event and topic are kept as
+ * ranges of the frame so they can be matched against a {@link DispatchTable}.
+ * Instances are reused frame after frame by their owning decoder.
+ */
+final class FrameHeader {
+    private static final int TYPE_FIELD = 1;
+    private static final int EVENT_FIELD = 2;
+    private static final int TOPIC_FIELD = 3;
+    static final int LEVEL_DATA_FIELD = 4;
+
+    private byte[] buffer;
+    private int type;
+    private int eventOffset;
+    private int eventLength;
+    private int topicOffset;
+    private int topicLength;
+    private int payloadField;
+    private int payloadOffset;
+    private int payloadLength;
+    private final LevelDataView levelView = new LevelDataView();
+
+    /**
+     * Scans the top level of the frame. The {@code oneof data} payload is skipped
+     * over by its length prefix, only its field number is remembered.
+     */
+    void read(WireReader reader) throws InvalidProtocolBufferException {
+        buffer = reader.buffer();
+        type = Types.subscribe_VALUE;
+        eventOffset = eventLength = topicOffset = topicLength = 0;
+        payloadField = payloadOffset = payloadLength = 0;
+        while (reader.hasRemaining()) {
+            int tag = reader.readTag();
+            int field = tag >>> 3;
+            if (field == TYPE_FIELD && (tag & 7) == WireReader.WIRETYPE_VARINT) {
+                type = reader.readVarint32();
+            } else if (field == EVENT_FIELD && (tag & 7) == WireReader.WIRETYPE_LENGTH_DELIMITED) {
+                eventLength = reader.readLength();
+                eventOffset = reader.position();
+                reader.skip(eventLength);
+            } else if (field == TOPIC_FIELD && (tag & 7) == WireReader.WIRETYPE_LENGTH_DELIMITED) {
+                topicLength = reader.readLength();
+                topicOffset = reader.position();
+                reader.skip(topicLength);
+            } else if ((tag & 7) == WireReader.WIRETYPE_LENGTH_DELIMITED) {
+                payloadField = field;
+                payloadLength = reader.readLength();
+                payloadOffset = reader.position();
+                reader.skip(payloadLength);
+            } else {
+                reader.skipField(tag);
+            }
+        }
+    }
+
+    int type() {
+        return type;
+    }
+
+    /** The ClientMessage field number of the payload, or 0 if the frame has none. */
+    int payloadField() {
+        return payloadField;
+    }
+
+    /** Wraps the reused view over a {@code level_data} payload. */
+    LevelDataView levelData() throws InvalidProtocolBufferException {
+        levelView.wrap(buffer, payloadOffset, payloadLength);
+        return levelView;
+    }
+
+    int event(DispatchTable table) {
+        return table.lookup(buffer, eventOffset, eventLength);
+    }
+
+    int topic(DispatchTable table) {
+        return table.lookup(buffer, topicOffset, topicLength);
+    }
+}
@@ -0,0 +1,172 @@
+package co.dvchain.trade.websocket;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/**
+ * Measures round-trip time to the server with {@code pingpong} messages and
+ * detects a dead link long before TCP does. Every interval a ping carrying a
+ * sequence number is sent; the echoed pong is matched by that number and its
+ * RTT recorded. Once {@code maxMissedPongs} pings in a row go unanswered the
+ * connection is dropped and the client reconnects.
+ *
+ * <p>The prober also estimates the offset of the server clock from the
+ * {@code last_update} of market data: a timestamp minus its local receive time
+ * is the offset less the one-way delay, so the largest such sample per
+ * interval plus half the RTT approximates the offset.
+ */
+public final class LatencyProber {
+    private final static Logger logger = Logger.getLogger(LatencyProber.class.getName());
+    static final String PING_PREFIX = "ping-";
+    private static final int OUTSTANDING = 64;
+
+    private final WebsocketClient client;
+    private final int maxMissedPongs;
+    private final LatencyHistogram histogram = new LatencyHistogram();
+    private final ScheduledExecutorService scheduler;
+    private final long[] sentNanos = new long[OUTSTANDING];
+    private final long[] sentSequences = new long[OUTSTANDING];
+
+    private long sequence;
+    private volatile long lastPong;
+    private volatile long lastRttNanos;
+    private volatile long deadLinks;
+    private volatile long clockOffsetMillis;
+    private volatile long maxTimestampSample = Long.MIN_VALUE;
+
+    LatencyProber(WebsocketClient client, long interval, TimeUnit unit, int maxMissedPongs) {
+        if (maxMissedPongs < 1) {
+            throw new IllegalArgumentException("maxMissedPongs must be positive: " + maxMissedPongs);
+        }
+        this.client = client;
+        this.maxMissedPongs = maxMissedPongs;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "websocket-latency-prober");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleAtFixedRate(this::probe, interval, interval, unit);
+    }
+
+    /** Round-trip times of answered pings. */
+    public LatencyHistogram getHistogram() {
+        return histogram;
+    }
+
+    public long getLastRttMicros() {
+        return TimeUnit.NANOSECONDS.toMicros(lastRttNanos);
+    }
+
+    /** Estimated server clock minus local clock, in milliseconds. */
+    public long getClockOffsetMillis() {
+        return clockOffsetMillis;
+    }
+
+    /** Number of times the link was declared dead. */
+    public long getDeadLinkCount() {
+        return deadLinks;
+    }
+
+    public void stop() {
+        scheduler.shutdownNow();
+    }
+
+    public boolean isStopped() {
+        return scheduler.isShutdown();
+    }
+
+    private synchronized void probe() {
+        if (client.getConnectionState() != ConnectionState.OPEN) {
+            // Pings of a previous connection will never be answered.
+            lastPong = sequence;
+            return;
+        }
+        updateClockOffset();
+        if (sequence - lastPong >= maxMissedPongs) {
+            deadLinks++;
+            logger.warning("No pong for " + (sequence - lastPong) + " pings, dropping connection");
+            lastPong = sequence;
+            client.abortConnection("No pong for " + maxMissedPongs + " pings");
+            return;
+        }
+        long next = sequence + 1;
+        int slot = (int) (next & (OUTSTANDING - 1));
+        sentSequences[slot] = next;
+        sentNanos[slot] = System.nanoTime();
+        sequence = next;
+        client.sendPing(next);
+    }
+
+    /** Called with the event of every pong; ignores pongs that are not ours or too old. */
+    synchronized void onPong(CharSequence event) {
+        long received = System.nanoTime();
+        long pong = parseSequence(event);
+        int slot = (int) (pong & (OUTSTANDING - 1));
+        if (pong <= 0 || sentSequences[slot] != pong) {
+            return;
+        }
+        sentSequences[slot] = 0;
+        long rtt = received - sentNanos[slot];
+        lastRttNanos = rtt;
+        histogram.record(rtt, TimeUnit.NANOSECONDS);
+        if (pong > lastPong) {
+            lastPong = pong;
+        }
+    }
+
+    /** Called with the {@code last_update} of every level and price update. */
+    void onServerTimestamp(long lastUpdate) {
+        if (lastUpdate <= 0) {
+            return;
+        }
+        long sample = toMillis(lastUpdate) - System.currentTimeMillis();
+        if (sample > maxTimestampSample) {
+            maxTimestampSample = sample;
+        }
+    }
+
+    private void updateClockOffset() {
+        long sample = maxTimestampSample;
+        if (sample != Long.MIN_VALUE) {
+            maxTimestampSample = Long.MIN_VALUE;
+            clockOffsetMillis = sample + TimeUnit.NANOSECONDS.toMillis(lastRttNanos / 2);
+        }
+    }
+
+    /** Server timestamps may be in seconds, milliseconds, microseconds or nanoseconds since the epoch. */
+    static long toMillis(long timestamp) {
+        if (timestamp < 100_000_000_000L) {
+            return timestamp * 1000;
+        }
+        if (timestamp < 100_000_000_000_000L) {
+            return timestamp;
+        }
+        if (timestamp < 100_000_000_000_000_000L) {
+            return timestamp / 1000;
+        }
+        return timestamp / 1_000_000;
+    }
+
+    static long parseSequence(CharSequence event) {
+        int length = event.length();
+        if (length <= PING_PREFIX.length()) {
+            return -1;
+        }
+        for (int i = 0; i < PING_PREFIX.length(); i++) {
+            if (event.charAt(i) != PING_PREFIX.charAt(i)) {
+                return -1;
+            }
+        }
+        long sequence = 0;
+        for (int i = PING_PREFIX.length(); i < length; i++) {
+            char c = event.charAt(i);
+            if (c < '0' || c > '9' || sequence > (Long.MAX_VALUE - 9) / 10) {
+                return -1;
+            }
+            sequence = sequence * 10 + (c - '0');
+        }
+        return sequence;
+    }
+}
@@ -0,0 +1,15 @@
+package co.dvchain.trade.websocket;
+
+/**
+ * Delivers level updates as primitive arrays, for pricing code that works on
+ * arrays rather than {@code LevelData}. The arrays are reused between updates
+ * and may be longer than the book, only the first {@code depth} entries are
+ * valid, and only for the duration of the call. {@code market} is the symbol
+ * instance passed to {@link WebsocketClient#subscribeLevel}, so it can be
+ * compared by reference, and {@code marketId} its id in the client's
+ * {@link MarketRegistry}, for indexing arrays; it is -1 for a market the
+ * client is not subscribed to.
+ */
+public interface LevelArrayListener {
+    public void onLevelUpdate(int marketId, String market, long lastUpdate, double[] buyPrices, double[] sellPrices, double[] maxQuantities, int depth);
+}
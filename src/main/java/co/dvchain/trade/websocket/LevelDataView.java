@@ -0,0 +1,216 @@
+package co.dvchain.trade.websocket;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import com.google.protobuf.InvalidProtocolBufferException;
+
+import co.dvchain.trade.clientmessages.Clientmessages.LevelData;
+
+/**
+ * Read-only flyweight over an encoded {@link LevelData}. Wrapping a frame only
+ * records where each field sits, the accessors then read the values straight
+ * from the frame bytes. A view is reused from frame to frame and is only valid
+ * until the next {@code wrap}, so copy out anything that has to outlive the
+ * callback it was handed to. Not thread safe.
+ */
+public final class LevelDataView {
+    private static final int LEVEL_DATA_FIELD = 4;
+
+    private static final int LAST_UPDATE_TAG = 1 << 3 | WireReader.WIRETYPE_VARINT;
+    private static final int LEVELS_TAG = 2 << 3 | WireReader.WIRETYPE_LENGTH_DELIMITED;
+    private static final int QUOTE_ID_TAG = 3 << 3 | WireReader.WIRETYPE_LENGTH_DELIMITED;
+    private static final int MARKET_TAG = 4 << 3 | WireReader.WIRETYPE_LENGTH_DELIMITED;
+
+    private static final int SELL_PRICE_TAG = 1 << 3 | WireReader.WIRETYPE_FIXED64;
+    private static final int BUY_PRICE_TAG = 2 << 3 | WireReader.WIRETYPE_FIXED64;
+    private static final int MAX_QUANTITY_TAG = 3 << 3 | WireReader.WIRETYPE_FIXED64;
+
+    private static final int ABSENT = -1;
+
+    private final WireReader reader = new WireReader();
+    private byte[] buffer;
+    private int offset;
+    private int length;
+    private long lastUpdate;
+    private int quoteIdOffset;
+    private int quoteIdLength;
+    private int marketOffset;
+    private int marketLength;
+    private int levelCount;
+    private int[] sellPriceAt = new int[16];
+    private int[] buyPriceAt = new int[16];
+    private int[] maxQuantityAt = new int[16];
+
+    /**
+     * Wraps a whole ClientMessage frame. Returns false if it carries no
+     * {@code level_data}, in which case the view is left empty.
+     */
+    public boolean wrapFrame(byte[] frame, int offset, int length) throws InvalidProtocolBufferException {
+        reader.wrap(frame, offset, length);
+        while (reader.hasRemaining()) {
+            int tag = reader.readTag();
+            if (tag == (LEVEL_DATA_FIELD << 3 | WireReader.WIRETYPE_LENGTH_DELIMITED)) {
+                int levelDataLength = reader.readLength();
+                wrap(frame, reader.position(), levelDataLength);
+                return true;
+            }
+            reader.skipField(tag);
+        }
+        clear(frame);
+        return false;
+    }
+
+    /** Wraps an encoded LevelData message occupying {@code length} bytes at {@code offset}. */
+    public void wrap(byte[] levelData, int offset, int length) throws InvalidProtocolBufferException {
+        clear(levelData);
+        this.offset = offset;
+        this.length = length;
+        reader.wrap(levelData, offset, length);
+        while (reader.hasRemaining()) {
+            int tag = reader.readTag();
+            switch (tag) {
+                case LAST_UPDATE_TAG:
+                    lastUpdate = reader.readVarint64();
+                    break;
+                case LEVELS_TAG:
+                    int previousLimit = reader.pushLimit(reader.readLength());
+                    readLevel();
+                    reader.popLimit(previousLimit);
+                    break;
+                case QUOTE_ID_TAG:
+                    quoteIdLength = reader.readLength();
+                    quoteIdOffset = reader.position();
+                    reader.skip(quoteIdLength);
+                    break;
+                case MARKET_TAG:
+                    marketLength = reader.readLength();
+                    marketOffset = reader.position();
+                    reader.skip(marketLength);
+                    break;
+                default:
+                    reader.skipField(tag);
+            }
+        }
+    }
+
+    public long lastUpdate() {
+        return lastUpdate;
+    }
+
+    public int levelCount() {
+        return levelCount;
+    }
+
+    public double sellPrice(int level) {
+        return doubleAt(sellPriceAt, level);
+    }
+
+    public double buyPrice(int level) {
+        return doubleAt(buyPriceAt, level);
+    }
+
+    public double maxQuantity(int level) {
+        return doubleAt(maxQuantityAt, level);
+    }
+
+    /** Decodes the market into a new String, prefer {@link #marketEquals} on hot paths. */
+    public String market() {
+        return new String(buffer, marketOffset, marketLength, StandardCharsets.UTF_8);
+    }
+
+    /** Decodes the quote id into a new String. */
+    public String quoteId() {
+        return new String(buffer, quoteIdOffset, quoteIdLength, StandardCharsets.UTF_8);
+    }
+
+    /** Compares the market against an ASCII symbol such as {@code BTC/USD} without decoding it. */
+    public boolean marketEquals(String symbol) {
+        if (symbol.length() != marketLength) {
+            return false;
+        }
+        for (int i = 0; i < marketLength; i++) {
+            if (buffer[marketOffset + i] != symbol.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Returns the key of {@code table} matching the market, or null if it has none. */
+    String market(DispatchTable table) {
+        return table.key(buffer, marketOffset, marketLength);
+    }
+
+    /**
+     * Copies up to the arrays' length of levels into them and returns the number
+     * of levels in the book.
+     */
+    public int copyLevels(double[] buyPrices, double[] sellPrices, double[] maxQuantities) {
+        int count = Math.min(levelCount, Math.min(buyPrices.length, Math.min(sellPrices.length, maxQuantities.length)));
+        for (int i = 0; i < count; i++) {
+            buyPrices[i] = buyPrice(i);
+            sellPrices[i] = sellPrice(i);
+            maxQuantities[i] = maxQuantity(i);
+        }
+        return levelCount;
+    }
+
+    /** Materialises the view as a protobuf message, for code that needs one. */
+    public LevelData toLevelData() throws InvalidProtocolBufferException {
+        return LevelData.parser().parseFrom(buffer, offset, length);
+    }
+
+    private void readLevel() throws InvalidProtocolBufferException {
+        if (levelCount == sellPriceAt.length) {
+            int capacity = levelCount * 2;
+            sellPriceAt = Arrays.copyOf(sellPriceAt, capacity);
+            buyPriceAt = Arrays.copyOf(buyPriceAt, capacity);
+            maxQuantityAt = Arrays.copyOf(maxQuantityAt, capacity);
+        }
+        int sellPrice = ABSENT;
+        int buyPrice = ABSENT;
+        int maxQuantity = ABSENT;
+        while (reader.hasRemaining()) {
+            int tag = reader.readTag();
+            switch (tag) {
+                case SELL_PRICE_TAG:
+                    sellPrice = reader.position();
+                    reader.skip(8);
+                    break;
+                case BUY_PRICE_TAG:
+                    buyPrice = reader.position();
+                    reader.skip(8);
+                    break;
+                case MAX_QUANTITY_TAG:
+                    maxQuantity = reader.position();
+                    reader.skip(8);
+                    break;
+                default:
+                    reader.skipField(tag);
+            }
+        }
+        sellPriceAt[levelCount] = sellPrice;
+        buyPriceAt[levelCount] = buyPrice;
+        maxQuantityAt[levelCount] = maxQuantity;
+        levelCount++;
+    }
+
+    private double doubleAt(int[] offsets, int level) {
+        if (level < 0 || level >= levelCount) {
+            throw new IndexOutOfBoundsException("level " + level + " of " + levelCount);
+        }
+        int offset = offsets[level];
+        // proto3 leaves zero values off the wire
+        return offset == ABSENT ? 0.0 : Double.longBitsToDouble(WireReader.fixed64At(buffer, offset));
+    }
+
+    private void clear(byte[] buffer) {
+        this.buffer = buffer;
+        offset = length = 0;
+        lastUpdate = 0;
+        quoteIdOffset = quoteIdLength = 0;
+        marketOffset = marketLength = 0;
+        levelCount = 0;
+    }
+}
@@ -0,0 +1,9 @@
+package co.dvchain.trade.websocket;
+
+/**
+ * Garbage-free alternative to {@link WebsocketListener#onLevelUpdate}. The view
+ * is reused for every update and is only valid for the duration of the call.
+ */
+public interface LevelDataViewListener {
+    public void onLevelUpdate(LevelDataView levelData);
+}
@@ -0,0 +1,286 @@
+package co.dvchain.trade.websocket;
+
+import co.dvchain.trade.clientmessages.Clientmessages.Level;
+import co.dvchain.trade.clientmessages.Clientmessages.LevelData;
+
+/**
+ * The last updates of one market's book, in a ring of primitive arrays
+ * allocated up front: a timestamp, a depth and up to {@code maxLevels} buy
+ * prices, sell prices and quantities per update. Holds at most
+ * {@code capacity} updates and, with a maximum age, only those within that
+ * age of the newest. Timestamps are the {@code last_update} values as sent;
+ * the maximum age and queries take the same units.
+ *
+ * <p>One thread appends; any thread queries, without locks. Queries copy the
+ * books they return and drop any entry the writer overwrote while it was being
+ * copied, so they never see a torn book. Updates older than the newest one are
+ * not stored, so timestamps in the ring are ordered and searched by bisection.
+ */
+public final class LevelHistory {
+    private final int marketId;
+    private final String market;
+    private final int capacity;
+    private final int mask;
+    private final int maxLevels;
+    private final long maxAge;
+    private final long[] timestamps;
+    private final int[] depths;
+    private final double[] buyPrices;
+    private final double[] sellPrices;
+    private final double[] maxQuantities;
+    private final ThreadLocal<Book> rangeBooks;
+    /** Entries written so far; entry {@code e} lives at {@code e & mask}. */
+    private volatile long written;
+    /** Entries below this may be being overwritten. */
+    private volatile long overwriteFloor;
+    private volatile long outOfOrder;
+
+    /**
+     * @param capacity     updates kept, rounded up to a power of two
+     * @param maxLevels    levels kept per update, deeper ones are dropped
+     * @param maxAge    age beyond which updates are no longer returned, in the
+     *                  units of the timestamps, 0 for none
+     */
+    public LevelHistory(String market, int capacity, int maxLevels, long maxAge) {
+        this(-1, market, capacity, maxLevels, maxAge);
+    }
+
+    /** A history whose {@link #range} passes {@code marketId} to its visitor. */
+    public LevelHistory(int marketId, String market, int capacity, int maxLevels, long maxAge) {
+        if (capacity < 1 || maxLevels < 1) {
+            throw new IllegalArgumentException("capacity and maxLevels must be positive");
+        }
+        this.marketId = marketId;
+        this.market = market;
+        this.capacity = capacity <= 1 ? 1 : Integer.highestOneBit(capacity - 1) << 1;
+        this.mask = this.capacity - 1;
+        this.maxLevels = maxLevels;
+        this.maxAge = maxAge;
+        this.timestamps = new long[this.capacity];
+        this.depths = new int[this.capacity];
+        this.buyPrices = new double[this.capacity * maxLevels];
+        this.sellPrices = new double[this.capacity * maxLevels];
+        this.maxQuantities = new double[this.capacity * maxLevels];
+        this.rangeBooks = ThreadLocal.withInitial(() -> new Book(maxLevels));
+    }
+
+    /** The market id passed to {@link #range} visitors, -1 if none was given. */
+    public int getMarketId() {
+        return marketId;
+    }
+
+    public String getMarket() {
+        return market;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public int getMaxLevels() {
+        return maxLevels;
+    }
+
+    /** Updates not stored because they were older than the newest one. */
+    public long getOutOfOrderCount() {
+        return outOfOrder;
+    }
+
+    public void append(LevelData levelData) {
+        long entry = begin(levelData.getLastUpdate());
+        if (entry < 0) {
+            return;
+        }
+        int slot = (int) entry & mask;
+        int depth = Math.min(levelData.getLevelsCount(), maxLevels);
+        int base = slot * maxLevels;
+        for (int i = 0; i < depth; i++) {
+            Level level = levelData.getLevels(i);
+            buyPrices[base + i] = level.getBuyPrice();
+            sellPrices[base + i] = level.getSellPrice();
+            maxQuantities[base + i] = level.getMaxQuantity();
+        }
+        depths[slot] = depth;
+        written = entry + 1;
+    }
+
+    public void append(long lastUpdate, double[] buyPrices, double[] sellPrices, double[] maxQuantities, int depth) {
+        long entry = begin(lastUpdate);
+        if (entry < 0) {
+            return;
+        }
+        int slot = (int) entry & mask;
+        depth = Math.min(depth, maxLevels);
+        int base = slot * maxLevels;
+        System.arraycopy(buyPrices, 0, this.buyPrices, base, depth);
+        System.arraycopy(sellPrices, 0, this.sellPrices, base, depth);
+        System.arraycopy(maxQuantities, 0, this.maxQuantities, base, depth);
+        depths[slot] = depth;
+        written = entry + 1;
+    }
+
+    /** Claims the next entry and stores its timestamp, or returns -1 for an out of order update. */
+    private long begin(long lastUpdate) {
+        long entry = written;
+        if (entry > 0 && lastUpdate < timestamps[(int) (entry - 1) & mask]) {
+            outOfOrder++;
+            return -1;
+        }
+        if (entry >= capacity) {
+            overwriteFloor = entry - capacity + 1;
+            Fences.storeFence();
+        }
+        timestamps[(int) entry & mask] = lastUpdate;
+        return entry;
+    }
+
+    /** A book to copy updates of this history into, reusable across queries. */
+    public Book newBook() {
+        return new Book(maxLevels);
+    }
+
+    /** The number of updates currently retained. */
+    public int size() {
+        long end = written;
+        return (int) (end - first(end));
+    }
+
+    /**
+     * Copies the book that was current at {@code timestamp}, the newest update at
+     * or before it, into {@code book}. Returns false if no retained update is that old.
+     */
+    public boolean at(long timestamp, Book book) {
+        while (true) {
+            long end = written;
+            long start = first(end);
+            long entry = search(start, end, timestamp) - 1;
+            if (entry < start) {
+                return false;
+            }
+            if (copy(entry, book)) {
+                return true;
+            }
+            // Overwritten while copying, the history moved on: search again.
+        }
+    }
+
+    /**
+     * Passes every retained update with {@code from <= timestamp <= to} to
+     * {@code visitor}, oldest first, and returns how many it passed. The arrays
+     * are reused between calls, as with any {@link LevelArrayListener}.
+     */
+    public int range(long from, long to, LevelArrayListener visitor) {
+        long end = written;
+        long start = first(end);
+        long entry = searchFrom(start, end, from);
+        long last = search(start, end, to);
+        Book book = rangeBooks.get();
+        int visited = 0;
+        for (; entry < last; entry++) {
+            if (copy(entry, book)) {
+                visitor.onLevelUpdate(marketId, market, book.timestamp, book.buyPrices, book.sellPrices, book.maxQuantities, book.depth);
+                visited++;
+            }
+        }
+        return visited;
+    }
+
+    /** The oldest retained entry given {@code end} entries written. */
+    private long first(long end) {
+        long start = Math.max(end - capacity, overwriteFloor);
+        if (maxAge > 0 && end > start) {
+            long newest = timestamps[(int) (end - 1) & mask];
+            long lo = start;
+            long hi = end - 1;
+            while (lo < hi) {
+                long mid = (lo + hi) >>> 1;
+                if (newest - timestamps[(int) mid & mask] > maxAge) {
+                    lo = mid + 1;
+                } else {
+                    hi = mid;
+                }
+            }
+            start = lo;
+        }
+        return start;
+    }
+
+    /** The first entry in [start, end) with a timestamp above {@code timestamp}, or end. */
+    private long search(long start, long end, long timestamp) {
+        long lo = start;
+        long hi = end;
+        while (lo < hi) {
+            long mid = (lo + hi) >>> 1;
+            if (timestamps[(int) mid & mask] <= timestamp) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    /** The first entry in [start, end) with a timestamp at or above {@code timestamp}, or end. */
+    private long searchFrom(long start, long end, long timestamp) {
+        long lo = start;
+        long hi = end;
+        while (lo < hi) {
+            long mid = (lo + hi) >>> 1;
+            if (timestamps[(int) mid & mask] < timestamp) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    /** Copies an entry, returning false if the writer reached it meanwhile. */
+    private boolean copy(long entry, Book book) {
+        int slot = (int) entry & mask;
+        int depth = depths[slot];
+        int base = slot * maxLevels;
+        book.timestamp = timestamps[slot];
+        book.depth = depth;
+        System.arraycopy(buyPrices, base, book.buyPrices, 0, depth);
+        System.arraycopy(sellPrices, base, book.sellPrices, 0, depth);
+        System.arraycopy(maxQuantities, base, book.maxQuantities, 0, depth);
+        Fences.loadFence();
+        return entry >= overwriteFloor;
+    }
+
+    /** One book copied out of a history, see {@link #newBook()}. */
+    public static final class Book {
+        private long timestamp;
+        private int depth;
+        private final double[] buyPrices;
+        private final double[] sellPrices;
+        private final double[] maxQuantities;
+
+        Book(int maxLevels) {
+            buyPrices = new double[maxLevels];
+            sellPrices = new double[maxLevels];
+            maxQuantities = new double[maxLevels];
+        }
+
+        public long timestamp() {
+            return timestamp;
+        }
+
+        public int depth() {
+            return depth;
+        }
+
+        public double buyPrice(int level) {
+            return buyPrices[level];
+        }
+
+        public double sellPrice(int level) {
+            return sellPrices[level];
+        }
+
+        public double maxQuantity(int level) {
+            return maxQuantities[level];
+        }
+    }
+}
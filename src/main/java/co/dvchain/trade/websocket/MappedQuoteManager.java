@@ -0,0 +1,667 @@
+package co.dvchain.trade.websocket;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import co.dvchain.trade.clientmessages.Clientmessages.Level;
+import co.dvchain.trade.clientmessages.Clientmessages.LevelData;
+
+/**
+ * Latest levels per market in a memory-mapped file, so one feed process can
+ * publish quotes to any number of reader processes on the same host. The feed
+ * side is {@link #create}d and fed through {@link #updateQuote} or as the
+ * client's {@link LevelArrayListener}; readers {@link #open} the same file and
+ * read levels straight out of the mapping into their own arrays.
+ *
+ * <p>The file has a fixed slot per market, assigned in the order markets are
+ * first written. Each slot is a seqlock: the writer makes the slot's sequence
+ * odd, stores the levels and makes it even again, with store fences in between;
+ * readers retry until they see the same even sequence before and after their
+ * loads. Readers never block the writer and never take a lock. A reader that
+ * finds a slot mid-write for longer than {@link #setStallTimeout the stall
+ * timeout} gives up with an {@link IllegalStateException}, as the writer has
+ * most likely died. Only one process may write a file: the writer holds a lock
+ * on a {@code .lock} file beside it until it is closed.
+ *
+ * <p>A restarted feed {@link #create}s a new generation of the file beside it
+ * and renames it into place, then marks the previous one superseded. Readers
+ * notice the mark on their next read, map the new file and carry on with the
+ * market ids they already have.
+ *
+ * <p>As a {@link QuoteStore} it can stand in for the client's quote manager;
+ * the writer stores through it and readers use its lookups.
+ */
+public final class MappedQuoteManager implements QuoteStore, LevelArrayListener, Closeable {
+    private static final int MAGIC = 0x44565155;
+    private static final int VERSION = 2;
+    private static final int HEADER_SIZE = 64;
+    private static final int MAX_LEVELS_OFFSET = 8;
+    private static final int MAX_MARKETS_OFFSET = 12;
+    private static final int SLOT_SIZE_OFFSET = 16;
+    private static final int MARKET_COUNT_OFFSET = 20;
+    private static final int GENERATION_OFFSET = 24;
+    private static final int SUPERSEDED_OFFSET = 32;
+
+    private static final int SEQUENCE = 0;
+    private static final int LAST_UPDATE = 8;
+    private static final int DEPTH = 16;
+    private static final int NAME_LENGTH = 20;
+    private static final int NAME = 24;
+    private static final int MAX_NAME_BYTES = 40;
+    private static final int LEVELS = 64;
+    private static final int LEVEL_SIZE = 24;
+
+    /** Times a reader retries a slot mid-write before it starts yielding and timing the writer. */
+    private static final int SPINS_BEFORE_YIELD = 100;
+
+    private final Path file;
+    private final boolean writable;
+    /** Writer side: held for as long as this writes the file. */
+    private final FileLock writerLock;
+    private volatile Mapping mapping;
+    private volatile long stallTimeoutNanos = TimeUnit.SECONDS.toNanos(1);
+    /** Writer side, guarded by this. */
+    private final Map<String, Integer> writerSlots = new HashMap<>();
+    /** Writer side, guarded by this: slot plus one by the client's market id, 0 if not cached. */
+    private int[] writerSlotsById = new int[16];
+    /** Reader side: the ids handed out by {@link #marketId}, which survive a new generation. */
+    private final ConcurrentHashMap<String, Integer> readerIds = new ConcurrentHashMap<>();
+    /** Reader side, by id; replaced under this when an id is added. */
+    private volatile String[] readerNames = new String[0];
+
+    private MappedQuoteManager(Path file, Mapping mapping, FileLock writerLock) {
+        this.file = file;
+        this.mapping = mapping;
+        this.writable = writerLock != null;
+        this.writerLock = writerLock;
+    }
+
+    /**
+     * Creates {@code file} for writing, with room for {@code maxMarkets} markets
+     * of up to {@code maxLevels} levels each. An existing quote file is replaced
+     * atomically by the next generation and marked superseded for its readers.
+     * Fails if another writer has the file open.
+     */
+    public static MappedQuoteManager create(Path file, int maxMarkets, int maxLevels) throws IOException {
+        if (maxMarkets < 1 || maxLevels < 1) {
+            throw new IllegalArgumentException("maxMarkets and maxLevels must be positive");
+        }
+        // Slots are cache line aligned so readers of one market never share a line with another.
+        int slotSize = (LEVELS + maxLevels * LEVEL_SIZE + 63) & ~63;
+        long size = HEADER_SIZE + (long) maxMarkets * slotSize;
+        if (size > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("quote file would exceed 2 GB");
+        }
+        FileLock writerLock = lockForWriting(file);
+        Path temp = null;
+        FileChannel channel = null;
+        try {
+            MappedByteBuffer previous = mapPrevious(file);
+            long generation = previous != null ? previous.getLong(GENERATION_OFFSET) + 1 : 1;
+
+            // Built under a temporary name of its own, so readers never see a half initialised or truncated file.
+            temp = file.resolveSibling(file.getFileName() + "." + UUID.randomUUID() + ".tmp");
+            channel = FileChannel.open(temp, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE);
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            buffer.order(ByteOrder.nativeOrder());
+            buffer.putInt(4, VERSION);
+            buffer.putInt(MAX_LEVELS_OFFSET, maxLevels);
+            buffer.putInt(MAX_MARKETS_OFFSET, maxMarkets);
+            buffer.putInt(SLOT_SIZE_OFFSET, slotSize);
+            buffer.putInt(MARKET_COUNT_OFFSET, 0);
+            buffer.putLong(GENERATION_OFFSET, generation);
+            buffer.putInt(SUPERSEDED_OFFSET, 0);
+            Fences.storeFence();
+            // Written last, a reader that sees the magic sees a complete header.
+            buffer.putInt(0, MAGIC);
+            Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            if (previous != null) {
+                previous.putInt(SUPERSEDED_OFFSET, 1);
+                previous.force();
+            }
+            return new MappedQuoteManager(file, new Mapping(channel, buffer), writerLock);
+        } catch (IOException | RuntimeException e) {
+            if (channel != null) {
+                channel.close();
+            }
+            if (temp != null) {
+                Files.deleteIfExists(temp);
+            }
+            writerLock.channel().close();
+            throw e;
+        }
+    }
+
+    /**
+     * Locks the {@code .lock} file beside {@code file}, which stays put while
+     * generations of the quote file are renamed over each other.
+     */
+    private static FileLock lockForWriting(Path file) throws IOException {
+        Path lockFile = file.resolveSibling(file.getFileName() + ".lock");
+        FileChannel channel = FileChannel.open(lockFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        try {
+            FileLock lock = channel.tryLock();
+            if (lock == null) {
+                throw new IOException("quote file is being written by another process: " + file);
+            }
+            return lock;
+        } catch (OverlappingFileLockException e) {
+            channel.close();
+            throw new IOException("quote file is being written by another writer in this process: " + file, e);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /** The header of the quote file at {@code file} mapped for writing, or null if there is none. */
+    private static MappedByteBuffer mapPrevious(Path file) throws IOException {
+        FileChannel channel;
+        try {
+            channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+        try {
+            if (channel.size() < HEADER_SIZE) {
+                return null;
+            }
+            // The mapping outlives the channel and the file's name.
+            MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE);
+            header.order(ByteOrder.nativeOrder());
+            return header.getInt(0) == MAGIC && header.getInt(4) == VERSION ? header : null;
+        } finally {
+            channel.close();
+        }
+    }
+
+    /** Maps a file written by another process for reading. */
+    public static MappedQuoteManager open(Path file) throws IOException {
+        return new MappedQuoteManager(file, map(file), null);
+    }
+
+    private static Mapping map(Path file) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+        try {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            buffer.order(ByteOrder.nativeOrder());
+            if (channel.size() < HEADER_SIZE || buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+                throw new IOException("not a quote file: " + file);
+            }
+            Fences.loadFence();
+            return new Mapping(channel, buffer);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * How long a reader waits for a slot the writer left mid-write before it
+     * throws; 1 second by default.
+     */
+    public void setStallTimeout(long timeout, TimeUnit unit) {
+        this.stallTimeoutNanos = unit.toNanos(timeout);
+    }
+
+    public int getMaxMarkets() {
+        return current().maxMarkets;
+    }
+
+    public int getMaxLevels() {
+        return current().maxLevels;
+    }
+
+    /** The generation of the file currently mapped, one more than the file it replaced. */
+    public long getGeneration() {
+        return current().buffer.getLong(GENERATION_OFFSET);
+    }
+
+    /** The number of markets written so far. */
+    public int getMarketCount() {
+        int count = current().buffer.getInt(MARKET_COUNT_OFFSET);
+        Fences.loadFence();
+        return count;
+    }
+
+    @Override
+    public void updateQuote(LevelData levelData) {
+        updateQuote(-1, levelData);
+    }
+
+    /** Stores the update; the slot is found by {@code marketId} once it has been seen. */
+    @Override
+    public void updateQuote(int marketId, LevelData levelData) {
+        synchronized (this) {
+            int depth = Math.min(levelData.getLevelsCount(), mapping.maxLevels);
+            int base = writeBegin(writerSlot(marketId, levelData.getMarket()), levelData.getLastUpdate(), depth);
+            MappedByteBuffer buffer = mapping.buffer;
+            for (int i = 0; i < depth; i++) {
+                Level level = levelData.getLevels(i);
+                int offset = base + LEVELS + i * LEVEL_SIZE;
+                buffer.putDouble(offset, level.getBuyPrice());
+                buffer.putDouble(offset + 8, level.getSellPrice());
+                buffer.putDouble(offset + 16, level.getMaxQuantity());
+            }
+            writeEnd(base);
+        }
+    }
+
+    /**
+     * Stores the update without allocating; levels beyond {@link #getMaxLevels()}
+     * are dropped. The slot is found by {@code marketId} once it has been seen.
+     */
+    @Override
+    public void onLevelUpdate(int marketId, String market, long lastUpdate, double[] buyPrices, double[] sellPrices,
+            double[] maxQuantities, int depth) {
+        synchronized (this) {
+            depth = Math.min(depth, mapping.maxLevels);
+            int base = writeBegin(writerSlot(marketId, market), lastUpdate, depth);
+            MappedByteBuffer buffer = mapping.buffer;
+            for (int i = 0; i < depth; i++) {
+                int offset = base + LEVELS + i * LEVEL_SIZE;
+                buffer.putDouble(offset, buyPrices[i]);
+                buffer.putDouble(offset + 8, sellPrices[i]);
+                buffer.putDouble(offset + 16, maxQuantities[i]);
+            }
+            writeEnd(base);
+        }
+    }
+
+    private int writeBegin(int slot, long lastUpdate, int depth) {
+        MappedByteBuffer buffer = mapping.buffer;
+        int base = mapping.slotBase(slot);
+        long sequence = buffer.getLong(base + SEQUENCE);
+        buffer.putLong(base + SEQUENCE, sequence + 1);
+        Fences.storeFence();
+        buffer.putLong(base + LAST_UPDATE, lastUpdate);
+        buffer.putInt(base + DEPTH, depth);
+        return base;
+    }
+
+    private void writeEnd(int base) {
+        MappedByteBuffer buffer = mapping.buffer;
+        Fences.storeFence();
+        buffer.putLong(base + SEQUENCE, buffer.getLong(base + SEQUENCE) + 1);
+    }
+
+    private int writerSlot(int marketId, String market) {
+        if (marketId < 0) {
+            return writerSlot(market);
+        }
+        if (marketId < writerSlotsById.length && writerSlotsById[marketId] != 0) {
+            return writerSlotsById[marketId] - 1;
+        }
+        int slot = writerSlot(market);
+        if (marketId >= writerSlotsById.length) {
+            writerSlotsById = Arrays.copyOf(writerSlotsById, Math.max(writerSlotsById.length * 2, marketId + 1));
+        }
+        writerSlotsById[marketId] = slot + 1;
+        return slot;
+    }
+
+    private int writerSlot(String market) {
+        if (!writable) {
+            throw new IllegalStateException("quote file is open for reading only");
+        }
+        Integer slot = writerSlots.get(market);
+        if (slot != null) {
+            return slot;
+        }
+        int next = writerSlots.size();
+        if (next == mapping.maxMarkets) {
+            throw new IllegalStateException("quote file is full, " + mapping.maxMarkets + " markets");
+        }
+        byte[] name = market.getBytes(StandardCharsets.UTF_8);
+        if (name.length > MAX_NAME_BYTES) {
+            throw new IllegalArgumentException("market name too long: " + market);
+        }
+        MappedByteBuffer buffer = mapping.buffer;
+        int base = mapping.slotBase(next);
+        for (int i = 0; i < name.length; i++) {
+            buffer.put(base + NAME + i, name[i]);
+        }
+        buffer.putInt(base + NAME_LENGTH, name.length);
+        Fences.storeFence();
+        // Publishing the count makes the slot's name visible to readers.
+        buffer.putInt(MARKET_COUNT_OFFSET, next + 1);
+        writerSlots.put(market, next);
+        return next;
+    }
+
+    /**
+     * The id of {@code market}, or -1 if it has not been written yet. Resolve it
+     * once and read by id afterwards; the id stays valid across generations of
+     * the file.
+     */
+    public int marketId(String market) {
+        Integer id = readerIds.get(market);
+        if (id != null) {
+            return id;
+        }
+        if (current().slotOf(market) < 0) {
+            return -1;
+        }
+        synchronized (this) {
+            id = readerIds.get(market);
+            if (id == null) {
+                String[] names = Arrays.copyOf(readerNames, readerNames.length + 1);
+                id = names.length - 1;
+                names[id] = market;
+                readerNames = names;
+                readerIds.put(market, id);
+            }
+            return id;
+        }
+    }
+
+    /**
+     * Copies the latest levels of a market into the given arrays, which need
+     * {@link #getMaxLevels()} entries, and returns the depth, or -1 if the market
+     * has no quote yet.
+     */
+    public int readLevels(int marketId, double[] buyPrices, double[] sellPrices, double[] maxQuantities) {
+        return read(marketId, buyPrices, sellPrices, maxQuantities, null);
+    }
+
+    /** The server timestamp of the latest quote of a market, or 0 if it has none. */
+    public long lastUpdate(int marketId) {
+        long stalled = -1;
+        long stalledSince = 0;
+        int spins = 0;
+        while (true) {
+            Mapping mapping = current();
+            int slot = mapping.slot(marketId, readerNames);
+            if (slot < 0) {
+                return 0;
+            }
+            MappedByteBuffer buffer = mapping.buffer;
+            int base = mapping.slotBase(slot);
+            long before = buffer.getLong(base + SEQUENCE);
+            Fences.loadFence();
+            if ((before & 1) != 0) {
+                if (before != stalled) {
+                    stalled = before;
+                    spins = 0;
+                }
+                stalledSince = backOff(marketId, spins++, stalledSince);
+                continue;
+            }
+            long lastUpdate = buffer.getLong(base + LAST_UPDATE);
+            Fences.loadFence();
+            if (buffer.getLong(base + SEQUENCE) == before) {
+                return lastUpdate;
+            }
+        }
+    }
+
+    /** The latest quote of {@code symbol} as a new {@link LevelData}, or null if it has none. */
+    @Override
+    public LevelData getQuote(String symbol) {
+        int marketId = marketId(symbol);
+        if (marketId < 0) {
+            return null;
+        }
+        int maxLevels = getMaxLevels();
+        double[] buyPrices = new double[maxLevels];
+        double[] sellPrices = new double[maxLevels];
+        double[] maxQuantities = new double[maxLevels];
+        long[] lastUpdate = new long[1];
+        int depth = read(marketId, buyPrices, sellPrices, maxQuantities, lastUpdate);
+        if (depth < 0) {
+            return null;
+        }
+        LevelData.Builder quote = LevelData.newBuilder().setMarket(symbol).setLastUpdate(lastUpdate[0]);
+        for (int i = 0; i < depth; i++) {
+            quote.addLevels(Level.newBuilder()
+                    .setBuyPrice(buyPrices[i])
+                    .setSellPrice(sellPrices[i])
+                    .setMaxQuantity(maxQuantities[i]));
+        }
+        return quote.build();
+    }
+
+    /**
+     * Reads each market with {@link #getQuote} and keeps the result if none of
+     * their slots was written meanwhile; retries yield, and a stalled writer
+     * makes them throw as a single read would.
+     */
+    @Override
+    public Map<String, LevelData> getQuotes(Collection<String> symbols) {
+        String[] names = symbols.toArray(new String[0]);
+        long[] sequences = new long[names.length];
+        LevelData[] quotes = new LevelData[names.length];
+        while (true) {
+            Mapping mapping = current();
+            for (int i = 0; i < names.length; i++) {
+                sequences[i] = sequence(mapping, names[i]);
+            }
+            for (int i = 0; i < names.length; i++) {
+                quotes[i] = getQuote(names[i]);
+            }
+            boolean unchanged = current() == mapping;
+            for (int i = 0; i < names.length && unchanged; i++) {
+                unchanged = (sequences[i] & 1) == 0 && sequence(mapping, names[i]) == sequences[i];
+            }
+            if (unchanged) {
+                break;
+            }
+            Thread.yield();
+        }
+        Map<String, LevelData> snapshot = new LinkedHashMap<>();
+        for (int i = 0; i < names.length; i++) {
+            if (quotes[i] != null) {
+                snapshot.put(names[i], quotes[i]);
+            }
+        }
+        return snapshot;
+    }
+
+    /** The sequence of the slot of {@code market} in {@code mapping}, or -2 if it was not written yet. */
+    private long sequence(Mapping mapping, String market) {
+        int marketId = marketId(market);
+        int slot = marketId >= 0 ? mapping.slot(marketId, readerNames) : -1;
+        if (slot < 0) {
+            return -2;
+        }
+        long sequence = mapping.buffer.getLong(mapping.slotBase(slot) + SEQUENCE);
+        Fences.loadFence();
+        return sequence;
+    }
+
+    /** The seqlock read loop; {@code lastUpdate} may be null. */
+    private int read(int marketId, double[] buyPrices, double[] sellPrices, double[] maxQuantities, long[] lastUpdate) {
+        long stalled = -1;
+        long stalledSince = 0;
+        int spins = 0;
+        while (true) {
+            Mapping mapping = current();
+            int slot = mapping.slot(marketId, readerNames);
+            if (slot < 0) {
+                return -1;
+            }
+            MappedByteBuffer buffer = mapping.buffer;
+            int base = mapping.slotBase(slot);
+            long before = buffer.getLong(base + SEQUENCE);
+            Fences.loadFence();
+            if ((before & 1) != 0) {
+                if (before != stalled) {
+                    stalled = before;
+                    spins = 0;
+                }
+                stalledSince = backOff(marketId, spins++, stalledSince);
+                continue;
+            }
+            long timestamp = buffer.getLong(base + LAST_UPDATE);
+            // A new generation may be deeper than the arrays were sized for.
+            int depth = Math.min(Math.min(buffer.getInt(base + DEPTH), mapping.maxLevels), buyPrices.length);
+            for (int i = 0; i < depth; i++) {
+                int offset = base + LEVELS + i * LEVEL_SIZE;
+                buyPrices[i] = buffer.getDouble(offset);
+                sellPrices[i] = buffer.getDouble(offset + 8);
+                maxQuantities[i] = buffer.getDouble(offset + 16);
+            }
+            Fences.loadFence();
+            if (buffer.getLong(base + SEQUENCE) == before) {
+                if (lastUpdate != null) {
+                    lastUpdate[0] = timestamp;
+                }
+                return before == 0 ? -1 : depth;
+            }
+        }
+    }
+
+    /**
+     * Called each time a read finds a slot mid-write, {@code spins} times in a
+     * row for the same write: spins at first, then yields, and throws once that
+     * write has been under way for longer than the stall timeout. Returns when
+     * the wait began.
+     */
+    private long backOff(int marketId, int spins, long stalledSince) {
+        if (spins < SPINS_BEFORE_YIELD) {
+            return stalledSince;
+        }
+        long now = System.nanoTime();
+        if (spins == SPINS_BEFORE_YIELD) {
+            return now;
+        }
+        if (now - stalledSince > stallTimeoutNanos) {
+            throw new IllegalStateException("writer stalled mid-update of " + readerNames[marketId] + " for "
+                    + TimeUnit.NANOSECONDS.toMillis(now - stalledSince) + " ms");
+        }
+        Thread.yield();
+        return stalledSince;
+    }
+
+    /** The current mapping, switching to the next generation of the file if this one was superseded. */
+    private Mapping current() {
+        Mapping mapping = this.mapping;
+        if (mapping.buffer.getInt(SUPERSEDED_OFFSET) != 0 && !writable) {
+            return remap(mapping);
+        }
+        return mapping;
+    }
+
+    private synchronized Mapping remap(Mapping superseded) {
+        if (mapping != superseded) {
+            return mapping;
+        }
+        try {
+            Mapping next = map(file);
+            mapping = next;
+            superseded.channel.close();
+            return next;
+        } catch (IOException e) {
+            throw new UncheckedIOException("cannot map the new generation of " + file, e);
+        }
+    }
+
+    /**
+     * Closes the file. The mapping itself stays valid until it is garbage
+     * collected, Java offers no portable way to unmap it.
+     */
+    @Override
+    public void close() throws IOException {
+        Mapping mapping = this.mapping;
+        if (writable) {
+            mapping.buffer.force();
+        }
+        mapping.channel.close();
+        if (writerLock != null) {
+            writerLock.channel().close();
+        }
+    }
+
+    /** One generation of the file as mapped, with the slots of the reader's market ids in it. */
+    private static final class Mapping {
+        private final FileChannel channel;
+        private final MappedByteBuffer buffer;
+        private final int maxMarkets;
+        private final int maxLevels;
+        private final int slotSize;
+        /** Slot plus one by reader market id, 0 if not resolved yet. */
+        private volatile int[] slots = new int[0];
+
+        Mapping(FileChannel channel, MappedByteBuffer buffer) {
+            this.channel = channel;
+            this.buffer = buffer;
+            this.maxMarkets = buffer.getInt(MAX_MARKETS_OFFSET);
+            this.maxLevels = buffer.getInt(MAX_LEVELS_OFFSET);
+            this.slotSize = buffer.getInt(SLOT_SIZE_OFFSET);
+        }
+
+        int slotBase(int slot) {
+            return HEADER_SIZE + slot * slotSize;
+        }
+
+        /** The slot of reader id {@code marketId} in this generation, or -1 if it was not written yet. */
+        int slot(int marketId, String[] names) {
+            int[] slots = this.slots;
+            if (marketId < slots.length && slots[marketId] != 0) {
+                return slots[marketId] - 1;
+            }
+            if (marketId < 0 || marketId >= names.length) {
+                throw new IndexOutOfBoundsException("unknown market id " + marketId);
+            }
+            int slot = slotOf(names[marketId]);
+            if (slot >= 0) {
+                synchronized (this) {
+                    int[] grown = this.slots;
+                    if (marketId >= grown.length) {
+                        grown = Arrays.copyOf(grown, names.length);
+                    } else {
+                        grown = grown.clone();
+                    }
+                    grown[marketId] = slot + 1;
+                    this.slots = grown;
+                }
+            }
+            return slot;
+        }
+
+        int slotOf(String market) {
+            byte[] name = market.getBytes(StandardCharsets.UTF_8);
+            int count = buffer.getInt(MARKET_COUNT_OFFSET);
+            Fences.loadFence();
+            for (int i = 0; i < count; i++) {
+                if (nameEquals(slotBase(i), name)) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        private boolean nameEquals(int base, byte[] name) {
+            if (buffer.getInt(base + NAME_LENGTH) != name.length) {
+                return false;
+            }
+            for (int i = 0; i < name.length; i++) {
+                if (buffer.get(base + NAME + i) != name[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
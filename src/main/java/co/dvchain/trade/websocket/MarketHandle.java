@@ -0,0 +1,49 @@
+package co.dvchain.trade.websocket;
+
+import co.dvchain.trade.clientmessages.Clientmessages.LevelData;
+
+/**
+ * A market's place in a {@link QuoteManager}. Holds the market's slot itself,
+ * so reading the latest quote is one volatile read with no lookup by name or
+ * id. Handles are cheap and can be kept for the life of the quote manager.
+ */
+public final class MarketHandle {
+    private final int id;
+    private final String market;
+    private final QuoteManager.Slot slot;
+
+    MarketHandle(int id, String market, QuoteManager.Slot slot) {
+        this.id = id;
+        this.market = market;
+        this.slot = slot;
+    }
+
+    /** The market's id in the {@link MarketRegistry} of its quote manager. */
+    public int getId() {
+        return id;
+    }
+
+    public String getMarket() {
+        return market;
+    }
+
+    /** The latest levels of the market, or null before its first update. */
+    public LevelData latestQuote() {
+        return slot.quote;
+    }
+
+    /** Running depth of the latest quote, built on first use, or null before the first update. */
+    public DepthBook depth() {
+        return slot.depth();
+    }
+
+    /** The market's history, or null unless {@link QuoteManager#enableHistory} is on. */
+    public LevelHistory history() {
+        return slot.history;
+    }
+
+    @Override
+    public String toString() {
+        return market + "#" + id;
+    }
+}
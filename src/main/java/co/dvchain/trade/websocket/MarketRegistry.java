@@ -0,0 +1,68 @@
+package co.dvchain.trade.websocket;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+import co.dvchain.trade.clientmessages.Clientmessages.AvailableTickerResponse;
+
+/**
+ * Interns market names such as "BTC/USD" as dense int ids, 0, 1, 2... in the
+ * order they are first seen, so per-market state can live in arrays indexed by
+ * id instead of maps keyed by name. Ids are never reused or removed. Lookups
+ * by name hash once; lookups by id are array reads.
+ */
+public final class MarketRegistry {
+    private final ConcurrentHashMap<String, Integer> ids = new ConcurrentHashMap<>();
+    private volatile String[] names = new String[16];
+    private volatile int size;
+
+    /** Returns the id of {@code market}, assigning the next one if it is new. */
+    public int register(String market) {
+        Integer id = ids.get(market);
+        if (id != null) {
+            return id;
+        }
+        synchronized (this) {
+            id = ids.get(market);
+            if (id != null) {
+                return id;
+            }
+            int next = size;
+            String[] current = names;
+            if (next == current.length) {
+                current = Arrays.copyOf(current, current.length * 2);
+            }
+            current[next] = market;
+            // Publish the name before the id, so any id handed out has its name.
+            names = current;
+            size = next + 1;
+            ids.put(market, next);
+            return next;
+        }
+    }
+
+    /** Registers every market of a ticker list, in its order. */
+    public void register(AvailableTickerResponse tickers) {
+        for (int i = 0; i < tickers.getTickersCount(); i++) {
+            register(tickers.getTickers(i));
+        }
+    }
+
+    /** The id of {@code market}, or -1 if it was never registered. */
+    public int id(String market) {
+        Integer id = ids.get(market);
+        return id != null ? id : -1;
+    }
+
+    public String name(int id) {
+        if (id < 0 || id >= size) {
+            throw new IndexOutOfBoundsException("unknown market id " + id);
+        }
+        return names[id];
+    }
+
+    /** The number of markets registered, one more than the highest id. */
+    public int size() {
+        return size;
+    }
+}
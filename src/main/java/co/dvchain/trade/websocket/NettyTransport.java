@@ -0,0 +1,338 @@
+package co.dvchain.trade.websocket;
+
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.util.Map;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLException;
+import javax.net.ssl.SSLParameters;
+
+import io.netty.bootstrap.Bootstrap;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.ChannelPipeline;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.SimpleChannelInboundHandler;
+import io.netty.channel.epoll.Epoll;
+import io.netty.channel.epoll.EpollEventLoopGroup;
+import io.netty.channel.epoll.EpollSocketChannel;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.channel.socket.nio.NioSocketChannel;
+import io.netty.handler.codec.http.DefaultHttpHeaders;
+import io.netty.handler.codec.http.HttpClientCodec;
+import io.netty.handler.codec.http.HttpHeaders;
+import io.netty.handler.codec.http.HttpObjectAggregator;
+import io.netty.handler.codec.http.websocketx.BinaryWebSocketFrame;
+import io.netty.handler.codec.http.websocketx.CloseWebSocketFrame;
+import io.netty.handler.codec.http.websocketx.PingWebSocketFrame;
+import io.netty.handler.codec.http.websocketx.PongWebSocketFrame;
+import io.netty.handler.codec.http.websocketx.WebSocketClientHandshaker;
+import io.netty.handler.codec.http.websocketx.WebSocketClientHandshakerFactory;
+import io.netty.handler.codec.http.websocketx.WebSocketClientProtocolHandler;
+import io.netty.handler.codec.http.websocketx.WebSocketFrame;
+import io.netty.handler.codec.http.websocketx.WebSocketFrameAggregator;
+import io.netty.handler.codec.http.websocketx.WebSocketVersion;
+import io.netty.handler.ssl.SslContext;
+import io.netty.handler.ssl.SslContextBuilder;
+import io.netty.handler.ssl.SslHandler;
+import io.netty.handler.timeout.IdleState;
+import io.netty.handler.timeout.IdleStateEvent;
+import io.netty.handler.timeout.IdleStateHandler;
+
+/**
+ * {@link WebsocketTransport} on Netty, using the native epoll transport where
+ * it is available (Linux) and NIO elsewhere. Frames are read into pooled direct
+ * buffers and handed to the listener as direct {@link ByteBuffer}s over that
+ * memory, which goes back to the pool when the callback returns. The event
+ * loop threads are shared by all sessions of the transport. As with
+ * {@link OkHttpTransport}, a ping goes out after 10 seconds without a write,
+ * and a session whose ping is still unanswered at the next one fails. TLS
+ * sessions verify the server's hostname against its certificate.
+ *
+ * <p>Netty is an optional dependency of this library; add
+ * {@code io.netty:netty-codec-http}, and for epoll
+ * {@code io.netty:netty-transport-native-epoll} with the
+ * {@code linux-x86_64} classifier, to use this transport.
+ */
+public final class NettyTransport implements WebsocketTransport {
+    private static final Logger logger = Logger.getLogger(NettyTransport.class.getName());
+    private static final int MAX_FRAME_SIZE = 16 * 1024 * 1024;
+    private static final long CLOSE_TIMEOUT_SECONDS = 60;
+    private static final long PING_INTERVAL_SECONDS = 10;
+
+    private final EventLoopGroup group;
+    private final Class<? extends SocketChannel> channelType;
+    private final SslContext sslContext;
+
+    /** One event loop thread, which is plenty for a handful of connections. */
+    public NettyTransport() {
+        this(1);
+    }
+
+    public NettyTransport(int threads) {
+        this(threads, null);
+    }
+
+    /**
+     * A transport whose {@code wss} sessions use {@code sslContext}, for instance
+     * to trust a private CA; null for the JDK's default trust store. Hostnames
+     * are verified either way.
+     */
+    public NettyTransport(int threads, SslContext sslContext) {
+        if (sslContext == null) {
+            try {
+                sslContext = SslContextBuilder.forClient().build();
+            } catch (SSLException e) {
+                throw new IllegalStateException("Could not set up TLS", e);
+            }
+        }
+        this.sslContext = sslContext;
+        ThreadFactory threadFactory = runnable -> {
+            Thread thread = new Thread(runnable, "websocket-netty");
+            thread.setDaemon(true);
+            return thread;
+        };
+        if (Epoll.isAvailable()) {
+            group = new EpollEventLoopGroup(threads, threadFactory);
+            channelType = EpollSocketChannel.class;
+        } else {
+            group = new NioEventLoopGroup(threads, threadFactory);
+            channelType = NioSocketChannel.class;
+        }
+        logger.fine("Netty transport on " + channelType.getSimpleName());
+    }
+
+    /** True if sessions run on the native epoll transport rather than NIO. */
+    public boolean isEpoll() {
+        return channelType == EpollSocketChannel.class;
+    }
+
+    /** Netty releases each frame once the listener returns. */
+    @Override
+    public boolean reusesFrameBuffers() {
+        return true;
+    }
+
+    @Override
+    public Session connect(String url, Map<String, String> headers, Listener listener) {
+        URI uri = URI.create(url);
+        boolean secure = "wss".equalsIgnoreCase(uri.getScheme());
+        int port = uri.getPort() != -1 ? uri.getPort() : secure ? 443 : 80;
+        HttpHeaders handshakeHeaders = new DefaultHttpHeaders();
+        for (Map.Entry<String, String> header : headers.entrySet()) {
+            handshakeHeaders.set(header.getKey(), header.getValue());
+        }
+        WebSocketClientHandshaker handshaker = WebSocketClientHandshakerFactory.newHandshaker(
+                uri, WebSocketVersion.V13, null, false, handshakeHeaders, MAX_FRAME_SIZE);
+        NettySession session = new NettySession(listener);
+
+        Bootstrap bootstrap = new Bootstrap()
+                .group(group)
+                .channel(channelType)
+                .option(ChannelOption.TCP_NODELAY, true)
+                .option(ChannelOption.ALLOCATOR, PooledByteBufAllocator.DEFAULT)
+                .handler(new ChannelInitializer<SocketChannel>() {
+                    @Override
+                    protected void initChannel(SocketChannel channel) {
+                        ChannelPipeline pipeline = channel.pipeline();
+                        if (secure) {
+                            pipeline.addLast(tlsHandler(channel, uri.getHost(), port));
+                        }
+                        pipeline.addLast(new HttpClientCodec());
+                        pipeline.addLast(new HttpObjectAggregator(8192));
+                        // Close and pong frames are left to the session, to report the peer's
+                        // code and reason and to track unanswered pings.
+                        pipeline.addLast(new WebSocketClientProtocolHandler(handshaker, false, false));
+                        pipeline.addLast(new WebSocketFrameAggregator(MAX_FRAME_SIZE));
+                        pipeline.addLast(new IdleStateHandler(0, PING_INTERVAL_SECONDS, 0, TimeUnit.SECONDS));
+                        pipeline.addLast(session);
+                    }
+                });
+        ChannelFuture connected = bootstrap.connect(uri.getHost(), port);
+        session.channel = connected.channel();
+        connected.addListener((ChannelFutureListener) future -> {
+            if (!future.isSuccess()) {
+                session.fail(future.cause());
+            }
+        });
+        return session;
+    }
+
+    /**
+     * Netty's client engines send SNI but leave hostname verification off, which
+     * would accept any certificate a trusted CA issued for another host.
+     */
+    private SslHandler tlsHandler(SocketChannel channel, String host, int port) {
+        SslHandler handler = sslContext.newHandler(channel.alloc(), host, port);
+        SSLEngine engine = handler.engine();
+        SSLParameters parameters = engine.getSSLParameters();
+        parameters.setEndpointIdentificationAlgorithm("HTTPS");
+        engine.setSSLParameters(parameters);
+        return handler;
+    }
+
+    /** Closes every session and stops the event loop threads. */
+    public void shutdown() {
+        group.shutdownGracefully(0, 1, TimeUnit.SECONDS);
+    }
+
+    private static final class NettySession extends SimpleChannelInboundHandler<WebSocketFrame> implements Session {
+        private final Listener listener;
+        private volatile Channel channel;
+        private volatile boolean closeSent;
+        private boolean open;
+        private boolean awaitingPong;
+        private boolean closeReceived;
+        private int closeCode;
+        private String closeReason;
+        private boolean finished;
+
+        NettySession(Listener listener) {
+            this.listener = listener;
+        }
+
+        @Override
+        public boolean send(ByteBuffer frame) {
+            Channel channel = this.channel;
+            if (channel == null || !channel.isActive() || closeSent) {
+                return false;
+            }
+            ByteBuf buffer = channel.alloc().directBuffer(frame.remaining());
+            buffer.writeBytes(frame.duplicate());
+            channel.writeAndFlush(new BinaryWebSocketFrame(buffer)).addListener((ChannelFutureListener) this::onWritten);
+            return true;
+        }
+
+        /**
+         * A frame that could not be written leaves the session in an unknown state,
+         * so the connection is failed and dropped; the client then fails the
+         * requests it was waiting on and reconnects.
+         */
+        private void onWritten(ChannelFuture future) {
+            // Writes racing a close handshake are expected to fail.
+            if (!future.isSuccess() && !closeSent && !closeReceived) {
+                fail(future.cause());
+                future.channel().close();
+            }
+        }
+
+        @Override
+        public void close(int code, String reason) {
+            Channel channel = this.channel;
+            if (channel == null || closeSent) {
+                return;
+            }
+            closeSent = true;
+            channel.writeAndFlush(new CloseWebSocketFrame(code, reason)).addListener((ChannelFutureListener) future -> {
+                if (closeReceived) {
+                    channel.close();
+                } else {
+                    channel.eventLoop().schedule(() -> channel.close(), CLOSE_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+                }
+            });
+        }
+
+        @Override
+        public void cancel() {
+            Channel channel = this.channel;
+            if (channel != null) {
+                channel.close();
+            }
+        }
+
+        @Override
+        public void handlerAdded(ChannelHandlerContext ctx) {
+            channel = ctx.channel();
+        }
+
+        @Override
+        public void userEventTriggered(ChannelHandlerContext ctx, Object event) throws Exception {
+            if (event == WebSocketClientProtocolHandler.ClientHandshakeStateEvent.HANDSHAKE_COMPLETE) {
+                open = true;
+                listener.onOpen(this);
+            } else if (event instanceof IdleStateEvent && ((IdleStateEvent) event).state() == IdleState.WRITER_IDLE) {
+                ping(ctx);
+                return;
+            }
+            super.userEventTriggered(ctx, event);
+        }
+
+        private void ping(ChannelHandlerContext ctx) {
+            if (!open || closeSent) {
+                return;
+            }
+            if (awaitingPong) {
+                fail(new SocketTimeoutException("sent ping but didn't receive pong within "
+                        + TimeUnit.SECONDS.toMillis(PING_INTERVAL_SECONDS) + "ms"));
+                ctx.close();
+                return;
+            }
+            awaitingPong = true;
+            ctx.writeAndFlush(new PingWebSocketFrame()).addListener((ChannelFutureListener) this::onWritten);
+        }
+
+        @Override
+        protected void channelRead0(ChannelHandlerContext ctx, WebSocketFrame frame) {
+            if (frame instanceof BinaryWebSocketFrame) {
+                ByteBuf content = frame.content();
+                // A single pooled direct buffer, read in place; aggregated frames are merged.
+                listener.onMessage(this, content.nioBuffer(content.readerIndex(), content.readableBytes()));
+            } else if (frame instanceof PongWebSocketFrame) {
+                awaitingPong = false;
+            } else if (frame instanceof CloseWebSocketFrame) {
+                CloseWebSocketFrame close = (CloseWebSocketFrame) frame;
+                closeReceived = true;
+                closeCode = close.statusCode() != -1 ? close.statusCode() : 1005;
+                closeReason = close.reasonText();
+                if (closeSent) {
+                    ctx.close();
+                } else {
+                    listener.onClosing(this, closeCode, closeReason);
+                }
+            }
+        }
+
+        @Override
+        public void channelInactive(ChannelHandlerContext ctx) {
+            if (closeReceived && finish()) {
+                listener.onClosed(this, closeCode, closeReason);
+            } else {
+                fail(new IOException("Connection closed without a close frame"));
+            }
+        }
+
+        @Override
+        public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
+            fail(cause);
+            ctx.close();
+        }
+
+        /** Reports a failure unless the session already ended. Runs on the event loop. */
+        void fail(Throwable cause) {
+            if (finish()) {
+                listener.onFailure(this, cause);
+            }
+        }
+
+        private boolean finish() {
+            if (finished) {
+                return false;
+            }
+            finished = true;
+            return true;
+        }
+    }
+}
@@ -0,0 +1,147 @@
+package co.dvchain.trade.websocket;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.WebSocket;
+import okhttp3.WebSocketListener;
+import okio.ByteString;
+
+/**
+ * {@link WebsocketTransport} on OkHttp. Inbound frames are handed over as heap
+ * buffers over the array backing OkHttp's {@link ByteString}, without a copy;
+ * those arrays are never reused, so frames can be kept.
+ */
+public final class OkHttpTransport implements WebsocketTransport {
+    private final OkHttpClient client;
+
+    public OkHttpTransport() {
+        this(new OkHttpClient.Builder()
+                .pingInterval(10, TimeUnit.SECONDS)
+                .build());
+    }
+
+    public OkHttpTransport(OkHttpClient client) {
+        this.client = client;
+    }
+
+    public OkHttpClient getClient() {
+        return client;
+    }
+
+    @Override
+    public Session connect(String url, Map<String, String> headers, Listener listener) {
+        Request.Builder request = new Request.Builder().url(url);
+        for (Map.Entry<String, String> header : headers.entrySet()) {
+            request.header(header.getKey(), header.getValue());
+        }
+        OkHttpSession session = new OkHttpSession(listener);
+        session.webSocket = client.newWebSocket(request.build(), session);
+        return session;
+    }
+
+    private static final class OkHttpSession extends WebSocketListener implements Session {
+        private final Listener listener;
+        private final BackingArray backingArray = new BackingArray();
+        private volatile WebSocket webSocket;
+
+        OkHttpSession(Listener listener) {
+            this.listener = listener;
+        }
+
+        @Override
+        public boolean send(ByteBuffer frame) {
+            WebSocket socket = webSocket;
+            return socket != null && socket.send(ByteString.of(frame));
+        }
+
+        @Override
+        public void close(int code, String reason) {
+            WebSocket socket = webSocket;
+            if (socket != null) {
+                socket.close(code, reason);
+            }
+        }
+
+        @Override
+        public void cancel() {
+            WebSocket socket = webSocket;
+            if (socket != null) {
+                socket.cancel();
+            }
+        }
+
+        @Override
+        public void onOpen(WebSocket webSocket, Response response) {
+            this.webSocket = webSocket;
+            listener.onOpen(this);
+        }
+
+        @Override
+        public void onMessage(WebSocket webSocket, ByteString bytes) {
+            listener.onMessage(this, backingArray.wrap(bytes));
+        }
+
+        @Override
+        public void onClosing(WebSocket webSocket, int code, String reason) {
+            listener.onClosing(this, code, reason);
+        }
+
+        @Override
+        public void onClosed(WebSocket webSocket, int code, String reason) {
+            listener.onClosed(this, code, reason);
+        }
+
+        @Override
+        public void onFailure(WebSocket webSocket, Throwable t, Response response) {
+            this.webSocket = webSocket;
+            listener.onFailure(this, t);
+        }
+    }
+
+    /**
+     * okio only exposes the array behind a {@link ByteString} through
+     * write(OutputStream), which hands it over as-is. Segmented frames arrive in
+     * several writes and are copied.
+     */
+    static final class BackingArray extends OutputStream {
+        private byte[] array;
+        private int offset;
+        private int length;
+        private int writes;
+
+        ByteBuffer wrap(ByteString bytes) {
+            try {
+                bytes.write(this);
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+            ByteBuffer frame = writes == 1
+                    ? ByteBuffer.wrap(array, offset, length)
+                    : ByteBuffer.wrap(bytes.toByteArray());
+            array = null;
+            writes = 0;
+            return frame;
+        }
+
+        @Override
+        public void write(int b) {
+            writes++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            if (writes++ == 0) {
+                array = b;
+                offset = off;
+                length = len;
+            }
+        }
+    }
+}
@@ -0,0 +1,163 @@
+package co.dvchain.trade.websocket;
+
+import co.dvchain.trade.clientmessages.Clientmessages.CreateOrderMessage;
+import co.dvchain.trade.clientmessages.Clientmessages.OrderSide;
+import co.dvchain.trade.clientmessages.Clientmessages.OrderType;
+import co.dvchain.trade.clientmessages.Clientmessages.Types;
+import okio.ByteString;
+
+/**
+ * Pre-encoded order for one (asset, counterAsset, side, type). The constant
+ * fields of the {@link CreateOrderMessage} are serialised once; sending an
+ * order only writes price, quantity, quote id, client tag and request id into
+ * a per-thread buffer. The output is byte for byte what the protobuf builders
+ * produce. Templates are immutable and can be shared between threads.
+ */
+public final class OrderTemplate {
+    private static final ThreadLocal<WireWriter> WRITERS = ThreadLocal.withInitial(WireWriter::new);
+
+    private static final int CLIENT_MESSAGE_TYPE = 1;
+    private static final int CLIENT_MESSAGE_EVENT = 2;
+    private static final int CLIENT_MESSAGE_TOPIC = 3;
+    private static final int CLIENT_MESSAGE_CREATE_ORDER = 9;
+
+    private static final int PRICE = 1;
+    private static final int LIMIT_PRICE = 2;
+    private static final int QTY = 3;
+    private static final int SIDE = 4;
+    private static final int ORDER_TYPE = 5;
+    private static final int QUOTE_ID = 6;
+    private static final int ASSET = 7;
+    private static final int COUNTER_ASSET = 8;
+    private static final int CLIENT_TAG = 9;
+    private static final int EXPIRES = 10;
+
+    private static final String CREATE_ORDER_TOPIC = "createorder";
+
+    private final String asset;
+    private final String counterAsset;
+    private final OrderSide side;
+    private final OrderType orderType;
+    private final byte[] sideAndType;
+    private final byte[] assets;
+    private final byte[] expires;
+
+    public static OrderTemplate market(String asset, String counterAsset, OrderSide side) {
+        return new OrderTemplate(asset, counterAsset, side, OrderType.MARKET);
+    }
+
+    public static OrderTemplate limit(String asset, String counterAsset, OrderSide side) {
+        return new OrderTemplate(asset, counterAsset, side, OrderType.LIMIT);
+    }
+
+    public OrderTemplate(String asset, String counterAsset, OrderSide side, OrderType orderType) {
+        this.asset = asset;
+        this.counterAsset = counterAsset;
+        this.side = side;
+        this.orderType = orderType;
+
+        WireWriter writer = new WireWriter(64);
+        if (side.getNumber() != 0) {
+            writer.writeTag(SIDE, WireReader.WIRETYPE_VARINT);
+            writer.writeVarint32(side.getNumber());
+        }
+        if (orderType.getNumber() != 0) {
+            writer.writeTag(ORDER_TYPE, WireReader.WIRETYPE_VARINT);
+            writer.writeVarint32(orderType.getNumber());
+        }
+        sideAndType = copy(writer);
+
+        writer.reset();
+        if (!asset.isEmpty()) {
+            writer.writeString(ASSET, asset);
+        }
+        if (!counterAsset.isEmpty()) {
+            writer.writeString(COUNTER_ASSET, counterAsset);
+        }
+        assets = copy(writer);
+
+        writer.reset();
+        writer.writeTag(EXPIRES, WireReader.WIRETYPE_VARINT);
+        writer.writeVarint64(-1);
+        expires = copy(writer);
+    }
+
+    public String getAsset() {
+        return asset;
+    }
+
+    public String getCounterAsset() {
+        return counterAsset;
+    }
+
+    public OrderSide getSide() {
+        return side;
+    }
+
+    public OrderType getOrderType() {
+        return orderType;
+    }
+
+    /**
+     * Encodes a complete createorder ClientMessage. {@code price} is sent as the
+     * market price or as the limit price depending on the order type; a null or
+     * empty quote id or client tag is left out.
+     */
+    public ByteString encode(CharSequence requestId, double price, double quantity, CharSequence quoteId, CharSequence clientTag) {
+        WireWriter writer = encodeInto(requestId, price, quantity, quoteId, clientTag);
+        return ByteString.of(writer.buffer(), 0, writer.position());
+    }
+
+    /** Encodes into the calling thread's buffer, which stays valid until its next use. */
+    WireWriter encodeInto(CharSequence requestId, double price, double quantity, CharSequence quoteId, CharSequence clientTag) {
+        int bodyLength = sideAndType.length + assets.length + expires.length;
+        if (Double.doubleToRawLongBits(price) != 0) {
+            bodyLength += 9;
+        }
+        if (Double.doubleToRawLongBits(quantity) != 0) {
+            bodyLength += 9;
+        }
+        if (quoteId != null && quoteId.length() > 0) {
+            bodyLength += WireWriter.stringFieldSize(quoteId);
+        }
+        if (clientTag != null && clientTag.length() > 0) {
+            bodyLength += WireWriter.stringFieldSize(clientTag);
+        }
+
+        WireWriter writer = WRITERS.get();
+        writer.reset();
+        writer.writeTag(CLIENT_MESSAGE_TYPE, WireReader.WIRETYPE_VARINT);
+        writer.writeVarint32(Types.requestresponse_VALUE);
+        if (requestId.length() > 0) {
+            writer.writeString(CLIENT_MESSAGE_EVENT, requestId);
+        }
+        writer.writeString(CLIENT_MESSAGE_TOPIC, CREATE_ORDER_TOPIC);
+        writer.writeTag(CLIENT_MESSAGE_CREATE_ORDER, WireReader.WIRETYPE_LENGTH_DELIMITED);
+        writer.writeVarint32(bodyLength);
+
+        if (Double.doubleToRawLongBits(price) != 0) {
+            writer.writeTag(orderType == OrderType.LIMIT ? LIMIT_PRICE : PRICE, WireReader.WIRETYPE_FIXED64);
+            writer.writeDouble(price);
+        }
+        if (Double.doubleToRawLongBits(quantity) != 0) {
+            writer.writeTag(QTY, WireReader.WIRETYPE_FIXED64);
+            writer.writeDouble(quantity);
+        }
+        writer.writeBytes(sideAndType);
+        if (quoteId != null && quoteId.length() > 0) {
+            writer.writeString(QUOTE_ID, quoteId);
+        }
+        writer.writeBytes(assets);
+        if (clientTag != null && clientTag.length() > 0) {
+            writer.writeString(CLIENT_TAG, clientTag);
+        }
+        writer.writeBytes(expires);
+        return writer;
+    }
+
+    private static byte[] copy(WireWriter writer) {
+        byte[] bytes = new byte[writer.position()];
+        System.arraycopy(writer.buffer(), 0, bytes, 0, bytes.length);
+        return bytes;
+    }
+}
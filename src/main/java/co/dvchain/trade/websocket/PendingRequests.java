@@ -0,0 +1,232 @@
+package co.dvchain.trade.websocket;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Futures of in-flight requests keyed by their primitive request id. The ids
+ * are spread over lock stripes, each an open-addressed table, so consecutive
+ * requests from different threads rarely share a lock and no key is boxed.
+ * A request put with a deadline is failed with a {@link TimeoutException} by
+ * the timing wheel if no response removes it first.
+ */
+final class PendingRequests {
+    private static final int STRIPES = 16;
+
+    private final Stripe[] stripes = new Stripe[STRIPES];
+    private final TimingWheel wheel;
+
+    PendingRequests() {
+        this(null);
+    }
+
+    /** Uses {@code wheel} for deadlines, or the shared wheel if null. */
+    PendingRequests(TimingWheel wheel) {
+        this.wheel = wheel;
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new Stripe();
+        }
+    }
+
+    void put(long id, CompletableFuture<?> future) {
+        put(id, future, null, 0, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Adds a request that expires after {@code timeout}; a timeout of zero or
+     * less never expires. {@code name} only appears in the timeout message.
+     */
+    void put(long id, CompletableFuture<?> future, String name, long timeout, TimeUnit unit) {
+        if (id <= 0) {
+            throw new IllegalArgumentException("request ids must be positive: " + id);
+        }
+        Request request = new Request(this, id, future, name, timeout > 0 ? unit.toMillis(timeout) : 0);
+        Stripe stripe = stripe(id);
+        synchronized (stripe) {
+            stripe.put(id, request);
+        }
+        // A response racing ahead of this leaves the timeout to expire as a no-op.
+        if (request.timeoutMillis > 0) {
+            wheel().schedule(request, timeout, unit);
+        }
+    }
+
+    CompletableFuture<?> remove(long id) {
+        Request request = removeRequest(id);
+        if (request == null) {
+            return null;
+        }
+        if (request.timeoutMillis > 0) {
+            wheel().cancel(request);
+        }
+        return request.future;
+    }
+
+    private Request removeRequest(long id) {
+        if (id <= 0) {
+            return null;
+        }
+        Stripe stripe = stripe(id);
+        synchronized (stripe) {
+            return stripe.remove(id);
+        }
+    }
+
+    int size() {
+        int size = 0;
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                size += stripe.size;
+            }
+        }
+        return size;
+    }
+
+    /** Removes and returns every pending future, cancelling their deadlines. */
+    List<CompletableFuture<?>> removeAll() {
+        List<Request> removed = new ArrayList<>();
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                stripe.drainTo(removed);
+            }
+        }
+        List<CompletableFuture<?>> futures = new ArrayList<>(removed.size());
+        for (Request request : removed) {
+            if (request.timeoutMillis > 0) {
+                wheel().cancel(request);
+            }
+            futures.add(request.future);
+        }
+        return futures;
+    }
+
+    /** Fails every pending future with {@code cause} and returns how many there were. */
+    int failAll(Throwable cause) {
+        List<CompletableFuture<?>> futures = removeAll();
+        for (CompletableFuture<?> future : futures) {
+            future.completeExceptionally(cause);
+        }
+        return futures.size();
+    }
+
+    private Stripe stripe(long id) {
+        return stripes[(int) (id & (STRIPES - 1))];
+    }
+
+    private TimingWheel wheel() {
+        return wheel != null ? wheel : SharedWheel.WHEEL;
+    }
+
+    /** One ticker thread serves every client; it is only started by the first deadline. */
+    private static final class SharedWheel {
+        static final TimingWheel WHEEL = new TimingWheel(10, 512, "websocket-request-timeouts");
+    }
+
+    private static final class Request extends TimingWheel.Timeout {
+        private final PendingRequests owner;
+        private final long id;
+        private final CompletableFuture<?> future;
+        private final String name;
+        private final long timeoutMillis;
+
+        Request(PendingRequests owner, long id, CompletableFuture<?> future, String name, long timeoutMillis) {
+            this.owner = owner;
+            this.id = id;
+            this.future = future;
+            this.name = name;
+            this.timeoutMillis = timeoutMillis;
+        }
+
+        @Override
+        void expire() {
+            if (owner.removeRequest(id) == this) {
+                future.completeExceptionally(new TimeoutException(
+                        (name != null ? name : "request") + " " + id + " timed out after " + timeoutMillis + " ms"));
+            }
+        }
+    }
+
+    /** Linear-probing table; 0 marks an empty slot, removal shifts the probe chain back. */
+    private static final class Stripe {
+        private long[] keys = new long[16];
+        private Request[] values = new Request[16];
+        private int size;
+
+        void put(long id, Request request) {
+            if ((size + 1) * 2 > keys.length) {
+                resize(keys.length * 2);
+            }
+            int mask = keys.length - 1;
+            int slot = slot(id, mask);
+            while (keys[slot] != 0 && keys[slot] != id) {
+                slot = (slot + 1) & mask;
+            }
+            if (keys[slot] == 0) {
+                size++;
+            }
+            keys[slot] = id;
+            values[slot] = request;
+        }
+
+        Request remove(long id) {
+            int mask = keys.length - 1;
+            int slot = slot(id, mask);
+            while (keys[slot] != id) {
+                if (keys[slot] == 0) {
+                    return null;
+                }
+                slot = (slot + 1) & mask;
+            }
+            Request request = values[slot];
+            size--;
+            // Shift later entries of the probe chain back into the gap.
+            int gap = slot;
+            int next = (gap + 1) & mask;
+            while (keys[next] != 0) {
+                int home = slot(keys[next], mask);
+                if (((next - home) & mask) >= ((next - gap) & mask)) {
+                    keys[gap] = keys[next];
+                    values[gap] = values[next];
+                    gap = next;
+                }
+                next = (next + 1) & mask;
+            }
+            keys[gap] = 0;
+            values[gap] = null;
+            return request;
+        }
+
+        void drainTo(List<Request> target) {
+            for (int i = 0; i < keys.length; i++) {
+                if (keys[i] != 0) {
+                    target.add(values[i]);
+                    keys[i] = 0;
+                    values[i] = null;
+                }
+            }
+            size = 0;
+        }
+
+        private void resize(int capacity) {
+            long[] oldKeys = keys;
+            Request[] oldValues = values;
+            keys = new long[capacity];
+            values = new Request[capacity];
+            size = 0;
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldKeys[i] != 0) {
+                    put(oldKeys[i], oldValues[i]);
+                }
+            }
+        }
+
+        private static int slot(long id, int mask) {
+            // Ids in one stripe share their low bits, mix the rest in.
+            long hash = (id >>> 4) * 0x9E3779B97F4A7C15L;
+            return (int) (hash >>> 32) & mask;
+        }
+    }
+}
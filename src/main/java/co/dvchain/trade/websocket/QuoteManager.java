@@ -1,17 +1,252 @@
 package co.dvchain.trade.websocket;
 
-import java.util.HashMap;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 import co.dvchain.trade.clientmessages.Clientmessages.LevelData;
+import co.dvchain.trade.clientmessages.Clientmessages.OrderSide;
 
-public class QuoteManager {
-    private HashMap<String, LevelData> latestQuote = new HashMap<String, LevelData>();
+/**
+ * Latest {@link LevelData} per market, written by the feed thread and read by
+ * any number of threads. Markets are interned by a {@link MarketRegistry} and
+ * each has a slot, indexed by market id, holding an immutable quote, so
+ * {@link #getQuote(int)} and {@link MarketHandle#latestQuote()} are a single
+ * volatile read. Writers are serialized and bump the slot's sequence around
+ * each store, odd while a store is under way; {@link #getQuotes} reads the
+ * sequences of its markets, then their quotes, and keeps the quotes if none of
+ * the sequences moved, so a snapshot never mixes markets from different
+ * moments and only stores to those markets make it retry. Retries spin, then
+ * yield, and after a few dozen the snapshot is taken under the writers' lock, so a reader cannot be starved by a busy market.
+ * The first depth query after an update builds the market's {@link DepthBook}
+ * and keeps it until the next one, so updates cost nothing for markets nobody
+ * sizes orders against and sizing queries are a binary search over the
+ * market's size tiers.
+ */
+public class QuoteManager implements QuoteStore {
+    private static final int SPINS_BEFORE_YIELD = 16;
+    private static final int RETRIES_BEFORE_LOCK = 64;
 
+    private final MarketRegistry markets;
+    private volatile Slot[] slots = new Slot[16];
+    private final Object writeLock = new Object();
+    private volatile boolean historyEnabled;
+    private int historyCapacity;
+    private int historyLevels;
+    private long historyMaxAge;
+
+    public QuoteManager() {
+        this(new MarketRegistry());
+    }
+
+    public QuoteManager(MarketRegistry markets) {
+        this.markets = markets;
+    }
+
+    public MarketRegistry getMarkets() {
+        return markets;
+    }
+
+    /**
+     * Keeps a {@link LevelHistory} of every market from its next update on: the
+     * last {@code capacity} updates, {@code maxLevels} deep, no older than
+     * {@code maxAge} behind the newest (0 for no limit), in the units of the
+     * feed's {@code last_update}. Each market's ring is allocated in full when
+     * the market is first updated.
+     */
+    public void enableHistory(int capacity, int maxLevels, long maxAge) {
+        if (capacity < 1 || maxLevels < 1) {
+            throw new IllegalArgumentException("capacity and maxLevels must be positive");
+        }
+        synchronized (writeLock) {
+            historyCapacity = capacity;
+            historyLevels = maxLevels;
+            historyMaxAge = maxAge;
+            historyEnabled = true;
+        }
+    }
+
+    /** The history of {@code symbol}, or null if history is off or it had no update since. */
+    public LevelHistory getHistory(String symbol) {
+        int id = markets.id(symbol);
+        return id >= 0 ? getHistory(id) : null;
+    }
+
+    public LevelHistory getHistory(int marketId) {
+        Slot[] slots = this.slots;
+        Slot slot = marketId >= 0 && marketId < slots.length ? slots[marketId] : null;
+        return slot != null ? slot.history : null;
+    }
+
+    @Override
     public void updateQuote(LevelData levelData) {
-        latestQuote.put(levelData.getMarket(), levelData);
+        updateQuote(markets.register(levelData.getMarket()), levelData);
+    }
+
+    @Override
+    public void updateQuote(int marketId, LevelData levelData) {
+        Slot slot = slot(marketId);
+        synchronized (writeLock) {
+            slot.sequence++;
+            slot.quote = levelData;
+            slot.sequence++;
+            if (historyEnabled) {
+                LevelHistory history = slot.history;
+                if (history == null) {
+                    history = new LevelHistory(marketId, levelData.getMarket(), historyCapacity, historyLevels, historyMaxAge);
+                    slot.history = history;
+                }
+                history.append(levelData);
+            }
+        }
     }
 
+    @Override
     public LevelData getQuote(String symbol) {
-        return latestQuote.get(symbol);
+        int id = markets.id(symbol);
+        return id >= 0 ? getQuote(id) : null;
+    }
+
+    public LevelData getQuote(int marketId) {
+        Slot[] slots = this.slots;
+        Slot slot = marketId >= 0 && marketId < slots.length ? slots[marketId] : null;
+        return slot != null ? slot.quote : null;
+    }
+
+    /** The depth of the latest quote of {@code symbol}, or null if it has none. */
+    public DepthBook getDepth(String symbol) {
+        int id = markets.id(symbol);
+        return id >= 0 ? getDepth(id) : null;
+    }
+
+    public DepthBook getDepth(int marketId) {
+        Slot[] slots = this.slots;
+        Slot slot = marketId >= 0 && marketId < slots.length ? slots[marketId] : null;
+        return slot != null ? slot.depth() : null;
+    }
+
+    /** See {@link DepthBook#priceForQuantity}; NaN without a quote. */
+    public double priceForQuantity(String market, OrderSide side, double quantity) {
+        DepthBook depth = getDepth(market);
+        return depth != null ? depth.priceForQuantity(side, quantity) : Double.NaN;
+    }
+
+    public double mid(String market) {
+        DepthBook depth = getDepth(market);
+        return depth != null ? depth.mid() : Double.NaN;
+    }
+
+    /** See {@link DepthBook#spread}; NaN without a quote. */
+    public double spread(String market, double quantity) {
+        DepthBook depth = getDepth(market);
+        return depth != null ? depth.spread(quantity) : Double.NaN;
+    }
+
+    /** A handle on the quote of {@code symbol}, registering the market if it is new. */
+    public MarketHandle handle(String symbol) {
+        int id = markets.register(symbol);
+        return new MarketHandle(id, symbol, slot(id));
+    }
+
+    @Override
+    public Map<String, LevelData> getQuotes(Collection<String> symbols) {
+        String[] names = symbols.toArray(new String[0]);
+        Slot[] slots = new Slot[names.length];
+        long[] sequences = new long[names.length];
+        LevelData[] quotes = new LevelData[names.length];
+        for (int retries = 0; !readQuotes(names, slots, sequences, quotes); retries++) {
+            if (retries < SPINS_BEFORE_YIELD) {
+                continue;
+            }
+            if (retries < RETRIES_BEFORE_LOCK) {
+                Thread.yield();
+                continue;
+            }
+            synchronized (writeLock) {
+                readQuotes(names, slots, sequences, quotes);
+            }
+            break;
+        }
+        Map<String, LevelData> snapshot = new LinkedHashMap<>();
+        for (int i = 0; i < names.length; i++) {
+            if (quotes[i] != null) {
+                snapshot.put(names[i], quotes[i]);
+            }
+        }
+        return snapshot;
+    }
+
+    /**
+     * One pass of {@link #getQuotes}: false if a store to one of the markets was
+     * under way or happened meanwhile, or one of them was registered meanwhile.
+     */
+    private boolean readQuotes(String[] names, Slot[] slots, long[] sequences, LevelData[] quotes) {
+        for (int i = 0; i < names.length; i++) {
+            // A market is registered before its first store, so look again on every pass.
+            if (slots[i] == null) {
+                int id = markets.id(names[i]);
+                slots[i] = id >= 0 ? slot(id) : null;
+            }
+            if (slots[i] != null) {
+                sequences[i] = slots[i].sequence;
+                if ((sequences[i] & 1) != 0) {
+                    return false;
+                }
+            }
+        }
+        for (int i = 0; i < names.length; i++) {
+            quotes[i] = slots[i] != null ? slots[i].quote : null;
+        }
+        for (int i = 0; i < names.length; i++) {
+            if (slots[i] != null ? slots[i].sequence != sequences[i] : markets.id(names[i]) >= 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private Slot slot(int marketId) {
+        Slot[] slots = this.slots;
+        if (marketId < slots.length && slots[marketId] != null) {
+            return slots[marketId];
+        }
+        synchronized (writeLock) {
+            slots = this.slots;
+            if (marketId >= slots.length) {
+                slots = Arrays.copyOf(slots, Math.max(slots.length * 2, marketId + 1));
+            }
+            Slot slot = slots[marketId];
+            if (slot == null) {
+                slot = new Slot();
+                slots[marketId] = slot;
+            }
+            // Republished even when not grown, so readers see the new slot.
+            this.slots = slots;
+            return slot;
+        }
+    }
+
+    static final class Slot {
+        /** Odd while {@link #quote} is being stored, only written under the writers' lock. */
+        volatile long sequence;
+        volatile LevelData quote;
+        volatile LevelHistory history;
+        /** Built from {@link #quote} by the first reader to ask, racing readers may each build one. */
+        private volatile DepthBook depth;
+
+        /** The depth of the latest quote, or null before the first update. */
+        DepthBook depth() {
+            LevelData quote = this.quote;
+            if (quote == null) {
+                return null;
+            }
+            DepthBook depth = this.depth;
+            if (depth == null || !depth.isOf(quote)) {
+                depth = DepthBook.of(quote);
+                this.depth = depth;
+            }
+            return depth;
+        }
     }
 }
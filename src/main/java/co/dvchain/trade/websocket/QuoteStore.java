@@ -0,0 +1,28 @@
+package co.dvchain.trade.websocket;
+
+import java.util.Collection;
+import java.util.Map;
+
+import co.dvchain.trade.clientmessages.Clientmessages.LevelData;
+
+/**
+ * Where the latest levels of each market are kept: on the heap by a
+ * {@link QuoteManager}, or in a file shared with other processes by a
+ * {@link MappedQuoteManager}. Market ids are those of the feeding client's
+ * {@link MarketRegistry}.
+ */
+public interface QuoteStore {
+    void updateQuote(LevelData levelData);
+
+    /** Stores the quote of a market already known by id, skipping the name lookup. */
+    void updateQuote(int marketId, LevelData levelData);
+
+    /** The latest quote of {@code symbol}, or null if it has none. */
+    LevelData getQuote(String symbol);
+
+    /**
+     * The latest quotes of {@code symbols} as of one instant, in the order given.
+     * Markets without a quote yet are left out.
+     */
+    Map<String, LevelData> getQuotes(Collection<String> symbols);
+}
@@ -0,0 +1,186 @@
+package co.dvchain.trade.websocket;
+
+import java.util.Collection;
+import java.util.concurrent.CompletableFuture;
+
+import co.dvchain.trade.clientmessages.Clientmessages.ClientMessage;
+import co.dvchain.trade.clientmessages.Clientmessages.LevelData;
+import co.dvchain.trade.clientmessages.Clientmessages.LimitsResponse;
+import co.dvchain.trade.clientmessages.Clientmessages.OrderCancelled;
+import co.dvchain.trade.clientmessages.Clientmessages.OrderFilled;
+import co.dvchain.trade.clientmessages.Clientmessages.OrderOpened;
+import co.dvchain.trade.clientmessages.Clientmessages.PricesData;
+import co.dvchain.trade.clientmessages.Clientmessages.TradeStatusResponse;
+
+/**
+ * Two connections with identical subscriptions, used as a hot standby pair.
+ * Market data from both is merged: an update reaches the listener if its
+ * {@code last_update} is newer than anything delivered for that market, or if
+ * it comes from the connection that delivered the last one, so whichever copy
+ * arrives first wins and the other is dropped. Order
+ * notifications are de-duplicated by order id and status time. The listener
+ * is called from both reader threads, but a market's updates reach it one at a
+ * time and in order, see {@link FeedMerger}. Requests go over the first
+ * connection that is open, so losing one socket costs neither market data nor
+ * order entry while it reconnects.
+ */
+public class RedundantWebsocketClient {
+    private final WebsocketClient primary;
+    private final WebsocketClient standby;
+    private final FeedMerger merger = new FeedMerger();
+    private volatile WebsocketListener listener;
+
+    public RedundantWebsocketClient(String url, String apiKey, String secretKey) {
+        this(new WebsocketClient(url, apiKey, secretKey), new WebsocketClient(url, apiKey, secretKey));
+    }
+
+    RedundantWebsocketClient(WebsocketClient primary, WebsocketClient standby) {
+        this.primary = primary;
+        this.standby = standby;
+        primary.setMessageHandler(new Merger(primary, 0));
+        standby.setMessageHandler(new Merger(standby, 1));
+    }
+
+    public void setMessageHandler(WebsocketListener listener) {
+        this.listener = listener;
+    }
+
+    public void connect() {
+        primary.connect();
+        standby.connect();
+    }
+
+    public void disconnect() {
+        primary.disconnect();
+        standby.disconnect();
+    }
+
+    public void subscribeLevel(String symbol) {
+        primary.subscribeLevel(symbol);
+        standby.subscribeLevel(symbol);
+    }
+
+    public void subscribeLevels(Collection<String> symbols) {
+        primary.subscribeLevels(symbols);
+        standby.subscribeLevels(symbols);
+    }
+
+    public void unsubscribeLevel(String symbol) {
+        primary.unsubscribeLevel(symbol);
+        standby.unsubscribeLevel(symbol);
+    }
+
+    public void subscribePrices(String symbol) {
+        primary.subscribePrices(symbol);
+        standby.subscribePrices(symbol);
+    }
+
+    public void unsubscribePrices(String symbol) {
+        primary.unsubscribePrices(symbol);
+        standby.unsubscribePrices(symbol);
+    }
+
+    public CompletableFuture<TradeStatusResponse> sendMarketOrder(String quote_id, String asset, String counterAsset, Double price, String side, Double quantity, String clientTag) {
+        return active().sendMarketOrder(quote_id, asset, counterAsset, price, side, quantity, clientTag);
+    }
+
+    public CompletableFuture<TradeStatusResponse> sendLimitOrder(String asset, String counterAsset, Double price, String side, Double quantity, String clientTag) {
+        return active().sendLimitOrder(asset, counterAsset, price, side, quantity, clientTag);
+    }
+
+    public CompletableFuture<TradeStatusResponse> sendOrder(OrderTemplate template, double price, double quantity, String quoteId, String clientTag) {
+        return active().sendOrder(template, price, quantity, quoteId, clientTag);
+    }
+
+    public CompletableFuture<LimitsResponse> getLimits() {
+        return active().getLimits();
+    }
+
+    public CompletableFuture<TradeStatusResponse> cancelOrder(String orderId) {
+        return active().cancelOrder(orderId);
+    }
+
+    /** Number of updates and notifications dropped because the other connection delivered them first. */
+    public long getDuplicateCount() {
+        return merger.getDuplicateCount();
+    }
+
+    public WebsocketClient getPrimary() {
+        return primary;
+    }
+
+    public WebsocketClient getStandby() {
+        return standby;
+    }
+
+    /** The connection requests go over: the primary while it is open, else the standby if that is. */
+    WebsocketClient active() {
+        if (primary.getConnectionState() == ConnectionState.OPEN) {
+            return primary;
+        }
+        if (standby.getConnectionState() == ConnectionState.OPEN) {
+            return standby;
+        }
+        return primary;
+    }
+
+    /** Receives the callbacks of one of the two connections. */
+    private final class Merger implements WebsocketListener {
+        private final WebsocketClient source;
+        private final int index;
+
+        Merger(WebsocketClient source, int index) {
+            this.source = source;
+            this.index = index;
+        }
+
+        @Override
+        public void onClientMessage(ClientMessage message) {
+            // Raw messages cannot be matched up in general, pass on those of the active connection.
+            WebsocketListener listener = RedundantWebsocketClient.this.listener;
+            if (listener != null && active() == source) {
+                listener.onClientMessage(message);
+            }
+        }
+
+        @Override
+        public void onLevelUpdate(LevelData levelData) {
+            WebsocketListener listener = RedundantWebsocketClient.this.listener;
+            if (listener != null) {
+                merger.onLevelUpdate(listener, index, levelData);
+            }
+        }
+
+        @Override
+        public void onPriceUpdate(PricesData pricesData) {
+            WebsocketListener listener = RedundantWebsocketClient.this.listener;
+            if (listener != null) {
+                merger.onPriceUpdate(listener, index, pricesData);
+            }
+        }
+
+        @Override
+        public void onOrderFill(OrderFilled orderFilled) {
+            WebsocketListener listener = RedundantWebsocketClient.this.listener;
+            if (listener != null) {
+                merger.onOrderFill(listener, orderFilled);
+            }
+        }
+
+        @Override
+        public void onOrderCancel(OrderCancelled orderCancelled) {
+            WebsocketListener listener = RedundantWebsocketClient.this.listener;
+            if (listener != null) {
+                merger.onOrderCancel(listener, orderCancelled);
+            }
+        }
+
+        @Override
+        public void onOrderOpened(OrderOpened orderOpened) {
+            WebsocketListener listener = RedundantWebsocketClient.this.listener;
+            if (listener != null) {
+                merger.onOrderOpened(listener, orderOpened);
+            }
+        }
+    }
+}
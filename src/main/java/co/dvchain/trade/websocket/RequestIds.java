@@ -0,0 +1,82 @@
+package co.dvchain.trade.websocket;
+
+import java.security.SecureRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Generates request ids of the form {@code <prefix>-<counter>}. The prefix is
+ * random per client so ids from different clients sharing a server never
+ * collide; the counter makes each id a single atomic increment, and lets the
+ * echoed id be parsed back to a {@code long} without allocating.
+ */
+final class RequestIds {
+    private static final char[] ALPHABET = "0123456789abcdefghijklmnopqrstuvwxyz".toCharArray();
+    private static final int PREFIX_LENGTH = 8;
+    private static final ThreadLocal<StringBuilder> BUILDERS = ThreadLocal.withInitial(() -> new StringBuilder(32));
+
+    private final String prefix;
+    private final AtomicLong counter = new AtomicLong();
+
+    RequestIds() {
+        this(randomPrefix());
+    }
+
+    RequestIds(String prefix) {
+        this.prefix = prefix;
+    }
+
+    String prefix() {
+        return prefix;
+    }
+
+    /** Returns the next id, always positive. */
+    long next() {
+        return counter.incrementAndGet();
+    }
+
+    /** Returns the id {@link #next()} returned last, or 0 if it was never called. */
+    long last() {
+        return counter.get();
+    }
+
+    /**
+     * Formats {@code id} into the calling thread's builder, which stays valid until
+     * the thread formats the next id.
+     */
+    CharSequence format(long id) {
+        StringBuilder builder = BUILDERS.get();
+        builder.setLength(0);
+        return builder.append(prefix).append('-').append(id);
+    }
+
+    /** Parses an id produced by this generator, or returns -1 if it is not one. */
+    long parse(CharSequence event) {
+        int length = event.length();
+        if (length <= prefix.length() + 1 || event.charAt(prefix.length()) != '-') {
+            return -1;
+        }
+        for (int i = 0; i < prefix.length(); i++) {
+            if (event.charAt(i) != prefix.charAt(i)) {
+                return -1;
+            }
+        }
+        long id = 0;
+        for (int i = prefix.length() + 1; i < length; i++) {
+            char c = event.charAt(i);
+            if (c < '0' || c > '9' || id > (Long.MAX_VALUE - 9) / 10) {
+                return -1;
+            }
+            id = id * 10 + (c - '0');
+        }
+        return id;
+    }
+
+    private static String randomPrefix() {
+        SecureRandom random = new SecureRandom();
+        char[] prefix = new char[PREFIX_LENGTH];
+        for (int i = 0; i < prefix.length; i++) {
+            prefix[i] = ALPHABET[random.nextInt(ALPHABET.length)];
+        }
+        return new String(prefix);
+    }
+}
@@ -0,0 +1,21 @@
+package co.dvchain.trade.websocket;
+
+/**
+ * Kinds of request/response exchanges, each with its own response deadline,
+ * see {@link WebsocketClient#setRequestTimeout}.
+ */
+public enum RequestType {
+    CREATE_ORDER("createorder"),
+    CANCEL_ORDER("cancelorder"),
+    LIMITS("limits");
+
+    private final String topic;
+
+    RequestType(String topic) {
+        this.topic = topic;
+    }
+
+    public String getTopic() {
+        return topic;
+    }
+}
@@ -0,0 +1,193 @@
+package co.dvchain.trade.websocket;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Bounded single-producer, single-consumer queue with pre-allocated slots.
+ * The producer is the socket reader, the consumer is a dedicated thread that
+ * hands every element to {@code handler} in publish order.
+ */
+class RingBuffer<T> {
+    private final static Logger logger = Logger.getLogger(RingBuffer.class.getName());
+    private static final long PARK_NANOS = 50_000;
+
+    private final Slot<T>[] slots;
+    private final int mask;
+    private final WaitStrategy waitStrategy;
+    private final Consumer<T> handler;
+    private final AtomicLong head = new AtomicLong();
+    private final AtomicLong tail = new AtomicLong();
+    private volatile long highWaterMark;
+    private volatile boolean running = true;
+    private volatile boolean draining;
+    private volatile boolean consumerWaiting;
+    private final Thread consumer;
+    private final RingBuffer<T> predecessor;
+
+    RingBuffer(int capacity, WaitStrategy waitStrategy, Consumer<T> handler, String threadName) {
+        this(capacity, waitStrategy, handler, threadName, null);
+    }
+
+    /**
+     * A ring that replaces {@code predecessor}: its consumer starts handing out
+     * elements only once the predecessor's consumer has finished, so elements
+     * keep their order across the switch. The predecessor must be {@link #drain}ed.
+     */
+    @SuppressWarnings("unchecked")
+    RingBuffer(int capacity, WaitStrategy waitStrategy, Consumer<T> handler, String threadName, RingBuffer<T> predecessor) {
+        if (capacity < 1 || Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("capacity must be a power of two: " + capacity);
+        }
+        this.slots = new Slot[capacity];
+        for (int i = 0; i < capacity; i++) {
+            slots[i] = new Slot<T>();
+        }
+        this.mask = capacity - 1;
+        this.waitStrategy = waitStrategy;
+        this.handler = handler;
+        this.predecessor = predecessor;
+        this.consumer = new Thread(this::consume, threadName);
+        this.consumer.setDaemon(true);
+        this.consumer.start();
+    }
+
+    void publish(T value) {
+        long sequence = head.get();
+        int spins = 0;
+        while (sequence - tail.get() >= slots.length) {
+            if (!consumer.isAlive()) {
+                // Stopped or drained: nobody will ever make room.
+                logger.warning("Dropped an element published after the consumer stopped");
+                return;
+            }
+            idle(spins++);
+        }
+        slots[(int) sequence & mask].value = value;
+        if (waitStrategy == WaitStrategy.BLOCKING) {
+            // A full barrier, so the read of consumerWaiting below cannot pass the
+            // store and miss a consumer that just went to sleep.
+            head.set(sequence + 1);
+        } else {
+            head.lazySet(sequence + 1);
+        }
+
+        long depth = sequence + 1 - tail.get();
+        if (depth > highWaterMark) {
+            highWaterMark = depth;
+        }
+        if (consumerWaiting) {
+            LockSupport.unpark(consumer);
+        }
+    }
+
+    long depth() {
+        return head.get() - tail.get();
+    }
+
+    long highWaterMark() {
+        return highWaterMark;
+    }
+
+    int capacity() {
+        return slots.length;
+    }
+
+    /** Stops the consumer, dropping anything still queued. */
+    void stop() {
+        running = false;
+        LockSupport.unpark(consumer);
+    }
+
+    /**
+     * Stops the consumer once it has handled everything published so far and
+     * waits for it to finish, unless called from the consumer itself. Nothing
+     * may be published once this returns.
+     */
+    void drain() {
+        finish();
+        if (Thread.currentThread() == consumer) {
+            return;
+        }
+        awaitConsumer();
+    }
+
+    /**
+     * Like {@link #drain} but returns at once; a successor ring waits for the
+     * consumer to finish. Called by the producer, which publishes nothing more.
+     */
+    void finish() {
+        draining = true;
+        LockSupport.unpark(consumer);
+    }
+
+    private void awaitConsumer() {
+        boolean interrupted = false;
+        while (consumer.isAlive()) {
+            try {
+                consumer.join();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void consume() {
+        if (predecessor != null) {
+            predecessor.awaitConsumer();
+        }
+        long sequence = tail.get();
+        while (running) {
+            int spins = 0;
+            while (sequence == head.get()) {
+                if (!running || draining) {
+                    return;
+                }
+                if (waitStrategy == WaitStrategy.BLOCKING) {
+                    consumerWaiting = true;
+                    if (sequence == head.get()) {
+                        LockSupport.parkNanos(this, PARK_NANOS);
+                    }
+                    consumerWaiting = false;
+                } else {
+                    idle(spins++);
+                }
+            }
+            Slot<T> slot = slots[(int) sequence & mask];
+            T value = slot.value;
+            slot.value = null;
+            try {
+                handler.accept(value);
+            } catch (Exception e) {
+                logger.log(Level.WARNING, "Dispatch handler failed", e);
+            }
+            tail.lazySet(++sequence);
+        }
+    }
+
+    private void idle(int spins) {
+        switch (waitStrategy) {
+            case BUSY_SPIN:
+                break;
+            case YIELDING:
+                Thread.yield();
+                break;
+            default:
+                if (spins < 100) {
+                    Thread.yield();
+                } else {
+                    LockSupport.parkNanos(PARK_NANOS);
+                }
+        }
+    }
+
+    private static final class Slot<T> {
+        T value;
+    }
+}
@@ -0,0 +1,93 @@
+package co.dvchain.trade.websocket;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import co.dvchain.trade.clientmessages.Clientmessages.ClientMessage;
+import co.dvchain.trade.clientmessages.Clientmessages.LevelData;
+import co.dvchain.trade.clientmessages.Clientmessages.OrderCancelled;
+import co.dvchain.trade.clientmessages.Clientmessages.OrderFilled;
+import co.dvchain.trade.clientmessages.Clientmessages.OrderOpened;
+import co.dvchain.trade.clientmessages.Clientmessages.PricesData;
+
+/**
+ * Spreads level and price updates over a fixed set of worker threads by market.
+ * Every market is pinned to one worker, so its updates reach the delegate in the
+ * order they were received while different markets run in parallel. Raw messages
+ * and order notifications are passed through on the calling thread.
+ */
+public class ShardedListener implements WebsocketListener {
+    private final WebsocketListener delegate;
+    private final ExecutorService[] shards;
+
+    public ShardedListener(WebsocketListener delegate, int shardCount) {
+        if (shardCount < 1) {
+            throw new IllegalArgumentException("shardCount must be positive: " + shardCount);
+        }
+        this.delegate = delegate;
+        this.shards = new ExecutorService[shardCount];
+        for (int i = 0; i < shardCount; i++) {
+            String name = "websocket-shard-" + i;
+            shards[i] = Executors.newSingleThreadExecutor(runnable -> {
+                Thread thread = new Thread(runnable, name);
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    @Override
+    public void onLevelUpdate(LevelData levelData) {
+        shardFor(levelData.getMarket()).execute(() -> delegate.onLevelUpdate(levelData));
+    }
+
+    @Override
+    public void onPriceUpdate(PricesData pricesData) {
+        shardFor(pricesData.getMarket()).execute(() -> delegate.onPriceUpdate(pricesData));
+    }
+
+    @Override
+    public void onClientMessage(ClientMessage message) {
+        delegate.onClientMessage(message);
+    }
+
+    @Override
+    public void onOrderFill(OrderFilled orderFilled) {
+        delegate.onOrderFill(orderFilled);
+    }
+
+    @Override
+    public void onOrderCancel(OrderCancelled orderCancelled) {
+        delegate.onOrderCancel(orderCancelled);
+    }
+
+    @Override
+    public void onOrderOpened(OrderOpened orderOpened) {
+        delegate.onOrderOpened(orderOpened);
+    }
+
+    public int shardOf(String market) {
+        int hash = market.hashCode();
+        hash ^= hash >>> 16;
+        return (hash & Integer.MAX_VALUE) % shards.length;
+    }
+
+    /**
+     * Stops accepting updates and waits up to {@code timeout} for the queued ones to
+     * be delivered.
+     */
+    public void shutdown(long timeout, TimeUnit unit) throws InterruptedException {
+        for (ExecutorService shard : shards) {
+            shard.shutdown();
+        }
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        for (ExecutorService shard : shards) {
+            shard.awaitTermination(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private ExecutorService shardFor(String market) {
+        return shards[shardOf(market)];
+    }
+}
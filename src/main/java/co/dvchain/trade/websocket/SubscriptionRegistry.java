@@ -0,0 +1,147 @@
+package co.dvchain.trade.websocket;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.ToIntFunction;
+
+import co.dvchain.trade.clientmessages.Clientmessages.ClientMessage;
+import co.dvchain.trade.clientmessages.Clientmessages.Types;
+import okio.ByteString;
+
+/**
+ * Active subscriptions of one event ({@code levels}, {@code prices}, ...),
+ * reference counted per topic. The subscribe frame of each topic is encoded
+ * once when it is first added, so resubscribing after a reconnect only hands
+ * the ready frames to the socket. Each topic maps to a non-zero id, assigned
+ * when it is first added, that {@link #topics()} resolves inbound frames to.
+ * Reads are lock free; adding and removing topics is rare and synchronised.
+ */
+final class SubscriptionRegistry {
+    private final String event;
+    private final ConcurrentHashMap<String, Subscription> subscriptions = new ConcurrentHashMap<>();
+    private final ToIntFunction<String> ids;
+    private volatile DispatchTable topics = new DispatchTable();
+
+    SubscriptionRegistry(String event) {
+        this(event, topic -> 1);
+    }
+
+    /** @param ids assigns the id of a new topic, never {@link DispatchTable#UNKNOWN} */
+    SubscriptionRegistry(String event, ToIntFunction<String> ids) {
+        this.event = event;
+        this.ids = ids;
+    }
+
+    String event() {
+        return event;
+    }
+
+    /** Adds a reference to {@code topic}; returns true if it was not subscribed yet. */
+    synchronized boolean add(String topic) {
+        Subscription subscription = subscriptions.get(topic);
+        if (subscription != null) {
+            subscription.references++;
+            return false;
+        }
+        subscriptions.put(topic, new Subscription(encode(Types.subscribe, topic), ids.applyAsInt(topic)));
+        rebuildTopics();
+        return true;
+    }
+
+    /**
+     * Adds a reference to each of {@code topics} and returns the ones that were
+     * not subscribed yet, in order. The lookup table is rebuilt once for the batch.
+     */
+    synchronized List<String> addAll(Collection<String> topics) {
+        List<String> added = new ArrayList<>();
+        for (String topic : topics) {
+            Subscription subscription = subscriptions.get(topic);
+            if (subscription != null) {
+                subscription.references++;
+            } else {
+                subscriptions.put(topic, new Subscription(encode(Types.subscribe, topic), ids.applyAsInt(topic)));
+                added.add(topic);
+            }
+        }
+        if (!added.isEmpty()) {
+            rebuildTopics();
+        }
+        return added;
+    }
+
+    /** Drops a reference to {@code topic}; returns true if that was the last one. */
+    synchronized boolean remove(String topic) {
+        Subscription subscription = subscriptions.get(topic);
+        if (subscription == null || --subscription.references > 0) {
+            return false;
+        }
+        subscriptions.remove(topic);
+        rebuildTopics();
+        return true;
+    }
+
+    boolean contains(String topic) {
+        return subscriptions.containsKey(topic);
+    }
+
+    int size() {
+        return subscriptions.size();
+    }
+
+    /** Subscribed topics, for matching inbound frames without allocating. */
+    DispatchTable topics() {
+        return topics;
+    }
+
+    ByteString subscribeFrame(String topic) {
+        Subscription subscription = subscriptions.get(topic);
+        return subscription != null ? subscription.frame : encode(Types.subscribe, topic);
+    }
+
+    ByteString unsubscribeFrame(String topic) {
+        return encode(Types.unsubscribe, topic);
+    }
+
+    /** Appends the subscribe frame of every topic to {@code frames}. */
+    void subscribeFrames(List<ByteString> frames) {
+        for (Subscription subscription : subscriptions.values()) {
+            frames.add(subscription.frame);
+        }
+    }
+
+    List<String> topicList() {
+        return new ArrayList<>(subscriptions.keySet());
+    }
+
+    private void rebuildTopics() {
+        Map<String, Integer> ids = new HashMap<>(subscriptions.size() * 2);
+        for (Map.Entry<String, Subscription> entry : subscriptions.entrySet()) {
+            ids.put(entry.getKey(), entry.getValue().id);
+        }
+        topics = DispatchTable.of(ids);
+    }
+
+    private ByteString encode(Types type, String topic) {
+        return ByteString.of(ClientMessage.newBuilder()
+                .setType(type)
+                .setEvent(event)
+                .setTopic(topic)
+                .build()
+                .toByteArray());
+    }
+
+    private static final class Subscription {
+        private final ByteString frame;
+        private final int id;
+        private int references = 1;
+
+        Subscription(ByteString frame, int id) {
+            this.frame = frame;
+            this.id = id;
+        }
+    }
+}
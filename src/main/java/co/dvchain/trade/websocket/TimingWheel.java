@@ -0,0 +1,145 @@
+package co.dvchain.trade.websocket;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Hashed timing wheel: timeouts are hashed by deadline tick into a ring of
+ * buckets, so scheduling and cancelling are O(1) and one ticker thread expires
+ * everything that is due with a resolution of one tick. Buckets are linked
+ * lists of the {@link Timeout} nodes themselves, nothing is allocated per
+ * timeout beyond the caller's node.
+ */
+final class TimingWheel {
+    private static final Logger logger = Logger.getLogger(TimingWheel.class.getName());
+
+    private final long tickNanos;
+    private final Bucket[] buckets;
+    private final int mask;
+    private final long startNanos = System.nanoTime();
+    private final ScheduledExecutorService ticker;
+    private volatile long processedTick;
+
+    TimingWheel(long tickMillis, int wheelSize, String threadName) {
+        if (wheelSize < 1 || Integer.bitCount(wheelSize) != 1) {
+            throw new IllegalArgumentException("wheelSize must be a power of two: " + wheelSize);
+        }
+        this.tickNanos = TimeUnit.MILLISECONDS.toNanos(tickMillis);
+        this.buckets = new Bucket[wheelSize];
+        for (int i = 0; i < wheelSize; i++) {
+            buckets[i] = new Bucket();
+        }
+        this.mask = wheelSize - 1;
+        this.ticker = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, threadName);
+            thread.setDaemon(true);
+            return thread;
+        });
+        ticker.scheduleAtFixedRate(this::advance, tickMillis, tickMillis, TimeUnit.MILLISECONDS);
+    }
+
+    void schedule(Timeout timeout, long delay, TimeUnit unit) {
+        long deadline = System.nanoTime() - startNanos + unit.toNanos(delay);
+        long tick = (deadline + tickNanos - 1) / tickNanos;
+        while (true) {
+            // Never hash behind the ticker, that would cost a full rotation.
+            tick = Math.max(tick, processedTick + 1);
+            Bucket bucket = buckets[(int) tick & mask];
+            synchronized (bucket) {
+                // The ticker moves processedTick under the lock of the bucket it drained,
+                // so if the tick is still ahead here the drain has not happened yet.
+                if (tick > processedTick) {
+                    timeout.deadlineTick = tick;
+                    timeout.bucket = bucket;
+                    timeout.next = bucket.head;
+                    if (bucket.head != null) {
+                        bucket.head.prev = timeout;
+                    }
+                    bucket.head = timeout;
+                    return;
+                }
+            }
+        }
+    }
+
+    /** Returns false if the timeout had already expired or was never scheduled. */
+    boolean cancel(Timeout timeout) {
+        Bucket bucket = timeout.bucket;
+        if (bucket == null) {
+            return false;
+        }
+        synchronized (bucket) {
+            if (timeout.bucket != bucket) {
+                return false;
+            }
+            bucket.unlink(timeout);
+            return true;
+        }
+    }
+
+    void stop() {
+        ticker.shutdownNow();
+    }
+
+    private void advance() {
+        long now = (System.nanoTime() - startNanos) / tickNanos;
+        for (long tick = processedTick + 1; tick <= now; tick++) {
+            Bucket bucket = buckets[(int) tick & mask];
+            Timeout expired = null;
+            synchronized (bucket) {
+                Timeout timeout = bucket.head;
+                while (timeout != null) {
+                    Timeout next = timeout.next;
+                    if (timeout.deadlineTick <= tick) {
+                        bucket.unlink(timeout);
+                        timeout.next = expired;
+                        expired = timeout;
+                    }
+                    timeout = next;
+                }
+                processedTick = tick;
+            }
+            while (expired != null) {
+                Timeout next = expired.next;
+                expired.next = null;
+                try {
+                    expired.expire();
+                } catch (Exception e) {
+                    logger.log(Level.WARNING, "Timeout handler failed", e);
+                }
+                expired = next;
+            }
+        }
+    }
+
+    /** A schedulable node; subclasses say what happens when it is due. */
+    abstract static class Timeout {
+        private Timeout prev;
+        private Timeout next;
+        private Bucket bucket;
+        private long deadlineTick;
+
+        abstract void expire();
+    }
+
+    private static final class Bucket {
+        private Timeout head;
+
+        void unlink(Timeout timeout) {
+            if (timeout.prev != null) {
+                timeout.prev.next = timeout.next;
+            } else {
+                head = timeout.next;
+            }
+            if (timeout.next != null) {
+                timeout.next.prev = timeout.prev;
+            }
+            timeout.prev = null;
+            timeout.next = null;
+            timeout.bucket = null;
+        }
+    }
+}
@@ -0,0 +1,14 @@
+package co.dvchain.trade.websocket;
+
+/**
+ * How a dispatch thread waits for work, and how the socket reader waits for
+ * room when the dispatch queue is full.
+ */
+public enum WaitStrategy {
+    /** Parks the waiting thread, lowest CPU use, a few microseconds of wake-up latency. */
+    BLOCKING,
+    /** Yields between checks, trades some CPU for lower wake-up latency. */
+    YIELDING,
+    /** Spins on a core, lowest latency, only for pinned or otherwise idle cores. */
+    BUSY_SPIN
+}
@@ -0,0 +1,137 @@
+package co.dvchain.trade.websocket;
+
+import java.lang.management.CompilationMXBean;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import co.dvchain.trade.clientmessages.Clientmessages.ClientMessage;
+import co.dvchain.trade.clientmessages.Clientmessages.Level;
+import co.dvchain.trade.clientmessages.Clientmessages.LevelData;
+import co.dvchain.trade.clientmessages.Clientmessages.OrderSide;
+import co.dvchain.trade.clientmessages.Clientmessages.OrderType;
+import co.dvchain.trade.clientmessages.Clientmessages.PricesData;
+import co.dvchain.trade.clientmessages.Clientmessages.Trade;
+import co.dvchain.trade.clientmessages.Clientmessages.TradeStatusResponse;
+import co.dvchain.trade.clientmessages.Clientmessages.Types;
+
+/**
+ * Drives synthetic traffic through a scratch client configured like the real
+ * one: level and price frames through the socket callback, decoder and
+ * dispatch into a {@link WebsocketListenerImpl}, and orders through template
+ * encoding, the pending request table and the response path. Sends go to a
+ * socket that discards them, so nothing reaches the network or the real
+ * client's listener. Runs in batches until JIT compilation time has not grown
+ * for a few batches in a row.
+ */
+final class WarmUp {
+    private static final int LEVELS_PER_BATCH = 512;
+    private static final int ORDERS_PER_BATCH = 64;
+    private static final int STABLE_BATCHES = 10;
+    // C2 compiles after roughly 10k invocations, below that a quiet compiler means little.
+    private static final int MIN_BATCHES = 40;
+    private static final String[] MARKETS = { "BTC/USD", "ETH/USD", "SOL/USD", "LTC/USD" };
+
+    private final WebsocketClient scratch;
+    private final WebsocketTransport.Listener socketListener;
+    private final ByteBuffer[] levelFrames;
+    private final ByteBuffer[] priceFrames;
+    private final OrderTemplate[] templates;
+
+    WarmUp(WebsocketClient scratch) {
+        this.scratch = scratch;
+        this.socketListener = scratch.attachForWarmUp(new DiscardingSession());
+        levelFrames = new ByteBuffer[MARKETS.length * 8];
+        priceFrames = new ByteBuffer[MARKETS.length];
+        for (int i = 0; i < levelFrames.length; i++) {
+            String market = MARKETS[i % MARKETS.length];
+            LevelData.Builder levels = LevelData.newBuilder().setMarket(market).setQuoteId("warmup-" + i).setLastUpdate(i + 1);
+            for (int level = 0; level < 1 + i % 8; level++) {
+                levels.addLevels(Level.newBuilder()
+                        .setSellPrice(100 + i - level * 0.5)
+                        .setBuyPrice(100.5 + i + level * 0.5)
+                        .setMaxQuantity(level + 1));
+            }
+            levelFrames[i] = ByteBuffer.wrap(ClientMessage.newBuilder()
+                    .setType(Types.subscribe).setEvent("levels").setTopic(market).setLevelData(levels)
+                    .build().toByteArray());
+        }
+        for (int i = 0; i < priceFrames.length; i++) {
+            priceFrames[i] = ByteBuffer.wrap(ClientMessage.newBuilder()
+                    .setType(Types.subscribe).setEvent("prices").setTopic(MARKETS[i])
+                    .setPricesData(PricesData.newBuilder().setMarket(MARKETS[i]).setLastUpdate(1).setPrice(100 + i))
+                    .build().toByteArray());
+        }
+        templates = new OrderTemplate[] {
+                scratch.orderTemplate("BTC", "USD", OrderSide.Buy, OrderType.MARKET),
+                scratch.orderTemplate("ETH", "USD", OrderSide.Sell, OrderType.LIMIT),
+        };
+    }
+
+    WarmUpReport run(long maxDuration, TimeUnit unit) {
+        CompilationMXBean compiler = ManagementFactory.getCompilationMXBean();
+        boolean timed = compiler != null && compiler.isCompilationTimeMonitoringSupported();
+        long start = System.nanoTime();
+        long deadline = start + unit.toNanos(maxDuration);
+        long startCompile = timed ? compiler.getTotalCompilationTime() : 0;
+        long lastCompile = startCompile;
+        int stable = 0;
+        long batches = 0;
+        boolean converged = false;
+        while (System.nanoTime() < deadline) {
+            batch(batches++);
+            if (!timed) {
+                continue;
+            }
+            long compile = compiler.getTotalCompilationTime();
+            stable = compile == lastCompile ? stable + 1 : 0;
+            lastCompile = compile;
+            if (stable >= STABLE_BATCHES && batches >= MIN_BATCHES) {
+                converged = true;
+                break;
+            }
+        }
+        long duration = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        return new WarmUpReport(batches, duration, timed ? lastCompile - startCompile : -1, converged);
+    }
+
+    private void batch(long batch) {
+        for (int i = 0; i < LEVELS_PER_BATCH; i++) {
+            socketListener.onMessage(null, levelFrames[(int) ((batch + i) % levelFrames.length)]);
+            if ((i & 7) == 0) {
+                socketListener.onMessage(null, priceFrames[i / 8 % priceFrames.length]);
+            }
+        }
+        for (int i = 0; i < ORDERS_PER_BATCH; i++) {
+            OrderTemplate template = templates[i % templates.length];
+            CompletableFuture<TradeStatusResponse> future = scratch.sendOrder(template, 100 + i, 1 + i % 3, "warmup-quote", "warmup");
+            String id = scratch.lastRequestId();
+            ClientMessage response = ClientMessage.newBuilder()
+                    .setType(Types.requestresponse)
+                    .setEvent(id)
+                    .setTopic("createorder")
+                    .setTradeStatusResponse(TradeStatusResponse.newBuilder()
+                            .addTrades(Trade.newBuilder().setPrice(100 + i).setQuantity(1).setId("warmup-" + id)))
+                    .build();
+            socketListener.onMessage(null, ByteBuffer.wrap(response.toByteArray()));
+            future.getNow(null);
+        }
+    }
+
+    /** Accepts every frame and sends nothing. */
+    private static final class DiscardingSession implements WebsocketTransport.Session {
+        @Override
+        public boolean send(ByteBuffer frame) {
+            return true;
+        }
+
+        @Override
+        public void close(int code, String reason) {
+        }
+
+        @Override
+        public void cancel() {
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package co.dvchain.trade.websocket;
+
+/**
+ * Outcome of {@link WebsocketClient#warmUp()}. The JVM only reports total
+ * JIT compilation time, not which methods were compiled or at which tier, so
+ * warm-up is considered done once that time stops growing.
+ */
+public final class WarmUpReport {
+    private final long iterations;
+    private final long durationMillis;
+    private final long compilationMillis;
+    private final boolean converged;
+
+    WarmUpReport(long iterations, long durationMillis, long compilationMillis, boolean converged) {
+        this.iterations = iterations;
+        this.durationMillis = durationMillis;
+        this.compilationMillis = compilationMillis;
+        this.converged = converged;
+    }
+
+    /** Number of synthetic batches driven through decode, dispatch and order encoding. */
+    public long getIterations() {
+        return iterations;
+    }
+
+    public long getDurationMillis() {
+        return durationMillis;
+    }
+
+    /** JIT compilation time spent during warm-up, or -1 if the JVM does not report it. */
+    public long getCompilationMillis() {
+        return compilationMillis;
+    }
+
+    /** True if compilation settled before the time limit ran out. */
+    public boolean isConverged() {
+        return converged;
+    }
+
+    @Override
+    public String toString() {
+        return "WarmUpReport{iterations=" + iterations + ", durationMillis=" + durationMillis
+                + ", compilationMillis=" + compilationMillis + ", converged=" + converged + "}";
+    }
+}
@@ -1,23 +1,36 @@
 package co.dvchain.trade.websocket;
 
-import okhttp3.*;
+import okhttp3.OkHttpClient;
 import okio.ByteString;
 import javax.crypto.Mac;
 import javax.crypto.spec.SecretKeySpec;
+import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
 import java.security.InvalidKeyException;
 import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Base64;
-import java.util.UUID;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Predicate;
 import co.dvchain.trade.clientmessages.Clientmessages.ClientMessage;
-import co.dvchain.trade.clientmessages.Clientmessages.CreateOrderMessage;
 import co.dvchain.trade.clientmessages.Clientmessages.LimitsResponse;
+import co.dvchain.trade.clientmessages.Clientmessages.Notification;
 import co.dvchain.trade.clientmessages.Clientmessages.OrderSide;
 import co.dvchain.trade.clientmessages.Clientmessages.OrderType;
+import co.dvchain.trade.clientmessages.Clientmessages.PricesData;
 import co.dvchain.trade.clientmessages.Clientmessages.StatusMessage;
 import co.dvchain.trade.clientmessages.Clientmessages.TradeStatusResponse;
 import co.dvchain.trade.clientmessages.Clientmessages.Types;
@@ -27,34 +40,297 @@ import java.util.logging.Logger;
 public class WebsocketClient {
     private final static Logger logger = Logger.getLogger(WebsocketClient.class.getName());
     private String WS_URL;
-    private int RECONNECT_DELAY = 5; // in seconds
+    private long RECONNECT_INITIAL_DELAY = 1000; // in milliseconds
+    private long RECONNECT_MAX_DELAY = 30000; // in milliseconds
     private long TIME_WINDOW = 60000; // 1 minute
+    private static final long DEFAULT_REQUEST_TIMEOUT = 10000; // in milliseconds
     private String API_KEY;
     private String SECRET_KEY;;
 
-    private OkHttpClient client;
-    private WebSocket webSocket;
-    private boolean isConnected;
+    private WebsocketTransport transport;
+    private volatile WebsocketTransport.Session webSocket;
+    private volatile boolean isConnected;
+    private final AtomicReference<ConnectionState> state = new AtomicReference<>(ConnectionState.DISCONNECTED);
+    private volatile Connection connection;
+    private final Object connectionLock = new Object();
+    private final ScheduledThreadPoolExecutor reconnectScheduler;
+    private volatile ScheduledFuture<?> pendingReconnect;
+    private int reconnectAttempt;
+    private volatile long disconnectedAt;
+    private final AtomicLong reconnects = new AtomicLong();
+    private final AtomicLong reconnectAttempts = new AtomicLong();
+    private volatile long lastReconnectMillis;
+    private volatile long maxReconnectMillis;
     private WebsocketListener listener;
+    /** Published to by the socket reader only; swapped by the reader itself for {@link #pendingDispatchRing}. */
+    private volatile RingBuffer<ByteBuffer> dispatchRing;
+    private volatile Runnable openHook;
+    private final AtomicReference<RingBuffer<ByteBuffer>> pendingDispatchRing = new AtomicReference<>();
+    private volatile boolean lazyDecoding;
+    private volatile LevelDataViewListener levelViewListener;
+    private volatile LevelArrayListener levelArrayListener;
+    private final AtomicLong skippedFrames = new AtomicLong();
+    private volatile LatencyProber latencyProber;
+    private volatile FeedMonitor feedMonitor;
+    private final QuoteManager quotes = new QuoteManager();
+    private volatile QuoteStore quoteStore = quotes;
+    private volatile boolean trackingQuotes;
 
-    private final ConcurrentHashMap<String, CompletableFuture<? extends Object>> responseFutures = new ConcurrentHashMap<>();
+    private static final int EVENT_LEVELS = 1;
+    private static final int EVENT_PRICES = 2;
+    private static final int EVENT_NOTIFICATIONS = 3;
+    private static final DispatchTable EVENTS = new DispatchTable()
+            .put("levels", EVENT_LEVELS)
+            .put("prices", EVENT_PRICES)
+            .put("notifications", EVENT_NOTIFICATIONS);
 
-    private ArrayList<String> levelSubscriptions = new ArrayList<String>();
-    private ArrayList<String> priceSubscriptions = new ArrayList<String>();;
+    private static final int TOPIC_CREATE_ORDER = 1;
+    private static final int TOPIC_LIMITS = 2;
+    private static final int TOPIC_CANCEL_ORDER = 3;
+    private static final int TOPIC_ERROR = 4;
+    private static final DispatchTable RESPONSE_TOPICS = new DispatchTable()
+            .put("createorder", TOPIC_CREATE_ORDER)
+            .put("limits", TOPIC_LIMITS)
+            .putPrefix("cancelorder/", TOPIC_CANCEL_ORDER)
+            .put("error", TOPIC_ERROR);
+
+    private final RequestIds requestIds = new RequestIds();
+    private final PendingRequests pendingRequests = new PendingRequests();
+    private final long[] requestTimeouts = new long[RequestType.values().length];
+    private final ConcurrentHashMap<String, OrderTemplate> orderTemplates = new ConcurrentHashMap<>();
+
+    private final SubscriptionRegistry notificationSubscriptions = new SubscriptionRegistry("notifications");
+    /** Topic ids are the market ids of {@link #quotes} plus one, as a dispatch id may not be 0. */
+    private final SubscriptionRegistry levelSubscriptions = new SubscriptionRegistry("levels",
+            topic -> quotes.getMarkets().register(topic) + 1);
+    private final SubscriptionRegistry priceSubscriptions = new SubscriptionRegistry("prices");
 
     public WebsocketClient(String url, String apiKey, String secretKey) {
         this.WS_URL = url;
         this.API_KEY = apiKey;
         this.SECRET_KEY = secretKey;
-        client = new OkHttpClient.Builder()
-                .pingInterval(10, TimeUnit.SECONDS)
-                .build();
+        transport = new OkHttpTransport();
+        for (RequestType type : RequestType.values()) {
+            requestTimeouts[type.ordinal()] = DEFAULT_REQUEST_TIMEOUT;
+        }
+        // The scheduler only starts its thread once the first reconnect is scheduled.
+        reconnectScheduler = new ScheduledThreadPoolExecutor(1, runnable -> {
+            Thread thread = new Thread(runnable, "websocket-reconnect");
+            thread.setDaemon(true);
+            return thread;
+        });
+        reconnectScheduler.setRemoveOnCancelPolicy(true);
+        notificationSubscriptions.add("ORDER_FILLED");
+        notificationSubscriptions.add("ORDER_CANCELLED");
     }
 
     public void setMessageHandler(WebsocketListener listener) {
         this.listener = listener;
     }
 
+    /** Runs on the reader thread each time a socket opens, after the subscriptions were sent again. */
+    void setOpenHook(Runnable openHook) {
+        this.openHook = openHook;
+    }
+
+    /**
+     * Moves decoding and listener callbacks off the socket reader thread onto a
+     * dedicated dispatch thread, fed through a bounded queue of {@code capacity}
+     * frames (a power of two). When the queue is full the reader waits, so a slow
+     * listener still applies backpressure, but only once the queue is exhausted.
+     * Takes effect from the next frame received; calling it again replaces the
+     * ring once the frames already queued have been handled.
+     */
+    public void enableDispatchRing(int capacity, WaitStrategy waitStrategy) {
+        FrameHandler ringFrames = new FrameHandler();
+        synchronized (pendingDispatchRing) {
+            RingBuffer<ByteBuffer> superseded = pendingDispatchRing.get();
+            // The new ring starts handing out frames once the old one is drained, so none are lost or reordered.
+            RingBuffer<ByteBuffer> next = new RingBuffer<ByteBuffer>(capacity, waitStrategy, bytes -> {
+                try {
+                    ringFrames.handle(bytes);
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }, "websocket-dispatch", superseded != null ? superseded : dispatchRing);
+            // The socket reader switches on its next frame; it is the only publisher, so it alone can retire the old ring.
+            pendingDispatchRing.set(next);
+            if (superseded != null) {
+                // Replaced before the reader ever published to it.
+                superseded.stop();
+            }
+        }
+    }
+
+    /** Called by the socket reader: switches to the pending ring, if any, and retires the old one. */
+    private RingBuffer<ByteBuffer> currentDispatchRing() {
+        RingBuffer<ByteBuffer> ring = dispatchRing;
+        if (pendingDispatchRing.get() == null) {
+            return ring;
+        }
+        synchronized (pendingDispatchRing) {
+            RingBuffer<ByteBuffer> next = pendingDispatchRing.getAndSet(null);
+            if (next == null) {
+                return dispatchRing;
+            }
+            RingBuffer<ByteBuffer> previous = dispatchRing;
+            dispatchRing = next;
+            if (previous != null) {
+                // Nothing is published to it from here on; the next ring waits for it to empty.
+                previous.finish();
+            }
+            return next;
+        }
+    }
+
+    /**
+     * When enabled, frames are decoded header first and their payload is only
+     * parsed if something consumes it: a level or price update for an active
+     * subscription, a notification, a request response, or any other message while
+     * a listener is set. Skipped frames never reach {@link WebsocketListener#onClientMessage}.
+     */
+    public void setLazyDecoding(boolean lazyDecoding) {
+        this.lazyDecoding = lazyDecoding;
+    }
+
+    /**
+     * Delivers level updates as a {@link LevelDataView} read straight from the
+     * frame. Combined with lazy decoding and no {@link WebsocketListener}, level
+     * updates are handled without building any protobuf objects.
+     */
+    public void setLevelViewHandler(LevelDataViewListener levelViewListener) {
+        this.levelViewListener = levelViewListener;
+    }
+
+    /**
+     * Delivers level updates as primitive arrays read straight from the frame,
+     * see {@link LevelArrayListener}.
+     */
+    public void setLevelArrayHandler(LevelArrayListener levelArrayListener) {
+        this.levelArrayListener = levelArrayListener;
+    }
+
+    /**
+     * Sets how long requests of {@code type} wait for their response before the
+     * future fails with a {@link java.util.concurrent.TimeoutException}. Zero
+     * waits forever. Defaults to 10 seconds.
+     */
+    public void setRequestTimeout(RequestType type, long timeout, TimeUnit unit) {
+        requestTimeouts[type.ordinal()] = unit.toMillis(timeout);
+    }
+
+    public int getPendingRequestCount() {
+        return pendingRequests.size();
+    }
+
+    /**
+     * Sets the reconnect backoff: the delay starts at {@code initialDelay}, doubles
+     * with every failed attempt up to {@code maxDelay}, and is jittered to between
+     * half and all of that so many clients do not reconnect in lockstep.
+     */
+    public void setReconnectBackoff(long initialDelay, long maxDelay, TimeUnit unit) {
+        RECONNECT_INITIAL_DELAY = unit.toMillis(initialDelay);
+        RECONNECT_MAX_DELAY = unit.toMillis(maxDelay);
+    }
+
+    public ConnectionState getConnectionState() {
+        return state.get();
+    }
+
+    /** Number of times the connection was lost and opened again. */
+    public long getReconnectCount() {
+        return reconnects.get();
+    }
+
+    /** Number of connection attempts made after losing the connection, successful or not. */
+    public long getReconnectAttempts() {
+        return reconnectAttempts.get();
+    }
+
+    /** Time from losing the connection to having it open again, for the last reconnect. */
+    public long getLastReconnectMillis() {
+        return lastReconnectMillis;
+    }
+
+    public long getMaxReconnectMillis() {
+        return maxReconnectMillis;
+    }
+
+    /**
+     * Starts sending {@code pingpong} probes every {@code interval} to measure
+     * round-trip time. After {@code maxMissedPongs} unanswered probes in a row the
+     * connection is treated as dead and re-established.
+     */
+    public LatencyProber enableLatencyProbe(long interval, TimeUnit unit, int maxMissedPongs) {
+        LatencyProber previous = latencyProber;
+        if (previous != null) {
+            previous.stop();
+        }
+        latencyProber = new LatencyProber(this, interval, unit, maxMissedPongs);
+        return latencyProber;
+    }
+
+    public LatencyProber getLatencyProber() {
+        return latencyProber;
+    }
+
+    /**
+     * Starts watching every subscribed market. A market that receives nothing for
+     * {@code staleAfter}, or whose {@code last_update} goes backwards, is
+     * unsubscribed and subscribed again on its own, without a reconnect.
+     */
+    public FeedMonitor enableFeedMonitor(long staleAfter, TimeUnit unit) {
+        FeedMonitor previous = feedMonitor;
+        if (previous != null) {
+            previous.stop();
+        }
+        feedMonitor = new FeedMonitor(this, staleAfter, unit);
+        return feedMonitor;
+    }
+
+    public FeedMonitor getFeedMonitor() {
+        return feedMonitor;
+    }
+
+    /**
+     * The latest levels of every market handed out by {@link #subscribeLevel}. Only
+     * kept up to date once a handle exists.
+     */
+    public QuoteManager getQuotes() {
+        return quotes;
+    }
+
+    /**
+     * Keeps the levels of subscribed markets in {@code store} instead of
+     * {@link #getQuotes()}, for example a {@link MappedQuoteManager} read by other
+     * processes. Handles and {@link #getQuotes()} stop following the quotes
+     * until the client's own quote manager is set back.
+     */
+    public void setQuoteStore(QuoteStore store) {
+        this.quoteStore = store != null ? store : quotes;
+    }
+
+    public QuoteStore getQuoteStore() {
+        return quoteStore;
+    }
+
+    /** Market ids of this client, seeded from any available ticker list it receives. */
+    public MarketRegistry getMarkets() {
+        return quotes.getMarkets();
+    }
+
+    public long getSkippedFrames() {
+        return skippedFrames.get();
+    }
+
+    public long getDispatchQueueDepth() {
+        return dispatchRing != null ? dispatchRing.depth() : 0;
+    }
+
+    public long getDispatchQueueHighWaterMark() {
+        return dispatchRing != null ? dispatchRing.highWaterMark() : 0;
+    }
+
     String generateSignature(String apiKey, String secretKey, long timeWindow) {
         long timestamp = System.currentTimeMillis();
         String message = apiKey + timestamp + timeWindow;
@@ -71,322 +347,708 @@ public class WebsocketClient {
         return null;
     }
 
+    /**
+     * Opens the connection; does nothing unless the client is disconnected. If
+     * the socket cannot even be started the client is left disconnected and the
+     * failure is rethrown, so connect can be called again.
+     */
     public void connect() {
-        logger.info("Connecting to websocket "+WS_URL);
-        Request request = new Request.Builder()
-                .url(WS_URL)
-                .header("DV-API-KEY", API_KEY)
-                .header("DV-TIMESTAMP", String.valueOf(System.currentTimeMillis()))
-                .header("DV-TIMEWINDOW", String.valueOf(TIME_WINDOW))
-                .header("DV-SIGNATURE", generateSignature(API_KEY, SECRET_KEY, TIME_WINDOW))
-                .build();
-
-        WebSocketListener listener = new WebSocketListener() {
-            @Override
-            public void onOpen(WebSocket webSocket, Response response) {
-                logger.info("Connected to websocket");
-                isConnected = true;
-                subscribeNotifications();
-                for (String symbol : levelSubscriptions) {
-                    sendLevelSubscription(symbol);
-                }
-                for (String symbol : priceSubscriptions) {
-                    sendPriceSubscription(symbol);
+        if (state.compareAndSet(ConnectionState.DISCONNECTED, ConnectionState.CONNECTING)) {
+            try {
+                openSocket();
+            } catch (RuntimeException e) {
+                synchronized (connectionLock) {
+                    connection = null;
+                    state.compareAndSet(ConnectionState.CONNECTING, ConnectionState.DISCONNECTED);
                 }
+                throw e;
             }
+        }
+    }
 
-            private void subscribeNotifications() {
-                ClientMessage message = ClientMessage.newBuilder()
-                        .setType(Types.subscribe)
-                        .setEvent("notifications")
-                        .setTopic("ORDER_FILLED")
-                        .build();
-                webSocket.send(ByteString.of(message.toByteArray()));
-                ClientMessage message1 = ClientMessage.newBuilder()
-                        .setType(Types.subscribe)
-                        .setEvent("notifications")
-                        .setTopic("ORDER_CANCELLED")
-                        .build();
-                webSocket.send(ByteString.of(message1.toByteArray()));
+    /**
+     * Closes the connection for good, cancelling any scheduled reconnect and
+     * stopping the latency prober, whose statistics stay readable. Call
+     * {@link #enableLatencyProbe} again after reconnecting to resume probing.
+     */
+    public void disconnect() {
+        synchronized (connectionLock) {
+            if (state.getAndSet(ConnectionState.DISCONNECTED) == ConnectionState.DISCONNECTED) {
+                return;
+            }
+            ScheduledFuture<?> reconnect = pendingReconnect;
+            if (reconnect != null) {
+                reconnect.cancel(false);
             }
+            connection = null;
+            isConnected = false;
+        }
+        LatencyProber prober = latencyProber;
+        if (prober != null) {
+            prober.stop();
+        }
+        WebsocketTransport.Session socket = webSocket;
+        if (socket != null) {
+            socket.close(1000, "client disconnect");
+        }
+        failPendingRequests("Connection closed by client");
+    }
 
-            @Override
-            public void onMessage(WebSocket webSocket, String text) {
-                
+    private void openSocket() {
+        logger.info("Connecting to websocket "+WS_URL);
+        Map<String, String> headers = new LinkedHashMap<>();
+        headers.put("DV-API-KEY", API_KEY);
+        headers.put("DV-TIMESTAMP", String.valueOf(System.currentTimeMillis()));
+        headers.put("DV-TIMEWINDOW", String.valueOf(TIME_WINDOW));
+        headers.put("DV-SIGNATURE", generateSignature(API_KEY, SECRET_KEY, TIME_WINDOW));
+
+        // Published before the socket exists, so early callbacks already pass the identity check.
+        Connection listener = new Connection();
+        connection = listener;
+        WebsocketTransport.Session socket = transport.connect(WS_URL, headers, listener);
+        if (connection == listener) {
+            webSocket = socket;
+        }
+    }
+
+    /**
+     * Callbacks of one socket. Only the current connection acts on them; a late
+     * callback from a socket that has already been replaced or abandoned is ignored,
+     * so at most one socket is ever live.
+     */
+    private final class Connection implements WebsocketTransport.Listener {
+        private final FrameHandler frames = new FrameHandler();
+
+        private boolean isCurrent() {
+            return connection == this;
+        }
+
+        @Override
+        public void onOpen(WebsocketTransport.Session webSocket) {
+            if (!isCurrent() || !state.compareAndSet(ConnectionState.CONNECTING, ConnectionState.OPEN)) {
+                webSocket.close(1000, "stale connection");
+                return;
+            }
+            logger.info("Connected to websocket");
+            WebsocketClient.this.webSocket = webSocket;
+            isConnected = true;
+            recordReconnect();
+            resubscribe(webSocket);
+            Runnable hook = openHook;
+            if (hook != null) {
+                hook.run();
+            }
+        }
+
+        /**
+         * Sends every subscribe frame back to back. They are encoded already and
+         * the transport queues them without waiting, so the server sees one burst.
+         */
+        private void resubscribe(WebsocketTransport.Session webSocket) {
+            List<ByteString> frames = new ArrayList<>(notificationSubscriptions.size()
+                    + levelSubscriptions.size() + priceSubscriptions.size());
+            notificationSubscriptions.subscribeFrames(frames);
+            levelSubscriptions.subscribeFrames(frames);
+            priceSubscriptions.subscribeFrames(frames);
+            for (ByteString frame : frames) {
+                webSocket.send(frame.asByteBuffer());
+            }
+            logger.info("Sent " + frames.size() + " subscriptions");
+        }
+
+        @Override
+        public void onMessage(WebsocketTransport.Session webSocket, ByteBuffer bytes) {
+            if (!isCurrent()) {
+                return;
+            }
+            RingBuffer<ByteBuffer> ring = currentDispatchRing();
+            if (ring != null) {
+                ring.publish(transport.reusesFrameBuffers() ? copy(bytes) : bytes);
+                return;
+            }
+            try {
+                frames.handle(bytes);
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+        }
+
+        @Override
+        public void onClosing(WebsocketTransport.Session webSocket, int code, String reason) {
+            if (isCurrent() && state.compareAndSet(ConnectionState.OPEN, ConnectionState.CLOSING)) {
+                isConnected = false;
+                webSocket.close(code, null);
             }
+        }
+
+        @Override
+        public void onClosed(WebsocketTransport.Session webSocket, int code, String reason) {
+            if (isCurrent()) {
+                logger.warning("Connection closed "+ code +" "+ reason);
+                connectionLost(this, "Connection closed " + code + " " + reason);
+            }
+        }
+
+        @Override
+        public void onFailure(WebsocketTransport.Session webSocket, Throwable t) {
+            if (isCurrent()) {
+                logger.warning("Connection failed "+ t.getMessage());
+                connectionLost(this, "Connection failed " + t.getMessage());
+            } else {
+                webSocket.cancel();
+            }
+        }
+    }
+
+    /** Frames queued for the dispatch thread must outlive the transport's buffer. */
+    private static ByteBuffer copy(ByteBuffer frame) {
+        ByteBuffer copy = ByteBuffer.allocate(frame.remaining());
+        copy.put(frame.duplicate()).flip();
+        return copy;
+    }
+
+    /**
+     * Moves a lost connection to BACKOFF and schedules the next attempt. Runs at
+     * most once per socket: OkHttp may report both a close and a failure.
+     */
+    private void connectionLost(Connection lost, String reason) {
+        synchronized (connectionLock) {
+            if (connection != lost) {
+                return;
+            }
+            connection = null;
+            ConnectionState current = state.get();
+            if (current == ConnectionState.DISCONNECTED || !state.compareAndSet(current, ConnectionState.BACKOFF)) {
+                return;
+            }
+            isConnected = false;
+            if (current == ConnectionState.OPEN || current == ConnectionState.CLOSING) {
+                disconnectedAt = System.nanoTime();
+                reconnectAttempt = 0;
+            }
+            long delay = backoffDelay(reconnectAttempt++);
+            logger.info("Reconnecting in " + delay + " ms");
+            pendingReconnect = reconnectScheduler.schedule(this::reconnect, delay, TimeUnit.MILLISECONDS);
+        }
+        failPendingRequests(reason);
+    }
+
+    private void reconnect() {
+        if (state.compareAndSet(ConnectionState.BACKOFF, ConnectionState.CONNECTING)) {
+            reconnectAttempts.incrementAndGet();
+            try {
+                openSocket();
+            } catch (RuntimeException e) {
+                logger.warning("Reconnect failed " + e.getMessage());
+                connectionLost(connection, "Reconnect failed " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Runs synthetic level, price and order traffic through the decode, dispatch
+     * and order encoding paths of a scratch client set up like this one, until the
+     * JIT has stopped compiling or 30 seconds have passed. Nothing is sent to the
+     * network and this client's listener and state are not touched. Call it before
+     * {@link #connect()}.
+     */
+    public WarmUpReport warmUp() {
+        return warmUp(30, TimeUnit.SECONDS);
+    }
 
+    public WarmUpReport warmUp(long maxDuration, TimeUnit unit) {
+        WebsocketClient scratch = new WebsocketClient(WS_URL, API_KEY, SECRET_KEY);
+        scratch.setMessageHandler(new WebsocketListenerImpl() {
             @Override
-            public void onMessage(WebSocket webSocket, ByteString bytes) {
+            public void onPriceUpdate(PricesData pricesData) {
+                // The sample listener logs every price, which is not worth warming up.
+            }
+        });
+        scratch.setLazyDecoding(lazyDecoding);
+        if (levelViewListener != null) {
+            scratch.setLevelViewHandler(view -> view.levelCount());
+        }
+        if (levelArrayListener != null) {
+            scratch.setLevelArrayHandler((marketId, market, lastUpdate, buyPrices, sellPrices, maxQuantities, depth) -> { });
+        }
+        // Leaves some synthetic markets unsubscribed, so lazy decoding also skips frames.
+        // Not connected yet, so the subscriptions are only recorded, quote tracking included.
+        scratch.subscribeLevels(Arrays.asList("BTC/USD", "ETH/USD"));
+        scratch.subscribePrices("BTC/USD");
+        WarmUpReport report = new WarmUp(scratch).run(maxDuration, unit);
+        logger.info("Warm-up finished: " + report);
+        return report;
+    }
+
+    /** Makes this client act as connected over {@code socket} and returns its socket listener. */
+    WebsocketTransport.Listener attachForWarmUp(WebsocketTransport.Session socket) {
+        Connection attached = new Connection();
+        connection = attached;
+        webSocket = socket;
+        isConnected = true;
+        state.set(ConnectionState.OPEN);
+        return attached;
+    }
+
+    /** The id of the latest request, formatted as it is sent. */
+    String lastRequestId() {
+        return requestIds.format(requestIds.last()).toString();
+    }
+
+    /** Drops the current socket without waiting for TCP to notice, then reconnects as usual. */
+    void abortConnection(String reason) {
+        Connection current = connection;
+        WebsocketTransport.Session socket = webSocket;
+        if (current == null) {
+            return;
+        }
+        logger.warning("Aborting connection: " + reason);
+        connectionLost(current, reason);
+        if (socket != null) {
+            socket.cancel();
+        }
+    }
+
+    boolean sendPing(long sequence) {
+        return send(ByteString.of(ClientMessage.newBuilder()
+                .setType(Types.pingpong)
+                .setEvent(LatencyProber.PING_PREFIX + sequence)
+                .build()
+                .toByteArray()));
+    }
+
+    /** Capped exponential backoff with equal jitter. */
+    long backoffDelay(int attempt) {
+        long delay = RECONNECT_MAX_DELAY;
+        if (attempt < 31) {
+            delay = Math.min(RECONNECT_MAX_DELAY, RECONNECT_INITIAL_DELAY << attempt);
+        }
+        long half = delay / 2;
+        return half + ThreadLocalRandom.current().nextLong(delay - half + 1);
+    }
+
+    private void recordReconnect() {
+        long lostAt = disconnectedAt;
+        if (lostAt == 0) {
+            return;
+        }
+        disconnectedAt = 0;
+        long millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - lostAt);
+        reconnects.incrementAndGet();
+        lastReconnectMillis = millis;
+        if (millis > maxReconnectMillis) {
+            maxReconnectMillis = millis;
+        }
+        logger.info("Reconnected after " + millis + " ms");
+    }
+
+    /**
+     * Decodes and dispatches the frames of one reader thread, together with the
+     * scratch state that lets level updates be delivered without allocating.
+     */
+    private final class FrameHandler implements Predicate<FrameHeader> {
+        private final FrameDecoder decoder = new FrameDecoder();
+        private double[] buyPrices = new double[16];
+        private double[] sellPrices = new double[16];
+        private double[] maxQuantities = new double[16];
+
+        void handle(ByteBuffer bytes) throws IOException {
+            if (!lazyDecoding && levelViewListener == null && levelArrayListener == null) {
+                dispatch(decoder.decode(bytes, null));
+                return;
+            }
+            ClientMessage message = decoder.decode(bytes, this);
+            if (message != null) {
+                dispatch(message);
+            } else {
+                skippedFrames.incrementAndGet();
+            }
+        }
+
+        /**
+         * Sees every frame before its payload is decoded. Hands level updates to the
+         * view and array listeners and decides whether the full message is still needed.
+         */
+        @Override
+        public boolean test(FrameHeader header) {
+            LevelDataViewListener viewListener = levelViewListener;
+            LevelArrayListener arrayListener = levelArrayListener;
+            if ((viewListener != null || arrayListener != null) && header.type() == Types.subscribe_VALUE
+                    && header.payloadField() == FrameHeader.LEVEL_DATA_FIELD) {
                 try {
-                    ClientMessage message = ClientMessage.parseFrom(bytes.toByteArray());
-                    if (WebsocketClient.this.listener != null) {
-                        WebsocketClient.this.listener.onClientMessage(message);
+                    LevelDataView view = header.levelData();
+                    if (viewListener != null) {
+                        viewListener.onLevelUpdate(view);
                     }
-                    if (message.getType() == Types.subscribe) {
-                        String event = message.getEvent();
-                        switch (event) {
-                            case "levels":
-                                if (WebsocketClient.this.listener != null) {
-                                    WebsocketClient.this.listener.onLevelUpdate(message.getLevelData());
-                                }
-                                break;
-                            case "prices":
-                                if (WebsocketClient.this.listener != null) {
-                                        WebsocketClient.this.listener.onPriceUpdate(message.getPricesData());
-                                }
-                                break;
-                            case "notifications":
-                                if (WebsocketClient.this.listener != null) {
-                                    String notificationType = message.getTopic();
-                                    switch (notificationType) {
-                                        case "ORDER_FILLED":
-                                            WebsocketClient.this.listener.onOrderFill(message.getNotification().getOrderFilled());
-                                            break;
-                                        case "ORDER_CANCELLED":
-                                            WebsocketClient.this.listener.onOrderCancel(message.getNotification().getOrderCancelled());
-                                            break;
-                                    }
-                                }
-                                break;
-                            default:
-                                System.out.println("Unknown event type: " + event);
-                        }
-                    } else if (message.getType() == Types.requestresponse) {
-                        System.out.println("Received response for request id: " + message);
-                        String requestId = message.getEvent();
-                        CompletableFuture<?> future = responseFutures.get(requestId);
-                        if (future != null) {
-                            if (message.hasErrorMessage()) {
-                                future.completeExceptionally(new Exception(message.getErrorMessage().getMessage()));
-                                return;
-                            }
-                            if (message.getTopic() == "error") {
-                                future.completeExceptionally(new Exception(message.getErrorMessage().getMessage()));
-                                return;
-                            }
-                            switch(message.getTopic()) {
-                                case "createorder":
-                                    completeResponse(future, message.getTradeStatusResponse());
-                                    break;
-                                case "limits":
-                                    completeResponse(future, message.getLimitResponse());
-                                    break;
-                                default:
-                                    if (message.getTopic().startsWith("cancelorder/")) {
-                                        completeResponse(future, message.getTradeStatusResponse());
-                                    } else {
-                                        future.completeExceptionally(new Exception("invalid response received for request id: " + requestId));
-                                    }
-                            }
-                            responseFutures.remove(requestId);
-                        }
+                    if (arrayListener != null) {
+                        deliverArrays(arrayListener, header, view);
                     }
-                } catch (Exception e) {
+                } catch (IOException e) {
                     e.printStackTrace();
                 }
             }
+            return !lazyDecoding || wantsPayload(header);
+        }
 
-            @Override
-            public void onClosing(WebSocket webSocket, int code, String reason) {
-                isConnected = false;
+        private void deliverArrays(LevelArrayListener arrayListener, FrameHeader header, LevelDataView view) {
+            int depth = view.levelCount();
+            if (depth > buyPrices.length) {
+                int capacity = Integer.highestOneBit(depth) << 1;
+                buyPrices = new double[capacity];
+                sellPrices = new double[capacity];
+                maxQuantities = new double[capacity];
             }
-
-            @Override
-            public void onClosed(WebSocket webSocket, int code, String reason) {
-                isConnected = false;
-                logger.warning("Connection closed "+ code +" "+ reason);
-                reconnect();
+            view.copyLevels(buyPrices, sellPrices, maxQuantities);
+            DispatchTable topics = levelSubscriptions.topics();
+            String market = view.market(topics);
+            if (market == null) {
+                market = view.market();
             }
+            int marketId = header.topic(topics) - 1;
+            arrayListener.onLevelUpdate(marketId, market, view.lastUpdate(), buyPrices, sellPrices, maxQuantities, depth);
+        }
+    }
 
-            @Override
-            public void onFailure(WebSocket webSocket, Throwable t, Response response) {
-                logger.warning("Connection failed "+ t.getMessage());
-                isConnected = false;
-                reconnect();
-            }
-        };
+    private boolean wantsPayload(FrameHeader header) {
+        if (header.type() == Types.requestresponse_VALUE
+                || header.type() == Types.pingpong_VALUE && latencyProber != null) {
+            return true;
+        }
+        if (listener == null && feedMonitor == null && !trackingQuotes) {
+            return false;
+        }
+        if (header.type() != Types.subscribe_VALUE) {
+            return true;
+        }
+        switch (header.event(EVENTS)) {
+            case EVENT_LEVELS:
+                return header.topic(levelSubscriptions.topics()) != DispatchTable.UNKNOWN;
+            case EVENT_PRICES:
+                return header.topic(priceSubscriptions.topics()) != DispatchTable.UNKNOWN;
+            default:
+                return true;
+        }
+    }
 
-        webSocket = client.newWebSocket(request, listener);
+    void dispatch(ClientMessage message) {
+        WebsocketListener listener = this.listener;
+        LatencyProber prober = latencyProber;
+        FeedMonitor monitor = feedMonitor;
+        if (listener != null) {
+            listener.onClientMessage(message);
+        }
+        if (message.hasAvailableTickerResponse()) {
+            quotes.getMarkets().register(message.getAvailableTickerResponse());
+        }
+        if (message.getType() == Types.subscribe) {
+            int event = EVENTS.lookup(message.getEvent());
+            switch (event) {
+                case EVENT_LEVELS:
+                    if (prober != null) {
+                        prober.onServerTimestamp(message.getLevelData().getLastUpdate());
+                    }
+                    if (monitor != null) {
+                        monitor.onLevelUpdate(message.getTopic(), message.getLevelData().getLastUpdate());
+                    }
+                    if (trackingQuotes) {
+                        int topic = levelSubscriptions.topics().lookup(message.getTopic());
+                        if (topic != DispatchTable.UNKNOWN) {
+                            quoteStore.updateQuote(topic - 1, message.getLevelData());
+                        }
+                    }
+                    if (listener != null) {
+                        listener.onLevelUpdate(message.getLevelData());
+                    }
+                    break;
+                case EVENT_PRICES:
+                    if (prober != null) {
+                        prober.onServerTimestamp(message.getPricesData().getLastUpdate());
+                    }
+                    if (monitor != null) {
+                        monitor.onPriceUpdate(message.getTopic(), message.getPricesData().getLastUpdate());
+                    }
+                    if (listener != null) {
+                        listener.onPriceUpdate(message.getPricesData());
+                    }
+                    break;
+                case EVENT_NOTIFICATIONS:
+                    if (listener != null) {
+                        dispatchNotification(listener, message.getNotification());
+                    }
+                    break;
+                default:
+                    System.out.println("Unknown event type: " + message.getEvent());
+            }
+        } else if (message.getType() == Types.pingpong) {
+            if (prober != null) {
+                prober.onPong(message.getEvent());
+            }
+        } else if (message.getType() == Types.requestresponse) {
+            logger.fine("Received response for request id: " + message.getEvent());
+            String requestId = message.getEvent();
+            CompletableFuture<?> future = pendingRequests.remove(requestIds.parse(requestId));
+            if (future != null) {
+                int topic = RESPONSE_TOPICS.lookup(message.getTopic());
+                if (message.hasErrorMessage() || topic == TOPIC_ERROR) {
+                    future.completeExceptionally(new Exception(message.getErrorMessage().getMessage()));
+                    return;
+                }
+                switch (topic) {
+                    case TOPIC_CREATE_ORDER:
+                    case TOPIC_CANCEL_ORDER:
+                        completeResponse(future, message.getTradeStatusResponse());
+                        break;
+                    case TOPIC_LIMITS:
+                        completeResponse(future, message.getLimitResponse());
+                        break;
+                    default:
+                        future.completeExceptionally(new Exception("invalid response received for request id: " + requestId));
+                }
+            }
+        }
     }
 
-    public void subscribeLevel(String symbol) {
-        levelSubscriptions.add(symbol);
-        sendLevelSubscription(symbol);
+    private void dispatchNotification(WebsocketListener listener, Notification notification) {
+        switch (notification.getPayloadCase()) {
+            case ORDER_FILLED:
+                listener.onOrderFill(notification.getOrderFilled());
+                break;
+            case ORDER_CANCELLED:
+                listener.onOrderCancel(notification.getOrderCancelled());
+                break;
+            case ORDER_OPENED:
+                listener.onOrderOpened(notification.getOrderOpened());
+                break;
+            default:
+                break;
+        }
     }
 
-    private void sendLevelSubscription(String symbol) {
-        if (webSocket != null && isConnected) {
-            ClientMessage subscriptionMessage = ClientMessage.newBuilder()
-                    .setType(Types.subscribe)
-                    .setEvent("levels")
-                    .setTopic(symbol)
-                    .build();
+    /**
+     * Subscribes to the levels of {@code symbol} and returns a handle that reads
+     * its latest quote without a lookup.
+     */
+    public MarketHandle subscribeLevel(String symbol) {
+        MarketHandle handle = quotes.handle(symbol);
+        trackingQuotes = true;
+        subscribe(levelSubscriptions, symbol);
+        return handle;
+    }
 
-            byte[] message = subscriptionMessage.toByteArray();
-            ByteString socketMessage = new ByteString(message);
-            System.out.println("Sending message: levels" + symbol);
-            webSocket.send(socketMessage);
+    /**
+     * Subscribes to the levels of several markets, sending only the new ones, and
+     * returns a handle per market in the order given.
+     */
+    public List<MarketHandle> subscribeLevels(Collection<String> symbols) {
+        List<MarketHandle> handles = new ArrayList<>(symbols.size());
+        for (String symbol : symbols) {
+            handles.add(quotes.handle(symbol));
         }
+        trackingQuotes = true;
+        subscribeAll(levelSubscriptions, symbols);
+        return handles;
+    }
+
+    /**
+     * Drops one subscription to the levels of {@code symbol}; the server is only
+     * told to stop once every subscriber has unsubscribed.
+     */
+    public void unsubscribeLevel(String symbol) {
+        unsubscribe(levelSubscriptions, symbol);
     }
 
     public void subscribePrices(String symbol) {
-        priceSubscriptions.add(symbol);
-        sendPriceSubscription(symbol);
+        subscribe(priceSubscriptions, symbol);
     }
 
-    private void sendPriceSubscription(String symbol) {
-        if (webSocket != null && isConnected) {
-            ClientMessage subscriptionMessage = ClientMessage.newBuilder()
-                    .setType(Types.subscribe)
-                    .setEvent("prices")
-                    .setTopic(symbol)
-                    .build();
+    public void subscribePrices(Collection<String> symbols) {
+        subscribeAll(priceSubscriptions, symbols);
+    }
+
+    public void unsubscribePrices(String symbol) {
+        unsubscribe(priceSubscriptions, symbol);
+    }
+
+    void resubscribeLevel(String symbol) {
+        resubscribe(levelSubscriptions, symbol);
+    }
 
-            byte[] message = subscriptionMessage.toByteArray();
-            ByteString socketMessage = new ByteString(message);
-            System.out.println("Sending message: prices" + symbol);
-            webSocket.send(socketMessage);
+    void resubscribePrices(String symbol) {
+        resubscribe(priceSubscriptions, symbol);
+    }
+
+    List<String> levelTopics() {
+        return levelSubscriptions.topicList();
+    }
+
+    List<String> priceTopics() {
+        return priceSubscriptions.topicList();
+    }
+
+    /** Asks the server to start the feed of {@code symbol} over, keeping the local subscription. */
+    private void resubscribe(SubscriptionRegistry registry, String symbol) {
+        if (registry.contains(symbol)) {
+            send(registry.unsubscribeFrame(symbol));
+            send(registry.subscribeFrame(symbol));
         }
     }
 
-    private void reconnect() {
-        try {
-            logger.info("Reconnecting in " + RECONNECT_DELAY + " seconds");
-            Thread.sleep(RECONNECT_DELAY * 1000);
-            connect();
-        } catch (InterruptedException e) {
-            e.printStackTrace();
+    private void subscribe(SubscriptionRegistry registry, String symbol) {
+        if (registry.add(symbol)) {
+            send(registry.subscribeFrame(symbol));
         }
     }
 
-    public boolean sendClientMessage(ClientMessage message) {
-        if (webSocket != null && isConnected) {
-            webSocket.send(ByteString.of(message.toByteArray()));
-            return true;
+    private void subscribeAll(SubscriptionRegistry registry, Collection<String> symbols) {
+        for (String symbol : registry.addAll(symbols)) {
+            send(registry.subscribeFrame(symbol));
+        }
+    }
+
+    private void unsubscribe(SubscriptionRegistry registry, String symbol) {
+        if (registry.remove(symbol)) {
+            send(registry.unsubscribeFrame(symbol));
+        }
+    }
+
+    private boolean send(ByteString frame) {
+        return send(frame.asByteBuffer());
+    }
+
+    private boolean send(ByteBuffer frame) {
+        WebsocketTransport.Session socket = webSocket;
+        if (socket != null && isConnected) {
+            return socket.send(frame);
         }
         return false;
     }
 
+    /** Responses never arrive on a new connection, so in-flight requests fail right away. */
+    private void failPendingRequests(String reason) {
+        int failed = pendingRequests.failAll(new Exception(reason));
+        if (failed > 0) {
+            logger.warning("Failed " + failed + " pending requests: " + reason);
+        }
+    }
+
+    public boolean sendClientMessage(ClientMessage message) {
+        return send(ByteBuffer.wrap(message.toByteArray()));
+    }
+
     public CompletableFuture<TradeStatusResponse> sendMarketOrder(String quote_id, String asset, String counterAsset, Double price, String side, Double quantity, String clientTag) {
-        UUID uuid = UUID.randomUUID();
-        CompletableFuture<TradeStatusResponse> future = new CompletableFuture<>();
-        responseFutures.put(uuid.toString(), future);
         OrderSide orderSide = side.trim().toUpperCase().equals("BUY") ? OrderSide.Buy : OrderSide.Sell;
         if (webSocket != null && isConnected) {
-            CreateOrderMessage order = CreateOrderMessage.newBuilder()
-                    .setPrice(price)
-                    // .setLimitPrice(null)
-                    .setQty(quantity)
-                    .setQuoteId(quote_id)
-                    .setSide(orderSide)
-                    .setOrderType(OrderType.MARKET)
-                    .setAsset(asset)
-                    .setCounterAsset(counterAsset)
-                    .setClientTag(clientTag)
-                    .setExpires(-1)
-                    .build();
-            ClientMessage orderMessage = ClientMessage.newBuilder()
-                    .setType(Types.requestresponse)
-                    .setEvent(uuid.toString())
-                    .setTopic("createorder")
-                    .setCreateOrderRequest(order)
-                    .build();
-
-            byte[] message = orderMessage.toByteArray();
-            ByteString socketMessage = new ByteString(message);
             logger.info("Sending market order: " + quote_id + " " + asset + " " + counterAsset + " " + price + " " + side.toUpperCase() + " " + quantity + " " + clientTag);
-            webSocket.send(socketMessage);
-        } else {
-            future.completeExceptionally(new Exception("Connection not available"));
         }
-        return future;
+        return sendOrder(orderTemplate(asset, counterAsset, orderSide, OrderType.MARKET), price, quantity, quote_id, clientTag);
     }
 
     public CompletableFuture<TradeStatusResponse> sendLimitOrder(String asset, String counterAsset, Double price, String side, Double quantity, String clientTag) {
-        UUID uuid = UUID.randomUUID();
-        CompletableFuture<TradeStatusResponse> future = new CompletableFuture<>();
-        responseFutures.put(uuid.toString(), future);
         OrderSide orderSide = side.trim().toUpperCase().equals("BUY") ? OrderSide.Buy : OrderSide.Sell;
         if (webSocket != null && isConnected) {
-            CreateOrderMessage order = CreateOrderMessage.newBuilder()
-                    .setLimitPrice(price)
-                    .setQty(quantity)
-                    .setSide(orderSide)
-                    .setOrderType(OrderType.LIMIT)
-                    .setAsset(asset)
-                    .setCounterAsset(counterAsset)
-                    .setClientTag(clientTag)
-                    .setExpires(-1)
-                    .build();
-            ClientMessage orderMessage = ClientMessage.newBuilder()
-                    .setType(Types.requestresponse)
-                    .setEvent(uuid.toString())
-                    .setTopic("createorder")
-                    .setCreateOrderRequest(order)
-                    .build();
-
-            byte[] message = orderMessage.toByteArray();
-            ByteString socketMessage = new ByteString(message);
             logger.info("Sending limit order: " + asset + " " + counterAsset + " " + price + " " + side.toUpperCase() + " " + quantity + " " + clientTag);
-            webSocket.send(socketMessage);
+        }
+        return sendOrder(orderTemplate(asset, counterAsset, orderSide, OrderType.LIMIT), price, quantity, null, clientTag);
+    }
+
+    /**
+     * Returns the cached template for the given order shape, creating it on first
+     * use. Strategies that send the same shape repeatedly can hold on to it and
+     * call {@link #sendOrder} directly.
+     */
+    public OrderTemplate orderTemplate(String asset, String counterAsset, OrderSide side, OrderType orderType) {
+        String key = asset + "/" + counterAsset + "/" + side.getNumber() + "/" + orderType.getNumber();
+        OrderTemplate template = orderTemplates.get(key);
+        if (template == null) {
+            template = orderTemplates.computeIfAbsent(key, k -> new OrderTemplate(asset, counterAsset, side, orderType));
+        }
+        return template;
+    }
+
+    /**
+     * Sends an order built from a template. {@code price} is the market price for
+     * market templates and the limit price for limit templates; {@code quoteId} is
+     * only meaningful for market orders and may be null.
+     */
+    public CompletableFuture<TradeStatusResponse> sendOrder(OrderTemplate template, double price, double quantity, String quoteId, String clientTag) {
+        long requestId = requestIds.next();
+        CompletableFuture<TradeStatusResponse> future = new CompletableFuture<>();
+        putPendingRequest(requestId, future, RequestType.CREATE_ORDER);
+        if (webSocket != null && isConnected) {
+            WireWriter writer = template.encodeInto(requestIds.format(requestId), price, quantity, quoteId, clientTag);
+            send(ByteBuffer.wrap(writer.buffer(), 0, writer.position()));
         } else {
+            pendingRequests.remove(requestId);
             future.completeExceptionally(new Exception("Connection not available"));
         }
         return future;
     }
 
     public CompletableFuture<LimitsResponse> getLimits() {
-        UUID uuid = UUID.randomUUID();
+        long requestId = requestIds.next();
         CompletableFuture<LimitsResponse> future = new CompletableFuture<>();
-        responseFutures.put(uuid.toString(), future);
+        putPendingRequest(requestId, future, RequestType.LIMITS);
         if (webSocket != null && isConnected) {
             ClientMessage orderMessage = ClientMessage.newBuilder()
                     .setType(Types.requestresponse)
-                    .setEvent(uuid.toString())
+                    .setEvent(requestIds.format(requestId).toString())
                     .setTopic("limits")
                     .build();
 
-            byte[] message = orderMessage.toByteArray();
-            ByteString socketMessage = new ByteString(message);
             logger.info("send limits: ");
-            webSocket.send(socketMessage);
+            send(ByteBuffer.wrap(orderMessage.toByteArray()));
         } else {
+            pendingRequests.remove(requestId);
             future.completeExceptionally(new Exception("Connection not available"));
         }
         return future;
     }
 
     public CompletableFuture<TradeStatusResponse> cancelOrder(String orderId) {
-        UUID uuid = UUID.randomUUID();
+        long requestId = requestIds.next();
         CompletableFuture<TradeStatusResponse> future = new CompletableFuture<>();
-        responseFutures.put(uuid.toString(), future);
+        putPendingRequest(requestId, future, RequestType.CANCEL_ORDER);
         if (webSocket != null && isConnected) {
             ClientMessage cancelMessage = ClientMessage.newBuilder()
                     .setType(Types.requestresponse)
-                    .setEvent(uuid.toString())
+                    .setEvent(requestIds.format(requestId).toString())
                     .setTopic("cancelorder/" + orderId)
                     .build();
 
-            byte[] message = cancelMessage.toByteArray();
-            ByteString socketMessage = new ByteString(message);
             logger.info("Sending cancel order request for order: " + orderId);
-            webSocket.send(socketMessage);
+            send(ByteBuffer.wrap(cancelMessage.toByteArray()));
         } else {
+            pendingRequests.remove(requestId);
             future.completeExceptionally(new Exception("Connection not available"));
         }
         return future;
     }
 
+    private void putPendingRequest(long requestId, CompletableFuture<?> future, RequestType type) {
+        pendingRequests.put(requestId, future, type.getTopic(), requestTimeouts[type.ordinal()], TimeUnit.MILLISECONDS);
+    }
+
     @SuppressWarnings("unchecked")
     private <T> void completeResponse(CompletableFuture<?> future, T response) {
         ((CompletableFuture<T>) future).complete(response);
     }
 
+    /** Uses OkHttp with the given client as the transport. */
     public void setClient(OkHttpClient client) {
-        this.client = client;
+        this.transport = new OkHttpTransport(client);
     }
 
+    /** The OkHttp client of the transport, or null if another transport is in use. */
     public OkHttpClient getClient() {
-        return client;
+        return transport instanceof OkHttpTransport ? ((OkHttpTransport) transport).getClient() : null;
+    }
+
+    /** Replaces the websocket engine; takes effect on the next connection. */
+    public void setTransport(WebsocketTransport transport) {
+        this.transport = transport;
+    }
+
+    public WebsocketTransport getTransport() {
+        return transport;
     }
 }
@@ -0,0 +1,392 @@
+package co.dvchain.trade.websocket;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+import co.dvchain.trade.clientmessages.Clientmessages.ClientMessage;
+import co.dvchain.trade.clientmessages.Clientmessages.LevelData;
+import co.dvchain.trade.clientmessages.Clientmessages.LimitsResponse;
+import co.dvchain.trade.clientmessages.Clientmessages.OrderCancelled;
+import co.dvchain.trade.clientmessages.Clientmessages.OrderFilled;
+import co.dvchain.trade.clientmessages.Clientmessages.OrderOpened;
+import co.dvchain.trade.clientmessages.Clientmessages.PricesData;
+import co.dvchain.trade.clientmessages.Clientmessages.TradeStatusResponse;
+
+/**
+ * Spreads subscriptions over several connections so that inbound frames are
+ * read and decoded on several threads, while callers see a single client and a
+ * single listener. A new subscription goes to the connection with the lowest
+ * measured message rate; {@link #rebalance()} reassigns all of them from the
+ * per-symbol rates measured since the previous call. Requests go over the
+ * first open connection. Every connection receives the order notifications,
+ * so they are taken from all of them and de-duplicated by order id and status
+ * time. A symbol's updates come from one connection and are passed on as they
+ * are, except for a while after {@link #rebalance()} moves the symbol, when
+ * both connections may deliver it and the copies are dropped as in
+ * {@link RedundantWebsocketClient}.
+ */
+public class WebsocketClientPool {
+    private final static Logger logger = Logger.getLogger(WebsocketClientPool.class.getName());
+    /** How long after a move both connections may deliver the moved symbol. */
+    private static final long MOVE_OVERLAP_NANOS = TimeUnit.SECONDS.toNanos(5);
+
+    private final WebsocketClient[] connections;
+    private final AtomicLong[] connectionMessages;
+    private final ConcurrentHashMap<String, Assignment> levelAssignments = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Assignment> priceAssignments = new ConcurrentHashMap<>();
+    private final FeedMerger merger = new FeedMerger();
+    private volatile WebsocketListener listener;
+    private long measuredSince = System.nanoTime();
+
+    public WebsocketClientPool(String url, String apiKey, String secretKey, int connectionCount) {
+        this(newClients(url, apiKey, secretKey, connectionCount));
+    }
+
+    WebsocketClientPool(WebsocketClient[] connections) {
+        if (connections.length < 1) {
+            throw new IllegalArgumentException("connectionCount must be positive: " + connections.length);
+        }
+        this.connections = connections;
+        this.connectionMessages = new AtomicLong[connections.length];
+        for (int i = 0; i < connections.length; i++) {
+            connectionMessages[i] = new AtomicLong();
+            connections[i].setMessageHandler(new Forwarder(i));
+            int index = i;
+            connections[i].setOpenHook(() -> reopened(index));
+        }
+    }
+
+    private static WebsocketClient[] newClients(String url, String apiKey, String secretKey, int connectionCount) {
+        if (connectionCount < 1) {
+            throw new IllegalArgumentException("connectionCount must be positive: " + connectionCount);
+        }
+        WebsocketClient[] clients = new WebsocketClient[connectionCount];
+        for (int i = 0; i < connectionCount; i++) {
+            clients[i] = new WebsocketClient(url, apiKey, secretKey);
+        }
+        return clients;
+    }
+
+    public void setMessageHandler(WebsocketListener listener) {
+        this.listener = listener;
+    }
+
+    public void connect() {
+        for (WebsocketClient connection : connections) {
+            connection.connect();
+        }
+    }
+
+    public void disconnect() {
+        for (WebsocketClient connection : connections) {
+            connection.disconnect();
+        }
+    }
+
+    public int getConnectionCount() {
+        return connections.length;
+    }
+
+    /** Number of updates and notifications dropped because another connection delivered them first. */
+    public long getDuplicateCount() {
+        return merger.getDuplicateCount();
+    }
+
+    /** Index of the connection carrying the levels of {@code symbol}, or -1. */
+    public int connectionOfLevel(String symbol) {
+        Assignment assignment = levelAssignments.get(symbol);
+        return assignment != null ? assignment.connection : -1;
+    }
+
+    public int connectionOfPrices(String symbol) {
+        Assignment assignment = priceAssignments.get(symbol);
+        return assignment != null ? assignment.connection : -1;
+    }
+
+    public synchronized void subscribeLevel(String symbol) {
+        if (!levelAssignments.containsKey(symbol)) {
+            merger.resetLevels(symbol);
+            int connection = leastLoaded();
+            levelAssignments.put(symbol, new Assignment(connection));
+            connections[connection].subscribeLevel(symbol);
+        }
+    }
+
+    public void subscribeLevels(Collection<String> symbols) {
+        for (String symbol : symbols) {
+            subscribeLevel(symbol);
+        }
+    }
+
+    public synchronized void unsubscribeLevel(String symbol) {
+        Assignment assignment = levelAssignments.remove(symbol);
+        if (assignment != null) {
+            connections[assignment.connection].unsubscribeLevel(symbol);
+        }
+    }
+
+    public synchronized void subscribePrices(String symbol) {
+        if (!priceAssignments.containsKey(symbol)) {
+            merger.resetPrices(symbol);
+            int connection = leastLoaded();
+            priceAssignments.put(symbol, new Assignment(connection));
+            connections[connection].subscribePrices(symbol);
+        }
+    }
+
+    public synchronized void unsubscribePrices(String symbol) {
+        Assignment assignment = priceAssignments.remove(symbol);
+        if (assignment != null) {
+            connections[assignment.connection].unsubscribePrices(symbol);
+        }
+    }
+
+    /**
+     * Reassigns every subscription from the message rates measured since the last
+     * call: the busiest symbols are placed first, each on the connection with the
+     * least load so far. Symbols that end up on another connection are subscribed
+     * there before being unsubscribed from the old one, so no updates are missed;
+     * for a few seconds after, while both may deliver the symbol, copies the
+     * other connection already delivered are dropped.
+     * Returns the number of subscriptions moved.
+     */
+    public synchronized int rebalance() {
+        long now = System.nanoTime();
+        double seconds = Math.max(1e-9, (now - measuredSince) / 1e9);
+        measuredSince = now;
+
+        List<Load> loads = new ArrayList<>(levelAssignments.size() + priceAssignments.size());
+        collect(loads, levelAssignments, true, seconds);
+        collect(loads, priceAssignments, false, seconds);
+        loads.sort((a, b) -> Double.compare(b.rate, a.rate));
+
+        double[] connectionLoad = new double[connections.length];
+        int moved = 0;
+        for (Load load : loads) {
+            int target = 0;
+            for (int i = 1; i < connectionLoad.length; i++) {
+                if (connectionLoad[i] < connectionLoad[target]) {
+                    target = i;
+                }
+            }
+            connectionLoad[target] += Math.max(load.rate, 1e-3);
+            int source = load.assignment.connection;
+            if (target != source) {
+                // Copies are only matched up while both connections may deliver the symbol.
+                if (load.levels) {
+                    merger.resetLevels(load.symbol);
+                } else {
+                    merger.resetPrices(load.symbol);
+                }
+                load.assignment.overlapUntil = System.nanoTime() + MOVE_OVERLAP_NANOS;
+                move(load.symbol, load.levels, source, target);
+                load.assignment.connection = target;
+                moved++;
+            }
+        }
+        for (AtomicLong messages : connectionMessages) {
+            messages.set(0);
+        }
+        if (moved > 0) {
+            logger.info("Rebalanced " + moved + " subscriptions over " + connections.length + " connections");
+        }
+        return moved;
+    }
+
+    private static void collect(List<Load> loads, Map<String, Assignment> assignments, boolean levels, double seconds) {
+        for (Map.Entry<String, Assignment> entry : assignments.entrySet()) {
+            Assignment assignment = entry.getValue();
+            loads.add(new Load(entry.getKey(), levels, assignment, assignment.messages.getAndSet(0) / seconds));
+        }
+    }
+
+    private void move(String symbol, boolean levels, int source, int target) {
+        if (levels) {
+            connections[target].subscribeLevel(symbol);
+            connections[source].unsubscribeLevel(symbol);
+        } else {
+            connections[target].subscribePrices(symbol);
+            connections[source].unsubscribePrices(symbol);
+        }
+    }
+
+    /**
+     * A reconnected connection sends fresh snapshots of its symbols, whose
+     * timestamps must not be held against what was delivered before.
+     */
+    private void reopened(int connection) {
+        for (Map.Entry<String, Assignment> entry : levelAssignments.entrySet()) {
+            if (entry.getValue().connection == connection) {
+                merger.resetLevels(entry.getKey());
+            }
+        }
+        for (Map.Entry<String, Assignment> entry : priceAssignments.entrySet()) {
+            if (entry.getValue().connection == connection) {
+                merger.resetPrices(entry.getKey());
+            }
+        }
+    }
+
+    /** Connection with the fewest messages since the last rebalance, ties broken by subscription count. */
+    private int leastLoaded() {
+        int[] subscriptions = new int[connections.length];
+        for (Assignment assignment : levelAssignments.values()) {
+            subscriptions[assignment.connection]++;
+        }
+        for (Assignment assignment : priceAssignments.values()) {
+            subscriptions[assignment.connection]++;
+        }
+        int best = 0;
+        for (int i = 1; i < connections.length; i++) {
+            long messages = connectionMessages[i].get();
+            long bestMessages = connectionMessages[best].get();
+            if (messages < bestMessages || messages == bestMessages && subscriptions[i] < subscriptions[best]) {
+                best = i;
+            }
+        }
+        return best;
+    }
+
+    /** The connection requests go over: the first one that is open. */
+    WebsocketClient active() {
+        for (WebsocketClient connection : connections) {
+            if (connection.getConnectionState() == ConnectionState.OPEN) {
+                return connection;
+            }
+        }
+        return connections[0];
+    }
+
+    public CompletableFuture<TradeStatusResponse> sendMarketOrder(String quote_id, String asset, String counterAsset, Double price, String side, Double quantity, String clientTag) {
+        return active().sendMarketOrder(quote_id, asset, counterAsset, price, side, quantity, clientTag);
+    }
+
+    public CompletableFuture<TradeStatusResponse> sendLimitOrder(String asset, String counterAsset, Double price, String side, Double quantity, String clientTag) {
+        return active().sendLimitOrder(asset, counterAsset, price, side, quantity, clientTag);
+    }
+
+    public CompletableFuture<TradeStatusResponse> sendOrder(OrderTemplate template, double price, double quantity, String quoteId, String clientTag) {
+        return active().sendOrder(template, price, quantity, quoteId, clientTag);
+    }
+
+    public CompletableFuture<LimitsResponse> getLimits() {
+        return active().getLimits();
+    }
+
+    public CompletableFuture<TradeStatusResponse> cancelOrder(String orderId) {
+        return active().cancelOrder(orderId);
+    }
+
+    private static final class Assignment {
+        private volatile int connection;
+        private volatile long overlapUntil;
+        private final AtomicLong messages = new AtomicLong();
+
+        Assignment(int connection) {
+            this.connection = connection;
+        }
+
+        /** Whether the symbol was moved recently enough that the old connection may still deliver it. */
+        boolean overlapping() {
+            long until = overlapUntil;
+            return until != 0 && System.nanoTime() - until < 0;
+        }
+    }
+
+    private static final class Load {
+        private final String symbol;
+        private final boolean levels;
+        private final Assignment assignment;
+        private final double rate;
+
+        Load(String symbol, boolean levels, Assignment assignment, double rate) {
+            this.symbol = symbol;
+            this.levels = levels;
+            this.assignment = assignment;
+            this.rate = rate;
+        }
+    }
+
+    /** Counts the updates of one connection and passes them on to the pool's listener, dropping copies during a move. */
+    private final class Forwarder implements WebsocketListener {
+        private final int index;
+
+        Forwarder(int index) {
+            this.index = index;
+        }
+
+        @Override
+        public void onClientMessage(ClientMessage message) {
+            connectionMessages[index].incrementAndGet();
+            WebsocketListener listener = WebsocketClientPool.this.listener;
+            if (listener != null) {
+                listener.onClientMessage(message);
+            }
+        }
+
+        @Override
+        public void onLevelUpdate(LevelData levelData) {
+            Assignment assignment = levelAssignments.get(levelData.getMarket());
+            if (assignment != null) {
+                assignment.messages.incrementAndGet();
+            }
+            WebsocketListener listener = WebsocketClientPool.this.listener;
+            if (listener == null) {
+                return;
+            }
+            if (assignment != null && assignment.overlapping()) {
+                merger.onLevelUpdate(listener, index, levelData);
+            } else {
+                listener.onLevelUpdate(levelData);
+            }
+        }
+
+        @Override
+        public void onPriceUpdate(PricesData pricesData) {
+            Assignment assignment = priceAssignments.get(pricesData.getMarket());
+            if (assignment != null) {
+                assignment.messages.incrementAndGet();
+            }
+            WebsocketListener listener = WebsocketClientPool.this.listener;
+            if (listener == null) {
+                return;
+            }
+            if (assignment != null && assignment.overlapping()) {
+                merger.onPriceUpdate(listener, index, pricesData);
+            } else {
+                listener.onPriceUpdate(pricesData);
+            }
+        }
+
+        @Override
+        public void onOrderFill(OrderFilled orderFilled) {
+            WebsocketListener listener = WebsocketClientPool.this.listener;
+            if (listener != null) {
+                merger.onOrderFill(listener, orderFilled);
+            }
+        }
+
+        @Override
+        public void onOrderCancel(OrderCancelled orderCancelled) {
+            WebsocketListener listener = WebsocketClientPool.this.listener;
+            if (listener != null) {
+                merger.onOrderCancel(listener, orderCancelled);
+            }
+        }
+
+        @Override
+        public void onOrderOpened(OrderOpened orderOpened) {
+            WebsocketListener listener = WebsocketClientPool.this.listener;
+            if (listener != null) {
+                merger.onOrderOpened(listener, orderOpened);
+            }
+        }
+    }
+}
@@ -6,16 +6,32 @@ import co.dvchain.trade.clientmessages.Clientmessages.OrderCancelled;
 import co.dvchain.trade.clientmessages.Clientmessages.OrderFilled;
 import co.dvchain.trade.clientmessages.Clientmessages.OrderOpened;
 import co.dvchain.trade.clientmessages.Clientmessages.PricesData;
+import java.util.Collection;
+import java.util.Map;
 import java.util.logging.*;
 
 public class WebsocketListenerImpl implements WebsocketListener{
     private static final Logger logger = Logger.getLogger(WebsocketListenerImpl.class.getName());
-    private QuoteManager quoteManager = new QuoteManager();
+    private final QuoteStore quoteManager;
+
+    public WebsocketListenerImpl() {
+        this(new QuoteManager());
+    }
+
+    /** Keeps the levels in {@code quotes}, a {@link MappedQuoteManager} to share them with other processes. */
+    public WebsocketListenerImpl(QuoteStore quotes) {
+        this.quoteManager = quotes;
+    }
 
     public LevelData getLatestQuoteForSymbol(String symbol) {
         return quoteManager.getQuote(symbol);
     }
 
+    /** The latest quotes of several markets, all as of the same update. */
+    public Map<String, LevelData> getLatestQuotes(Collection<String> symbols) {
+        return quoteManager.getQuotes(symbols);
+    }
+
     @Override
     public void onLevelUpdate(LevelData levelData) {
         quoteManager.updateQuote(levelData);
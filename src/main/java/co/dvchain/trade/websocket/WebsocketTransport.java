@@ -0,0 +1,79 @@
+package co.dvchain.trade.websocket;
+
+import java.nio.ByteBuffer;
+import java.util.Map;
+
+/**
+ * The websocket engine under a {@link WebsocketClient}. A transport opens
+ * sessions and reports their events to a {@link Listener}; the client only
+ * ever sends and receives binary frames. {@link OkHttpTransport} is the
+ * default; on Java 11 and later {@link #javaHttpClient()} returns one built on
+ * {@code java.net.http.WebSocket}.
+ */
+public interface WebsocketTransport {
+    /**
+     * Starts opening a session to {@code url} with the given handshake headers.
+     * Returns immediately; the outcome is reported to {@code listener}, possibly
+     * before this method returns.
+     */
+    Session connect(String url, Map<String, String> headers, Listener listener);
+
+    /**
+     * True if the buffers passed to {@link Listener#onMessage} are reused once the
+     * callback returns, so anything that keeps a frame must copy it first.
+     */
+    default boolean reusesFrameBuffers() {
+        return false;
+    }
+
+    /** One websocket connection. */
+    interface Session {
+        /**
+         * Queues {@code frame} as one binary message. The bytes between position and
+         * limit are copied or sent before this returns, the buffer can be reused.
+         * Returns false if the session is closed or its send queue is full.
+         */
+        boolean send(ByteBuffer frame);
+
+        /** Starts a graceful close handshake. */
+        void close(int code, String reason);
+
+        /** Drops the connection at once, without a close handshake. */
+        void cancel();
+    }
+
+    /** Session events, delivered on the transport's threads. */
+    interface Listener {
+        void onOpen(Session session);
+
+        /** A complete binary message, between the buffer's position and limit. */
+        void onMessage(Session session, ByteBuffer frame);
+
+        /** The peer started closing the session. */
+        void onClosing(Session session, int code, String reason);
+
+        void onClosed(Session session, int code, String reason);
+
+        void onFailure(Session session, Throwable failure);
+    }
+
+    /** The default transport, on a client with a 10 second ping interval. */
+    static WebsocketTransport okHttp() {
+        return new OkHttpTransport();
+    }
+
+    /**
+     * A transport built on {@code java.net.http.WebSocket}. It ships in the Java 11
+     * part of the multi-release jar, so it is only available on Java 11 or later.
+     *
+     * @throws UnsupportedOperationException on older runtimes
+     */
+    static WebsocketTransport javaHttpClient() {
+        try {
+            Class<?> type = Class.forName("co.dvchain.trade.websocket.JavaHttpClientTransport");
+            return (WebsocketTransport) type.getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException | LinkageError e) {
+            throw new UnsupportedOperationException("java.net.http transport requires Java 11 or later", e);
+        }
+    }
+}
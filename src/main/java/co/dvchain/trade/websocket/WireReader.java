@@ -0,0 +1,158 @@
+package co.dvchain.trade.websocket;
+
+import com.google.protobuf.InvalidProtocolBufferException;
+
+/**
+ * Minimal protobuf wire-format cursor over a byte array. Unlike
+ * CodedInputStream it can be re-pointed at a new frame, so hot paths can keep
+ * one per thread and read frames without allocating.
+ */
+final class WireReader {
+    static final int WIRETYPE_VARINT = 0;
+    static final int WIRETYPE_FIXED64 = 1;
+    static final int WIRETYPE_LENGTH_DELIMITED = 2;
+    static final int WIRETYPE_FIXED32 = 5;
+
+    private byte[] buffer;
+    private int position;
+    private int limit;
+
+    void wrap(byte[] buffer, int offset, int length) {
+        this.buffer = buffer;
+        this.position = offset;
+        this.limit = offset + length;
+    }
+
+    byte[] buffer() {
+        return buffer;
+    }
+
+    int position() {
+        return position;
+    }
+
+    int limit() {
+        return limit;
+    }
+
+    /** Narrows the readable region, returns the previous limit for {@link #popLimit}. */
+    int pushLimit(int length) throws InvalidProtocolBufferException {
+        if (length < 0 || length > limit - position) {
+            throw truncatedMessage();
+        }
+        int previous = limit;
+        limit = position + length;
+        return previous;
+    }
+
+    void popLimit(int previous) {
+        position = limit;
+        limit = previous;
+    }
+
+    boolean hasRemaining() {
+        return position < limit;
+    }
+
+    int readTag() throws InvalidProtocolBufferException {
+        int tag = readVarint32();
+        if (tag >>> 3 == 0) {
+            throw invalidTag();
+        }
+        return tag;
+    }
+
+    int readVarint32() throws InvalidProtocolBufferException {
+        return (int) readVarint64();
+    }
+
+    long readVarint64() throws InvalidProtocolBufferException {
+        long result = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            if (position >= limit) {
+                throw truncatedMessage();
+            }
+            byte b = buffer[position++];
+            result |= (long) (b & 0x7F) << shift;
+            if (b >= 0) {
+                return result;
+            }
+        }
+        throw malformedVarint();
+    }
+
+    long readFixed64() throws InvalidProtocolBufferException {
+        if (limit - position < 8) {
+            throw truncatedMessage();
+        }
+        long value = fixed64At(buffer, position);
+        position += 8;
+        return value;
+    }
+
+    double readDouble() throws InvalidProtocolBufferException {
+        return Double.longBitsToDouble(readFixed64());
+    }
+
+    /** Reads the length prefix of a length-delimited field and checks it fits the frame. */
+    int readLength() throws InvalidProtocolBufferException {
+        int length = readVarint32();
+        if (length < 0 || length > limit - position) {
+            throw truncatedMessage();
+        }
+        return length;
+    }
+
+    void skip(int length) throws InvalidProtocolBufferException {
+        if (length < 0 || length > limit - position) {
+            throw truncatedMessage();
+        }
+        position += length;
+    }
+
+    void skipField(int tag) throws InvalidProtocolBufferException {
+        switch (tag & 7) {
+            case WIRETYPE_VARINT:
+                readVarint64();
+                break;
+            case WIRETYPE_FIXED64:
+                skip(8);
+                break;
+            case WIRETYPE_LENGTH_DELIMITED:
+                skip(readLength());
+                break;
+            case WIRETYPE_FIXED32:
+                skip(4);
+                break;
+            default:
+                throw invalidWireType();
+        }
+    }
+
+    static long fixed64At(byte[] b, int p) {
+        return (b[p] & 0xFFL)
+                | (b[p + 1] & 0xFFL) << 8
+                | (b[p + 2] & 0xFFL) << 16
+                | (b[p + 3] & 0xFFL) << 24
+                | (b[p + 4] & 0xFFL) << 32
+                | (b[p + 5] & 0xFFL) << 40
+                | (b[p + 6] & 0xFFL) << 48
+                | (b[p + 7] & 0xFFL) << 56;
+    }
+
+    private static InvalidProtocolBufferException truncatedMessage() {
+        return new InvalidProtocolBufferException("Frame ended in the middle of a field");
+    }
+
+    private static InvalidProtocolBufferException invalidTag() {
+        return new InvalidProtocolBufferException("Frame contains an invalid tag (zero)");
+    }
+
+    private static InvalidProtocolBufferException malformedVarint() {
+        return new InvalidProtocolBufferException("Frame contains a malformed varint");
+    }
+
+    private static InvalidProtocolBufferException invalidWireType() {
+        return new InvalidProtocolBufferException("Frame contains an invalid wire type");
+    }
+}
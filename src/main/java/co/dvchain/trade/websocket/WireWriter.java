@@ -0,0 +1,166 @@
+package co.dvchain.trade.websocket;
+
+import java.util.Arrays;
+
+/**
+ * Minimal protobuf wire-format writer into a growable byte array, the
+ * counterpart of {@link WireReader}. Meant to be reset and reused, so encoding
+ * does not allocate once the buffer has grown to the largest message.
+ */
+final class WireWriter {
+    private byte[] buffer;
+    private int position;
+
+    WireWriter() {
+        this(256);
+    }
+
+    WireWriter(int capacity) {
+        buffer = new byte[capacity];
+    }
+
+    void reset() {
+        position = 0;
+    }
+
+    byte[] buffer() {
+        return buffer;
+    }
+
+    int position() {
+        return position;
+    }
+
+    void writeTag(int field, int wireType) {
+        writeVarint32(field << 3 | wireType);
+    }
+
+    void writeVarint32(int value) {
+        ensureCapacity(5);
+        while ((value & ~0x7F) != 0) {
+            buffer[position++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        buffer[position++] = (byte) value;
+    }
+
+    void writeVarint64(long value) {
+        ensureCapacity(10);
+        while ((value & ~0x7FL) != 0) {
+            buffer[position++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        buffer[position++] = (byte) value;
+    }
+
+    void writeFixed64(long value) {
+        ensureCapacity(8);
+        byte[] buffer = this.buffer;
+        int position = this.position;
+        for (int i = 0; i < 8; i++) {
+            buffer[position + i] = (byte) value;
+            value >>>= 8;
+        }
+        this.position = position + 8;
+    }
+
+    void writeDouble(double value) {
+        writeFixed64(Double.doubleToRawLongBits(value));
+    }
+
+    void writeBytes(byte[] bytes) {
+        ensureCapacity(bytes.length);
+        System.arraycopy(bytes, 0, buffer, position, bytes.length);
+        position += bytes.length;
+    }
+
+    /** Writes a length-delimited string field, UTF-8 encoded without an intermediate byte[]. */
+    void writeString(int field, CharSequence value) {
+        int length = utf8Length(value);
+        writeTag(field, WireReader.WIRETYPE_LENGTH_DELIMITED);
+        writeVarint32(length);
+        ensureCapacity(length);
+        byte[] buffer = this.buffer;
+        int position = this.position;
+        int chars = value.length();
+        if (length == chars) {
+            for (int i = 0; i < chars; i++) {
+                buffer[position + i] = (byte) value.charAt(i);
+            }
+            this.position = position + chars;
+            return;
+        }
+        for (int i = 0; i < chars; i++) {
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                buffer[position++] = (byte) c;
+            } else if (c < 0x800) {
+                buffer[position++] = (byte) (0xC0 | c >>> 6);
+                buffer[position++] = (byte) (0x80 | c & 0x3F);
+            } else if (Character.isHighSurrogate(c) && i + 1 < chars
+                    && Character.isLowSurrogate(value.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, value.charAt(++i));
+                buffer[position++] = (byte) (0xF0 | codePoint >>> 18);
+                buffer[position++] = (byte) (0x80 | codePoint >>> 12 & 0x3F);
+                buffer[position++] = (byte) (0x80 | codePoint >>> 6 & 0x3F);
+                buffer[position++] = (byte) (0x80 | codePoint & 0x3F);
+            } else if (Character.isSurrogate(c)) {
+                buffer[position++] = '?';
+            } else {
+                buffer[position++] = (byte) (0xE0 | c >>> 12);
+                buffer[position++] = (byte) (0x80 | c >>> 6 & 0x3F);
+                buffer[position++] = (byte) (0x80 | c & 0x3F);
+            }
+        }
+        this.position = position;
+    }
+
+    static int varint32Size(int value) {
+        if ((value & ~0x7F) == 0) {
+            return 1;
+        }
+        if ((value & ~0x3FFF) == 0) {
+            return 2;
+        }
+        if ((value & ~0x1FFFFF) == 0) {
+            return 3;
+        }
+        if ((value & ~0xFFFFFFF) == 0) {
+            return 4;
+        }
+        return 5;
+    }
+
+    /** Size of a length-delimited string field with a single-byte tag. */
+    static int stringFieldSize(CharSequence value) {
+        int length = utf8Length(value);
+        return 1 + varint32Size(length) + length;
+    }
+
+    static int utf8Length(CharSequence value) {
+        int length = 0;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                length++;
+            } else if (c < 0x800) {
+                length += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < value.length()
+                    && Character.isLowSurrogate(value.charAt(i + 1))) {
+                length += 4;
+                i++;
+            } else if (Character.isSurrogate(c)) {
+                length++;
+            } else {
+                length += 3;
+            }
+        }
+        return length;
+    }
+
+    private void ensureCapacity(int bytes) {
+        if (position + bytes > buffer.length) {
+            buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, position + bytes));
+        }
+    }
+}
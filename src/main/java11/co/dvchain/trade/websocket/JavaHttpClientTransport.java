@@ -0,0 +1,147 @@
+package co.dvchain.trade.websocket;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.WebSocket;
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+
+/**
+ * {@link WebsocketTransport} on the JDK's {@code java.net.http.WebSocket}. The
+ * JDK hands frames over in buffers it reuses once the listener returns, and may
+ * split a message into parts; parts are gathered into one growing buffer per
+ * session. Only one send may be outstanding, so sends are copied and chained;
+ * a failed send does not hold up the ones behind it.
+ */
+public final class JavaHttpClientTransport implements WebsocketTransport {
+    private final HttpClient client;
+
+    public JavaHttpClientTransport() {
+        this(HttpClient.newBuilder()
+                .connectTimeout(Duration.ofSeconds(10))
+                .build());
+    }
+
+    public JavaHttpClientTransport(HttpClient client) {
+        this.client = client;
+    }
+
+    public HttpClient getClient() {
+        return client;
+    }
+
+    @Override
+    public boolean reusesFrameBuffers() {
+        return true;
+    }
+
+    @Override
+    public Session connect(String url, Map<String, String> headers, Listener listener) {
+        WebSocket.Builder builder = client.newWebSocketBuilder();
+        for (Map.Entry<String, String> header : headers.entrySet()) {
+            builder.header(header.getKey(), header.getValue());
+        }
+        JdkSession session = new JdkSession(listener);
+        builder.buildAsync(URI.create(url), session).whenComplete((webSocket, failure) -> {
+            if (failure != null) {
+                listener.onFailure(session, failure);
+            }
+        });
+        return session;
+    }
+
+    private static final class JdkSession implements Session, WebSocket.Listener {
+        private final Listener listener;
+        private volatile WebSocket webSocket;
+        private volatile boolean closed;
+        private CompletableFuture<WebSocket> lastSend = CompletableFuture.completedFuture(null);
+        private ByteBuffer partial = ByteBuffer.allocate(4096);
+
+        JdkSession(Listener listener) {
+            this.listener = listener;
+        }
+
+        @Override
+        public boolean send(ByteBuffer frame) {
+            WebSocket socket = webSocket;
+            if (socket == null || closed || socket.isOutputClosed()) {
+                return false;
+            }
+            ByteBuffer copy = ByteBuffer.allocate(frame.remaining());
+            copy.put(frame.duplicate()).flip();
+            synchronized (this) {
+                lastSend = lastSend.exceptionally(failed -> socket).thenCompose(previous -> socket.sendBinary(copy, true));
+            }
+            return true;
+        }
+
+        @Override
+        public void close(int code, String reason) {
+            WebSocket socket = webSocket;
+            if (socket != null && !socket.isOutputClosed()) {
+                synchronized (this) {
+                    lastSend = lastSend.exceptionally(failed -> socket).thenCompose(previous -> socket.sendClose(code, reason != null ? reason : ""));
+                }
+            }
+        }
+
+        @Override
+        public void cancel() {
+            WebSocket socket = webSocket;
+            if (socket != null) {
+                socket.abort();
+            }
+        }
+
+        @Override
+        public void onOpen(WebSocket webSocket) {
+            this.webSocket = webSocket;
+            listener.onOpen(this);
+            webSocket.request(1);
+        }
+
+        @Override
+        public CompletionStage<?> onBinary(WebSocket webSocket, ByteBuffer data, boolean last) {
+            if (last && partial.position() == 0) {
+                listener.onMessage(this, data);
+            } else {
+                if (partial.remaining() < data.remaining()) {
+                    ByteBuffer grown = ByteBuffer.allocate(Math.max(partial.capacity() * 2, partial.position() + data.remaining()));
+                    partial.flip();
+                    partial = grown.put(partial);
+                }
+                partial.put(data);
+                if (last) {
+                    partial.flip();
+                    listener.onMessage(this, partial);
+                    partial.clear();
+                }
+            }
+            webSocket.request(1);
+            return null;
+        }
+
+        @Override
+        public CompletionStage<?> onText(WebSocket webSocket, CharSequence data, boolean last) {
+            webSocket.request(1);
+            return null;
+        }
+
+        @Override
+        public CompletionStage<?> onClose(WebSocket webSocket, int statusCode, String reason) {
+            listener.onClosing(this, statusCode, reason);
+            closed = true;
+            listener.onClosed(this, statusCode, reason);
+            return null;
+        }
+
+        @Override
+        public void onError(WebSocket webSocket, Throwable error) {
+            closed = true;
+            listener.onFailure(this, error);
+        }
+    }
+}
@@ -0,0 +1,140 @@
+package co.dvchain.trade.websocket;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import co.dvchain.trade.clientmessages.Clientmessages.ClientMessage;
+import co.dvchain.trade.clientmessages.Clientmessages.LevelData;
+import co.dvchain.trade.clientmessages.Clientmessages.OrderCancelled;
+import co.dvchain.trade.clientmessages.Clientmessages.OrderFilled;
+import co.dvchain.trade.clientmessages.Clientmessages.OrderFilledData;
+import co.dvchain.trade.clientmessages.Clientmessages.OrderOpened;
+import co.dvchain.trade.clientmessages.Clientmessages.PricesData;
+
+public class ConflatingListenerTest {
+    @Test
+    public void testSlowConsumerSeesLatestValueAndNeverAStaleOne() throws InterruptedException {
+        SlowListener slow = new SlowListener();
+        ConflatingListener conflating = new ConflatingListener(slow);
+        try {
+            int updates = 1000;
+            for (int i = 1; i <= updates; i++) {
+                conflating.onLevelUpdate(LevelData.newBuilder().setMarket("BTC/USD").setLastUpdate(i).build());
+                conflating.onLevelUpdate(LevelData.newBuilder().setMarket("ETH/USD").setLastUpdate(i).build());
+            }
+            slow.release.countDown();
+            assertTrue(slow.awaitLast("BTC/USD", updates) && slow.awaitLast("ETH/USD", updates));
+
+            for (String market : new String[] { "BTC/USD", "ETH/USD" }) {
+                List<Long> seen = slow.timestamps(market);
+                for (int i = 1; i < seen.size(); i++) {
+                    assertTrue(market + " went back from " + seen.get(i - 1) + " to " + seen.get(i),
+                            seen.get(i) > seen.get(i - 1));
+                }
+                assertEquals(updates, (long) seen.get(seen.size() - 1));
+                assertTrue(seen.size() < updates);
+                assertEquals(updates, seen.size() + conflating.getDroppedLevelUpdates(market));
+            }
+        } finally {
+            conflating.stop();
+        }
+    }
+
+    @Test
+    public void testNeverConflatesOrderNotifications() throws InterruptedException {
+        SlowListener slow = new SlowListener();
+        ConflatingListener conflating = new ConflatingListener(slow);
+        try {
+            // Keeps the drainer busy, so nothing but the pass-through can deliver the fills.
+            conflating.onLevelUpdate(LevelData.newBuilder().setMarket("BTC/USD").setLastUpdate(1).build());
+            for (int i = 0; i < 100; i++) {
+                conflating.onOrderFill(OrderFilled.newBuilder()
+                        .setData(OrderFilledData.newBuilder().setId("order-" + i))
+                        .build());
+            }
+            assertEquals(100, slow.fills.get());
+        } finally {
+            slow.release.countDown();
+            conflating.stop();
+        }
+    }
+
+    /** Blocks on the first level update until released, then records every update. */
+    private static final class SlowListener implements WebsocketListener {
+        final CountDownLatch release = new CountDownLatch(1);
+        final AtomicInteger fills = new AtomicInteger();
+        private final List<LevelData> levels = Collections.synchronizedList(new ArrayList<LevelData>());
+
+        @Override
+        public void onLevelUpdate(LevelData levelData) {
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            synchronized (levels) {
+                levels.add(levelData);
+                levels.notifyAll();
+            }
+        }
+
+        List<Long> timestamps(String market) {
+            List<Long> timestamps = new ArrayList<>();
+            synchronized (levels) {
+                for (LevelData levelData : levels) {
+                    if (levelData.getMarket().equals(market)) {
+                        timestamps.add(levelData.getLastUpdate());
+                    }
+                }
+            }
+            return timestamps;
+        }
+
+        boolean awaitLast(String market, long lastUpdate) throws InterruptedException {
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+            synchronized (levels) {
+                while (true) {
+                    List<Long> seen = timestamps(market);
+                    if (!seen.isEmpty() && seen.get(seen.size() - 1) == lastUpdate) {
+                        return true;
+                    }
+                    long remaining = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+                    if (remaining <= 0) {
+                        return false;
+                    }
+                    levels.wait(remaining);
+                }
+            }
+        }
+
+        @Override
+        public void onOrderFill(OrderFilled orderFilled) {
+            fills.incrementAndGet();
+        }
+
+        @Override
+        public void onClientMessage(ClientMessage message) {
+        }
+
+        @Override
+        public void onPriceUpdate(PricesData pricesData) {
+        }
+
+        @Override
+        public void onOrderCancel(OrderCancelled orderCancelled) {
+        }
+
+        @Override
+        public void onOrderOpened(OrderOpened orderOpened) {
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package co.dvchain.trade.websocket;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import co.dvchain.trade.clientmessages.Clientmessages.Level;
+import co.dvchain.trade.clientmessages.Clientmessages.LevelData;
+import co.dvchain.trade.clientmessages.Clientmessages.OrderSide;
+
+public class DepthBookTest {
+    private static LevelData book() {
+        return LevelData.newBuilder()
+                .setMarket("BTC/USD")
+                .setLastUpdate(1)
+                .addLevels(Level.newBuilder().setSellPrice(99).setBuyPrice(101).setMaxQuantity(1))
+                .addLevels(Level.newBuilder().setSellPrice(98).setBuyPrice(102).setMaxQuantity(2))
+                // Bids are quoted two levels deep only.
+                .addLevels(Level.newBuilder().setSellPrice(0).setBuyPrice(104).setMaxQuantity(3))
+                .build();
+    }
+
+    @Test
+    public void testPricesEachOrderAtTheFirstTierLargeEnough() {
+        DepthBook depth = DepthBook.of(book());
+        assertEquals(3, depth.depth(OrderSide.Buy), 0);
+        assertEquals(2, depth.depth(OrderSide.Sell), 0);
+
+        assertEquals(101, depth.priceForQuantity(OrderSide.Buy, 1), 0);
+        assertEquals(102, depth.priceForQuantity(OrderSide.Buy, 1.5), 0);
+        assertEquals(104, depth.priceForQuantity(OrderSide.Buy, 3), 0);
+        // Tiers are not added up: no level is quoted for more than 3.
+        assertTrue(Double.isNaN(depth.priceForQuantity(OrderSide.Buy, 3.5)));
+        assertEquals(98, depth.priceForQuantity(OrderSide.Sell, 2), 0);
+        assertTrue(Double.isNaN(depth.priceForQuantity(OrderSide.Sell, 3)));
+
+        assertEquals(100, depth.mid(), 0);
+        // Larger orders cross a wider spread, until one side runs out of tiers.
+        assertEquals(2, depth.spread(1), 0);
+        assertEquals(4, depth.spread(1.5), 0);
+        assertTrue(Double.isNaN(depth.spread(2.5)));
+    }
+
+    @Test
+    public void testTierQuotedOutOfSizeOrderCoversSmallerOrders() {
+        DepthBook depth = DepthBook.of(LevelData.newBuilder()
+                .setMarket("BTC/USD")
+                .addLevels(Level.newBuilder().setSellPrice(99).setBuyPrice(101).setMaxQuantity(5))
+                .addLevels(Level.newBuilder().setSellPrice(98).setBuyPrice(102).setMaxQuantity(2))
+                .build());
+        assertEquals(101, depth.priceForQuantity(OrderSide.Buy, 2), 0);
+        assertEquals(101, depth.priceForQuantity(OrderSide.Buy, 5), 0);
+        assertEquals(5, depth.depth(OrderSide.Buy), 0);
+    }
+
+    @Test
+    public void testQuoteManagerBuildsDepthOncePerQuote() {
+        QuoteManager quotes = new QuoteManager();
+        assertTrue(Double.isNaN(quotes.mid("BTC/USD")));
+        MarketHandle btc = quotes.handle("BTC/USD");
+        quotes.updateQuote(book());
+        assertEquals(102, quotes.priceForQuantity("BTC/USD", OrderSide.Buy, 2), 0);
+        assertEquals(4, quotes.spread("BTC/USD", 2), 0);
+        assertEquals(100, btc.depth().mid(), 0);
+        assertSame(btc.depth(), quotes.getDepth("BTC/USD"));
+
+        LevelData next = book().toBuilder().setLastUpdate(2).build();
+        quotes.updateQuote(next);
+        assertTrue(btc.depth().isOf(next));
+        assertEquals(2, btc.depth().getLastUpdate());
+    }
+}
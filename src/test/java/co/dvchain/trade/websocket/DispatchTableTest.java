@@ -0,0 +1,42 @@
+package co.dvchain.trade.websocket;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+public class DispatchTableTest {
+    @Test
+    public void testTableBuiltInOnePassFindsEveryKey() {
+        Map<String, Integer> ids = new LinkedHashMap<>();
+        for (int i = 0; i < 1000; i++) {
+            ids.put("MKT" + i + "/USD", i + 1);
+        }
+        ids.put("€/USD", 1001);
+        DispatchTable table = DispatchTable.of(ids);
+
+        for (Map.Entry<String, Integer> entry : ids.entrySet()) {
+            assertEquals((int) entry.getValue(), table.lookup(entry.getKey()));
+            byte[] bytes = ("x" + entry.getKey()).getBytes(StandardCharsets.UTF_8);
+            assertEquals((int) entry.getValue(), table.lookup(bytes, 1, bytes.length - 1));
+            assertSame(entry.getKey(), table.key(bytes, 1, bytes.length - 1));
+        }
+        assertEquals(DispatchTable.UNKNOWN, table.lookup("MKT1000/USD"));
+        assertEquals(DispatchTable.UNKNOWN, table.lookup(""));
+        byte[] unknown = "BTC/USD".getBytes(StandardCharsets.UTF_8);
+        assertNull(table.key(unknown, 0, unknown.length));
+        assertEquals(DispatchTable.UNKNOWN, DispatchTable.of(new LinkedHashMap<>()).lookup("BTC/USD"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testRejectsTheUnknownId() {
+        Map<String, Integer> ids = new LinkedHashMap<>();
+        ids.put("BTC/USD", DispatchTable.UNKNOWN);
+        DispatchTable.of(ids);
+    }
+}
@@ -0,0 +1,92 @@
+package co.dvchain.trade.websocket;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+import co.dvchain.trade.clientmessages.Clientmessages.ClientMessage;
+import co.dvchain.trade.clientmessages.Clientmessages.LevelData;
+import co.dvchain.trade.clientmessages.Clientmessages.Types;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.WebSocket;
+import okhttp3.WebSocketListener;
+import okio.ByteString;
+
+public class FeedMonitorTest {
+    private WebSocket mockSocket;
+
+    private WebsocketClient openClient() {
+        OkHttpClient mockClient = mock(OkHttpClient.class);
+        mockSocket = mock(WebSocket.class);
+        when(mockSocket.send(any(ByteString.class))).thenReturn(true);
+        ArgumentCaptor<WebSocketListener> socketListener = ArgumentCaptor.forClass(WebSocketListener.class);
+        when(mockClient.newWebSocket(any(Request.class), socketListener.capture())).thenReturn(mockSocket);
+        WebsocketClient client = new WebsocketClient("ws://sandbox.trade.dvchain.co/ws", "183c5515-a3de-44a1-bdeb-cf70aab4c2c6", "126d644fc423bf8dbf1d56027bb7edf3");
+        client.setClient(mockClient);
+        client.subscribeLevel("BTC/USD");
+        client.subscribeLevel("ETH/USD");
+        client.connect();
+        socketListener.getValue().onOpen(mockSocket, null);
+        return client;
+    }
+
+    private static ClientMessage levels(String market, long lastUpdate) {
+        return ClientMessage.newBuilder()
+                .setType(Types.subscribe)
+                .setEvent("levels")
+                .setTopic(market)
+                .setLevelData(LevelData.newBuilder().setMarket(market).setLastUpdate(lastUpdate))
+                .build();
+    }
+
+    @Test
+    public void testResubscribesMarketWhoseTimestampsGoBackwards() throws Exception {
+        WebsocketClient client = openClient();
+        FeedMonitor monitor = client.enableFeedMonitor(1, TimeUnit.HOURS);
+        monitor.check();
+        client.dispatch(levels("BTC/USD", 5));
+        client.dispatch(levels("BTC/USD", 3));
+        client.dispatch(levels("ETH/USD", 5));
+        monitor.check();
+
+        assertEquals(1, monitor.getTimestampRegressions());
+        assertEquals(1, monitor.getResyncCount());
+        ArgumentCaptor<ByteString> sent = ArgumentCaptor.forClass(ByteString.class);
+        verify(mockSocket, times(6)).send(sent.capture());
+        List<ByteString> frames = sent.getAllValues();
+        ClientMessage unsubscribe = ClientMessage.parseFrom(frames.get(4).toByteArray());
+        ClientMessage subscribe = ClientMessage.parseFrom(frames.get(5).toByteArray());
+        assertEquals(Types.unsubscribe, unsubscribe.getType());
+        assertEquals("BTC/USD", unsubscribe.getTopic());
+        assertEquals(Types.subscribe, subscribe.getType());
+        assertEquals("BTC/USD", subscribe.getTopic());
+        monitor.stop();
+    }
+
+    @Test
+    public void testResubscribesQuietMarket() {
+        WebsocketClient client = openClient();
+        FeedMonitor monitor = client.enableFeedMonitor(40, TimeUnit.MILLISECONDS);
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(2);
+        while (monitor.getResyncCount() < 2 && System.nanoTime() < deadline) {
+            client.dispatch(levels("ETH/USD", System.currentTimeMillis()));
+            Thread.yield();
+        }
+        monitor.stop();
+        assertTrue(monitor.getResyncCount() >= 2);
+        assertEquals(1, monitor.getStaleLevelMarkets().size());
+        assertEquals("BTC/USD", monitor.getStaleLevelMarkets().get(0));
+    }
+}
@@ -0,0 +1,80 @@
+package co.dvchain.trade.websocket;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import co.dvchain.trade.clientmessages.Clientmessages.ClientMessage;
+import co.dvchain.trade.clientmessages.Clientmessages.Level;
+import co.dvchain.trade.clientmessages.Clientmessages.LevelData;
+import co.dvchain.trade.clientmessages.Clientmessages.Types;
+
+/**
+ * Compares the old copy-then-parse path against {@link FrameDecoder}, for heap
+ * frames and for direct frames decoded header first. Run with {@code -prof gc}
+ * to see the allocation difference.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FrameDecoderBenchmark {
+    private ByteBuffer frame;
+    private ByteBuffer directFrame;
+    private FrameDecoder decoder;
+
+    @Setup
+    public void setup() {
+        LevelData.Builder levelData = LevelData.newBuilder()
+                .setLastUpdate(System.currentTimeMillis())
+                .setQuoteId("2f6c1d0e-8a4b-4c5d-9e7f-0a1b2c3d4e5f")
+                .setMarket("BTC/USD");
+        for (int i = 0; i < 10; i++) {
+            levelData.addLevels(Level.newBuilder()
+                    .setSellPrice(64000 - i * 5)
+                    .setBuyPrice(64010 + i * 5)
+                    .setMaxQuantity(0.5 * (i + 1)));
+        }
+        ClientMessage message = ClientMessage.newBuilder()
+                .setType(Types.subscribe)
+                .setEvent("levels")
+                .setTopic("BTC/USD")
+                .setLevelData(levelData)
+                .build();
+        byte[] bytes = message.toByteArray();
+        frame = ByteBuffer.wrap(bytes);
+        directFrame = ByteBuffer.allocateDirect(bytes.length);
+        directFrame.put(bytes).flip();
+        decoder = new FrameDecoder();
+    }
+
+    @Benchmark
+    public ClientMessage copyAndParse() throws IOException {
+        byte[] copy = new byte[frame.remaining()];
+        frame.duplicate().get(copy);
+        return ClientMessage.parseFrom(copy);
+    }
+
+    @Benchmark
+    public ClientMessage frameDecoder() throws IOException {
+        return decoder.decode(frame, null);
+    }
+
+    @Benchmark
+    public ClientMessage frameDecoderDirectHeaderFirst() throws IOException {
+        return decoder.decode(directFrame, header -> true);
+    }
+}
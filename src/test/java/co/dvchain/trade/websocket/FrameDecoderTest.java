@@ -0,0 +1,65 @@
+package co.dvchain.trade.websocket;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.nio.ByteBuffer;
+
+import org.junit.Test;
+
+import co.dvchain.trade.clientmessages.Clientmessages.ClientMessage;
+import co.dvchain.trade.clientmessages.Clientmessages.Level;
+import co.dvchain.trade.clientmessages.Clientmessages.LevelData;
+import co.dvchain.trade.clientmessages.Clientmessages.Types;
+import okio.Buffer;
+
+public class FrameDecoderTest {
+    private static ClientMessage levels(String market, int levelCount) {
+        LevelData.Builder levelData = LevelData.newBuilder().setMarket(market).setLastUpdate(1700000000123L);
+        for (int i = 0; i < levelCount; i++) {
+            levelData.addLevels(Level.newBuilder().setSellPrice(64000 - i).setBuyPrice(64010 + i).setMaxQuantity(i + 1));
+        }
+        return ClientMessage.newBuilder()
+                .setType(Types.subscribe)
+                .setEvent("levels")
+                .setTopic(market)
+                .setLevelData(levelData)
+                .build();
+    }
+
+    @Test
+    public void testDecodesFramesThatHaveNoAccessibleArray() throws Exception {
+        ClientMessage message = levels("BTC/USD", 3);
+        byte[] bytes = message.toByteArray();
+        // Larger than the scratch array, so header-first decoding has to grow it.
+        ClientMessage large = levels("ETH/USD", 200);
+        byte[] largeBytes = large.toByteArray();
+        FrameDecoder decoder = new FrameDecoder();
+
+        ByteBuffer direct = ByteBuffer.allocateDirect(bytes.length);
+        direct.put(bytes).flip();
+        assertEquals(message, decoder.decode(direct, null));
+        assertEquals(message, decoder.decode(direct, header -> true));
+        assertEquals(0, direct.position());
+        assertNull(decoder.decode(direct, header -> false));
+
+        ByteBuffer readOnly = ByteBuffer.wrap(largeBytes).asReadOnlyBuffer();
+        assertEquals(large, decoder.decode(readOnly, null));
+        assertEquals(large, decoder.decode(readOnly, header -> true));
+        assertEquals(0, readOnly.position());
+    }
+
+    @Test
+    public void testDecodesSegmentedFrames() throws Exception {
+        // Spans several okio segments, so the frame is not backed by a single array.
+        ClientMessage message = levels("BTC/USD", 1000);
+        byte[] bytes = message.toByteArray();
+        Buffer buffer = new Buffer();
+        buffer.write(bytes);
+        ByteBuffer frame = new OkHttpTransport.BackingArray().wrap(buffer.snapshot());
+
+        FrameDecoder decoder = new FrameDecoder();
+        assertEquals(bytes.length, frame.remaining());
+        assertEquals(message, decoder.decode(frame, header -> true));
+    }
+}
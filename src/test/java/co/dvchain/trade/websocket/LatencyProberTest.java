@@ -0,0 +1,97 @@
+package co.dvchain.trade.websocket;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+import co.dvchain.trade.clientmessages.Clientmessages.ClientMessage;
+import co.dvchain.trade.clientmessages.Clientmessages.Types;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.WebSocket;
+import okhttp3.WebSocketListener;
+import okio.ByteString;
+
+public class LatencyProberTest {
+    @Test
+    public void testHistogramBucketsBoundTheirValues() {
+        for (long micros = 0; micros < 1_000_000; micros = micros * 3 / 2 + 1) {
+            long upper = LatencyHistogram.upperBound(LatencyHistogram.bucketOf(micros));
+            assertTrue(upper >= micros);
+            assertTrue(upper <= micros + micros / 8 + 1);
+        }
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 1; i <= 100; i++) {
+            histogram.record(i, TimeUnit.MILLISECONDS);
+        }
+        assertEquals(100, histogram.count());
+        long median = histogram.percentileMicros(50);
+        assertTrue(median >= 50_000 && median < 57_000);
+    }
+
+    @Test
+    public void testRecordsPongsAndDropsSilentLink() throws Exception {
+        OkHttpClient mockClient = mock(OkHttpClient.class);
+        WebSocket mockSocket = mock(WebSocket.class);
+        when(mockSocket.send(any(ByteString.class))).thenReturn(true);
+        ArgumentCaptor<WebSocketListener> socketListener = ArgumentCaptor.forClass(WebSocketListener.class);
+        when(mockClient.newWebSocket(any(Request.class), socketListener.capture())).thenReturn(mockSocket);
+        WebsocketClient client = new WebsocketClient("ws://sandbox.trade.dvchain.co/ws", "183c5515-a3de-44a1-bdeb-cf70aab4c2c6", "126d644fc423bf8dbf1d56027bb7edf3");
+        client.setClient(mockClient);
+        client.setReconnectBackoff(1, TimeUnit.HOURS.toMillis(1), TimeUnit.MILLISECONDS);
+        client.connect();
+        socketListener.getValue().onOpen(mockSocket, null);
+        LatencyProber prober = client.enableLatencyProbe(20, TimeUnit.MILLISECONDS, 3);
+
+        ArgumentCaptor<ByteString> sent = ArgumentCaptor.forClass(ByteString.class);
+        verify(mockSocket, timeout(2000).atLeast(3)).send(sent.capture());
+        ClientMessage ping = ClientMessage.parseFrom(sent.getValue().toByteArray());
+        assertEquals(Types.pingpong, ping.getType());
+        client.dispatch(ping);
+        assertEquals(1, prober.getHistogram().count());
+
+        verify(mockSocket, timeout(2000).atLeastOnce()).cancel();
+        assertTrue(prober.getDeadLinkCount() >= 1);
+        verify(mockClient, timeout(2000).times(2)).newWebSocket(any(Request.class), any(WebSocketListener.class));
+        prober.stop();
+        client.disconnect();
+    }
+
+    @Test
+    public void testDisconnectStopsProbing() {
+        OkHttpClient mockClient = mock(OkHttpClient.class);
+        WebSocket mockSocket = mock(WebSocket.class);
+        when(mockSocket.send(any(ByteString.class))).thenReturn(true);
+        ArgumentCaptor<WebSocketListener> socketListener = ArgumentCaptor.forClass(WebSocketListener.class);
+        when(mockClient.newWebSocket(any(Request.class), socketListener.capture())).thenReturn(mockSocket);
+        WebsocketClient client = new WebsocketClient("ws://sandbox.trade.dvchain.co/ws", "183c5515-a3de-44a1-bdeb-cf70aab4c2c6", "126d644fc423bf8dbf1d56027bb7edf3");
+        client.setClient(mockClient);
+        client.connect();
+        socketListener.getValue().onOpen(mockSocket, null);
+        LatencyProber prober = client.enableLatencyProbe(10, TimeUnit.MILLISECONDS, 1000);
+        verify(mockSocket, timeout(2000).atLeastOnce()).send(any(ByteString.class));
+
+        client.disconnect();
+        assertTrue(prober.isStopped());
+    }
+
+    @Test
+    public void testNormalisesTimestampsToMillis() {
+        assertEquals(1_700_000_000_000L, LatencyProber.toMillis(1_700_000_000L));
+        assertEquals(1_700_000_000_000L, LatencyProber.toMillis(1_700_000_000_000L));
+        assertEquals(1_700_000_000_000L, LatencyProber.toMillis(1_700_000_000_000_000L));
+        assertEquals(1_700_000_000_000L, LatencyProber.toMillis(1_700_000_000_000_000_000L));
+        assertEquals(42, LatencyProber.parseSequence("ping-42"));
+        assertEquals(-1, LatencyProber.parseSequence("pong-42"));
+    }
+}
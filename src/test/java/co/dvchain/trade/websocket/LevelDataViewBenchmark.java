@@ -0,0 +1,78 @@
+package co.dvchain.trade.websocket;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import co.dvchain.trade.clientmessages.Clientmessages.ClientMessage;
+import co.dvchain.trade.clientmessages.Clientmessages.Level;
+import co.dvchain.trade.clientmessages.Clientmessages.LevelData;
+import co.dvchain.trade.clientmessages.Clientmessages.Types;
+
+/**
+ * Reads every level of a book through protobuf objects and through
+ * {@link LevelDataView}. Run with {@code -prof gc}, the view should report
+ * 0 B/op.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LevelDataViewBenchmark {
+    private byte[] frame;
+    private LevelDataView view;
+
+    @Setup
+    public void setup() {
+        LevelData.Builder levelData = LevelData.newBuilder()
+                .setLastUpdate(System.currentTimeMillis())
+                .setQuoteId("2f6c1d0e-8a4b-4c5d-9e7f-0a1b2c3d4e5f")
+                .setMarket("BTC/USD");
+        for (int i = 0; i < 10; i++) {
+            levelData.addLevels(Level.newBuilder()
+                    .setSellPrice(64000 - i * 5)
+                    .setBuyPrice(64010 + i * 5)
+                    .setMaxQuantity(0.5 * (i + 1)));
+        }
+        frame = ClientMessage.newBuilder()
+                .setType(Types.subscribe)
+                .setEvent("levels")
+                .setTopic("BTC/USD")
+                .setLevelData(levelData)
+                .build()
+                .toByteArray();
+        view = new LevelDataView();
+    }
+
+    @Benchmark
+    public double levelData() throws IOException {
+        LevelData levelData = ClientMessage.parseFrom(frame).getLevelData();
+        double sum = levelData.getLastUpdate();
+        for (Level level : levelData.getLevelsList()) {
+            sum += level.getSellPrice() + level.getBuyPrice() + level.getMaxQuantity();
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public double levelDataView() throws IOException {
+        view.wrapFrame(frame, 0, frame.length);
+        double sum = view.lastUpdate();
+        for (int i = 0; i < view.levelCount(); i++) {
+            sum += view.sellPrice(i) + view.buyPrice(i) + view.maxQuantity(i);
+        }
+        return sum;
+    }
+}
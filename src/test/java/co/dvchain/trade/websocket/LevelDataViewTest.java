@@ -0,0 +1,63 @@
+package co.dvchain.trade.websocket;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import co.dvchain.trade.clientmessages.Clientmessages.ClientMessage;
+import co.dvchain.trade.clientmessages.Clientmessages.Level;
+import co.dvchain.trade.clientmessages.Clientmessages.LevelData;
+import co.dvchain.trade.clientmessages.Clientmessages.PricesData;
+import co.dvchain.trade.clientmessages.Clientmessages.Types;
+
+public class LevelDataViewTest {
+    @Test
+    public void testReadsLevelDataFromFrame() throws Exception {
+        LevelData levelData = LevelData.newBuilder()
+                .setLastUpdate(1700000000123L)
+                .setQuoteId("quote-1")
+                .setMarket("BTC/USD")
+                .addLevels(Level.newBuilder().setSellPrice(64000.5).setBuyPrice(64010.25).setMaxQuantity(0.5))
+                .addLevels(Level.newBuilder().setBuyPrice(64020).setMaxQuantity(2))
+                .build();
+        byte[] frame = ClientMessage.newBuilder()
+                .setType(Types.subscribe)
+                .setEvent("levels")
+                .setTopic("BTC/USD")
+                .setLevelData(levelData)
+                .build()
+                .toByteArray();
+
+        LevelDataView view = new LevelDataView();
+        assertTrue(view.wrapFrame(frame, 0, frame.length));
+        assertEquals(1700000000123L, view.lastUpdate());
+        assertEquals("quote-1", view.quoteId());
+        assertEquals("BTC/USD", view.market());
+        assertTrue(view.marketEquals("BTC/USD"));
+        assertFalse(view.marketEquals("ETH/USD"));
+        assertEquals(2, view.levelCount());
+        assertEquals(64000.5, view.sellPrice(0), 0);
+        assertEquals(64010.25, view.buyPrice(0), 0);
+        assertEquals(0.5, view.maxQuantity(0), 0);
+        assertEquals(0.0, view.sellPrice(1), 0);
+        assertEquals(64020, view.buyPrice(1), 0);
+        assertEquals(2, view.maxQuantity(1), 0);
+        assertEquals(levelData, view.toLevelData());
+    }
+
+    @Test
+    public void testIgnoresFramesWithoutLevelData() throws Exception {
+        byte[] frame = ClientMessage.newBuilder()
+                .setType(Types.subscribe)
+                .setEvent("prices")
+                .setPricesData(PricesData.newBuilder().setMarket("BTC/USD").setPrice(64000))
+                .build()
+                .toByteArray();
+
+        LevelDataView view = new LevelDataView();
+        assertFalse(view.wrapFrame(frame, 0, frame.length));
+        assertEquals(0, view.levelCount());
+    }
+}
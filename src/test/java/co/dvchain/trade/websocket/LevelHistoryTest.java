@@ -0,0 +1,91 @@
+package co.dvchain.trade.websocket;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import co.dvchain.trade.clientmessages.Clientmessages.Level;
+import co.dvchain.trade.clientmessages.Clientmessages.LevelData;
+
+public class LevelHistoryTest {
+    @Test
+    public void testQueriesByTimeOverTheRetainedUpdates() {
+        LevelHistory history = new LevelHistory("BTC/USD", 8, 2, 0);
+        double[] buy = new double[3];
+        double[] sell = new double[3];
+        double[] quantity = new double[3];
+        for (int i = 0; i < 10; i++) {
+            buy[0] = 1000 + i;
+            sell[0] = 900 + i;
+            quantity[0] = i;
+            history.append(1_600_000_000_000L + i * 10, buy, sell, quantity, 3);
+        }
+        // Out of order updates are not stored.
+        history.append(1_600_000_000_000L, buy, sell, quantity, 3);
+        assertEquals(1, history.getOutOfOrderCount());
+        assertEquals(8, history.size());
+
+        LevelHistory.Book book = history.newBook();
+        assertTrue(history.at(1_600_000_000_055L, book));
+        assertEquals(1_600_000_000_050L, book.timestamp());
+        assertEquals(2, book.depth());
+        assertEquals(1005, book.buyPrice(0), 0);
+        assertEquals(905, book.sellPrice(0), 0);
+        // The two oldest updates were overwritten.
+        assertFalse(history.at(1_600_000_000_015L, book));
+        assertTrue(history.at(1_600_000_000_020L, book));
+
+        List<Long> visited = new ArrayList<>();
+        int count = history.range(1_600_000_000_030L, 1_600_000_000_060L,
+                (marketId, market, lastUpdate, buyPrices, sellPrices, maxQuantities, depth) -> {
+                    assertEquals(-1, marketId);
+                    visited.add(lastUpdate);
+                });
+        assertEquals(4, count);
+        assertEquals(Long.valueOf(1_600_000_000_030L), visited.get(0));
+        assertEquals(Long.valueOf(1_600_000_000_060L), visited.get(3));
+
+        // Open ended ranges reach the oldest and newest retained updates.
+        assertEquals(8, history.range(Long.MIN_VALUE, Long.MAX_VALUE,
+                (marketId, market, lastUpdate, buyPrices, sellPrices, maxQuantities, depth) -> { }));
+    }
+
+    @Test
+    public void testMaxAgeIsInTheUnitsOfTheTimestamps() {
+        // Microsecond timestamps 10 us apart, kept for 25 us.
+        LevelHistory history = new LevelHistory("BTC/USD", 64, 1, 25);
+        double[] levels = new double[1];
+        for (int i = 0; i < 10; i++) {
+            history.append(1_600_000_000_000_000L + i * 10, levels, levels, levels, 1);
+        }
+        assertEquals(3, history.size());
+    }
+
+    @Test
+    public void testMaxAgeDropsOldUpdates() {
+        QuoteManager quotes = new QuoteManager();
+        assertNull(quotes.getHistory("BTC/USD"));
+        quotes.enableHistory(64, 1, 25);
+        for (int i = 0; i < 10; i++) {
+            quotes.updateQuote(LevelData.newBuilder()
+                    .setMarket("BTC/USD")
+                    .setLastUpdate(1_600_000_000_000L + i * 10)
+                    .addLevels(Level.newBuilder().setBuyPrice(100 + i).setSellPrice(99).setMaxQuantity(1))
+                    .build());
+        }
+        LevelHistory history = quotes.getHistory("BTC/USD");
+        assertEquals(quotes.getMarkets().id("BTC/USD"), history.getMarketId());
+        // Newest is 090, so 070 and 080 are within 25 ms of it.
+        assertEquals(3, history.size());
+        LevelHistory.Book book = history.newBook();
+        assertFalse(history.at(1_600_000_000_060L, book));
+        assertTrue(history.at(1_600_000_000_075L, book));
+        assertEquals(107, book.buyPrice(0), 0);
+    }
+}
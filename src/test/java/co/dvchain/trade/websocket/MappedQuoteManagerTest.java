@@ -0,0 +1,215 @@
+package co.dvchain.trade.websocket;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import co.dvchain.trade.clientmessages.Clientmessages.ClientMessage;
+import co.dvchain.trade.clientmessages.Clientmessages.Level;
+import co.dvchain.trade.clientmessages.Clientmessages.LevelData;
+import co.dvchain.trade.clientmessages.Clientmessages.Types;
+
+public class MappedQuoteManagerTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testReaderSeesWritersQuotes() throws Exception {
+        File file = folder.newFile("quotes");
+        try (MappedQuoteManager writer = MappedQuoteManager.create(file.toPath(), 4, 2);
+                MappedQuoteManager reader = MappedQuoteManager.open(file.toPath())) {
+            assertEquals(-1, reader.marketId("BTC/USD"));
+            writer.updateQuote(LevelData.newBuilder()
+                    .setMarket("BTC/USD")
+                    .setLastUpdate(42)
+                    .addLevels(Level.newBuilder().setBuyPrice(101).setSellPrice(99).setMaxQuantity(1))
+                    .addLevels(Level.newBuilder().setBuyPrice(102).setSellPrice(98).setMaxQuantity(2))
+                    .addLevels(Level.newBuilder().setBuyPrice(103).setSellPrice(97).setMaxQuantity(3))
+                    .build());
+            writer.onLevelUpdate(-1, "ETH/USD", 43, new double[] {11}, new double[] {9}, new double[] {5}, 1);
+
+            assertEquals(2, reader.getMarketCount());
+            int btc = reader.marketId("BTC/USD");
+            double[] buy = new double[2];
+            double[] sell = new double[2];
+            double[] quantity = new double[2];
+            // Levels beyond the file's depth are dropped.
+            assertEquals(2, reader.readLevels(btc, buy, sell, quantity));
+            assertEquals(102, buy[1], 0);
+            assertEquals(98, sell[1], 0);
+            assertEquals(2, quantity[1], 0);
+            assertEquals(42, reader.lastUpdate(btc));
+
+            LevelData eth = reader.getQuote("ETH/USD");
+            assertEquals(43, eth.getLastUpdate());
+            assertEquals(1, eth.getLevelsCount());
+            assertEquals(11, eth.getLevels(0).getBuyPrice(), 0);
+            assertNull(reader.getQuote("SOL/USD"));
+        }
+    }
+
+    @Test
+    public void testReadsAreNeverTorn() throws Exception {
+        File file = folder.newFile("quotes");
+        try (MappedQuoteManager writer = MappedQuoteManager.create(file.toPath(), 1, 8);
+                MappedQuoteManager reader = MappedQuoteManager.open(file.toPath())) {
+            double[] levels = new double[8];
+            writer.onLevelUpdate(-1, "BTC/USD", 0, levels, levels, levels, 8);
+            int btc = reader.marketId("BTC/USD");
+
+            AtomicBoolean running = new AtomicBoolean(true);
+            AtomicReference<String> failure = new AtomicReference<>();
+            Thread readerThread = new Thread(() -> {
+                double[] buy = new double[8];
+                double[] sell = new double[8];
+                double[] quantity = new double[8];
+                while (running.get()) {
+                    int depth = reader.readLevels(btc, buy, sell, quantity);
+                    for (int i = 0; i < depth; i++) {
+                        if (buy[i] != buy[0] || sell[i] != buy[0] || quantity[i] != buy[0]) {
+                            failure.compareAndSet(null, "torn read at level " + i + ": " + buy[0] + " vs " + buy[i]);
+                        }
+                    }
+                }
+            });
+            readerThread.start();
+            // Every update writes one value everywhere, a mix of two updates shows as a mismatch.
+            long deadline = System.currentTimeMillis() + 300;
+            for (int round = 1; System.currentTimeMillis() < deadline; round++) {
+                Arrays.fill(levels, round);
+                writer.onLevelUpdate(-1, "BTC/USD", round, levels, levels, levels, 8);
+            }
+            running.set(false);
+            readerThread.join();
+            assertNull(failure.get());
+        }
+    }
+
+    @Test
+    public void testReaderGivesUpOnAStalledWriter() throws Exception {
+        File file = folder.newFile("quotes");
+        try (MappedQuoteManager writer = MappedQuoteManager.create(file.toPath(), 2, 1);
+                MappedQuoteManager reader = MappedQuoteManager.open(file.toPath())) {
+            writer.onLevelUpdate(-1, "BTC/USD", 42, new double[] {101}, new double[] {99}, new double[] {1}, 1);
+            int btc = reader.marketId("BTC/USD");
+            reader.setStallTimeout(50, TimeUnit.MILLISECONDS);
+
+            stallFirstSlot(file);
+            long start = System.nanoTime();
+            try {
+                reader.readLevels(btc, new double[1], new double[1], new double[1]);
+                fail("expected IllegalStateException");
+            } catch (IllegalStateException e) {
+                assertTrue(e.getMessage(), e.getMessage().contains("BTC/USD"));
+            }
+            assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(5));
+        }
+    }
+
+    @Test
+    public void testReadersFollowANewGenerationOfTheFile() throws Exception {
+        Path file = folder.getRoot().toPath().resolve("quotes");
+        MappedQuoteManager first = MappedQuoteManager.create(file, 4, 1);
+        first.onLevelUpdate(-1, "BTC/USD", 1, new double[] {101}, new double[] {99}, new double[] {1}, 1);
+        first.onLevelUpdate(-1, "ETH/USD", 2, new double[] {11}, new double[] {9}, new double[] {1}, 1);
+        try (MappedQuoteManager reader = MappedQuoteManager.open(file)) {
+            int btc = reader.marketId("BTC/USD");
+            int eth = reader.marketId("ETH/USD");
+            assertEquals(1, reader.getGeneration());
+            assertEquals(1, reader.lastUpdate(btc));
+
+            // The feed dies in the middle of an update and is restarted.
+            stallFirstSlot(file.toFile());
+            first.close();
+            try (MappedQuoteManager second = MappedQuoteManager.create(file, 4, 2)) {
+                assertEquals(2, reader.getGeneration());
+                assertEquals(2, reader.getMaxLevels());
+                assertEquals(0, reader.getMarketCount());
+                assertEquals(-1, reader.readLevels(btc, new double[2], new double[2], new double[2]));
+
+                // Slots are assigned afresh, but the reader's ids keep their markets.
+                second.onLevelUpdate(-1, "ETH/USD", 3, new double[] {12}, new double[] {8}, new double[] {2}, 1);
+                second.onLevelUpdate(-1, "BTC/USD", 4, new double[] {102, 103}, new double[] {98, 97}, new double[] {2, 3}, 2);
+                double[] buy = new double[2];
+                assertEquals(2, reader.readLevels(btc, buy, new double[2], new double[2]));
+                assertEquals(103, buy[1], 0);
+                assertEquals(3, reader.lastUpdate(eth));
+                assertEquals(btc, reader.marketId("BTC/USD"));
+            }
+        }
+    }
+
+    @Test
+    public void testOnlyOneWriterAtATime() throws Exception {
+        Path file = folder.getRoot().toPath().resolve("quotes");
+        try (MappedQuoteManager writer = MappedQuoteManager.create(file, 2, 1)) {
+            try {
+                MappedQuoteManager.create(file, 2, 1).close();
+                fail("expected IOException");
+            } catch (IOException e) {
+                assertTrue(e.getMessage(), e.getMessage().contains("being written"));
+            }
+            assertEquals(1, writer.getGeneration());
+        }
+        try (MappedQuoteManager writer = MappedQuoteManager.create(file, 2, 1)) {
+            assertEquals(2, writer.getGeneration());
+        }
+    }
+
+    @Test
+    public void testStandsInForTheClientsQuoteManager() throws Exception {
+        Path file = folder.getRoot().toPath().resolve("quotes");
+        try (MappedQuoteManager writer = MappedQuoteManager.create(file, 4, 1);
+                MappedQuoteManager reader = MappedQuoteManager.open(file)) {
+            WebsocketListenerImpl listener = new WebsocketListenerImpl(writer);
+            listener.onLevelUpdate(LevelData.newBuilder().setMarket("ETH/USD").setLastUpdate(7).build());
+
+            WebsocketClient client = new WebsocketClient("ws://sandbox.trade.dvchain.co/ws", "183c5515-a3de-44a1-bdeb-cf70aab4c2c6", "126d644fc423bf8dbf1d56027bb7edf3");
+            client.setQuoteStore(writer);
+            client.subscribeLevel("BTC/USD");
+            client.dispatch(ClientMessage.newBuilder()
+                    .setType(Types.subscribe)
+                    .setEvent("levels")
+                    .setTopic("BTC/USD")
+                    .setLevelData(LevelData.newBuilder().setMarket("BTC/USD").setLastUpdate(42)
+                            .addLevels(Level.newBuilder().setBuyPrice(101).setSellPrice(99).setMaxQuantity(1)))
+                    .build());
+
+            Map<String, LevelData> quotes = reader.getQuotes(Arrays.asList("BTC/USD", "ETH/USD", "SOL/USD"));
+            assertEquals(Arrays.asList("BTC/USD", "ETH/USD"), new ArrayList<>(quotes.keySet()));
+            assertEquals(42, quotes.get("BTC/USD").getLastUpdate());
+            assertEquals(101, quotes.get("BTC/USD").getLevels(0).getBuyPrice(), 0);
+            assertEquals(7, listener.getLatestQuoteForSymbol("ETH/USD").getLastUpdate());
+            assertNull(client.getQuotes().getQuote("BTC/USD"));
+        }
+    }
+
+    /** Leaves the first slot's sequence odd, as a writer that died mid-update would. */
+    private static void stallFirstSlot(File file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            // The slots follow a 64 byte header and start with their sequence.
+            MappedByteBuffer sequence = channel.map(FileChannel.MapMode.READ_WRITE, 64, 8);
+            sequence.order(ByteOrder.nativeOrder());
+            sequence.putLong(0, sequence.getLong(0) + 1);
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package co.dvchain.trade.websocket;
+
+import java.io.Closeable;
+import java.net.InetSocketAddress;
+
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.SimpleChannelInboundHandler;
+import io.netty.channel.epoll.Epoll;
+import io.netty.channel.epoll.EpollEventLoopGroup;
+import io.netty.channel.epoll.EpollServerSocketChannel;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.ServerSocketChannel;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.handler.codec.http.HttpObjectAggregator;
+import io.netty.handler.codec.http.HttpServerCodec;
+import io.netty.handler.codec.http.websocketx.BinaryWebSocketFrame;
+import io.netty.handler.codec.http.websocketx.WebSocketServerProtocolHandler;
+import io.netty.handler.ssl.SslContext;
+
+/**
+ * Netty websocket server on the loopback interface that echoes binary frames,
+ * so the benchmarked client is the only slow side. Uses epoll when available,
+ * and TLS when given a server context.
+ */
+final class NettyEchoServer implements Closeable {
+    private final EventLoopGroup group;
+    private final Channel channel;
+    private final SslContext ssl;
+
+    NettyEchoServer() throws InterruptedException {
+        this(null);
+    }
+
+    NettyEchoServer(SslContext ssl) throws InterruptedException {
+        this.ssl = ssl;
+        Class<? extends ServerSocketChannel> channelType;
+        if (Epoll.isAvailable()) {
+            group = new EpollEventLoopGroup(1);
+            channelType = EpollServerSocketChannel.class;
+        } else {
+            group = new NioEventLoopGroup(1);
+            channelType = NioServerSocketChannel.class;
+        }
+        channel = new ServerBootstrap()
+                .group(group)
+                .channel(channelType)
+                .childOption(ChannelOption.TCP_NODELAY, true)
+                .childHandler(new ChannelInitializer<SocketChannel>() {
+                    @Override
+                    protected void initChannel(SocketChannel channel) {
+                        if (ssl != null) {
+                            channel.pipeline().addLast(ssl.newHandler(channel.alloc()));
+                        }
+                        channel.pipeline()
+                                .addLast(new HttpServerCodec())
+                                .addLast(new HttpObjectAggregator(65536))
+                                .addLast(new WebSocketServerProtocolHandler("/ws", null, false, 16 * 1024 * 1024))
+                                .addLast(new SimpleChannelInboundHandler<BinaryWebSocketFrame>() {
+                                    @Override
+                                    protected void channelRead0(ChannelHandlerContext ctx, BinaryWebSocketFrame frame) {
+                                        ctx.writeAndFlush(frame.retain());
+                                    }
+                                });
+                    }
+                })
+                .bind(new InetSocketAddress("127.0.0.1", 0))
+                .sync()
+                .channel();
+    }
+
+    String url() {
+        return url("127.0.0.1");
+    }
+
+    /** The server's url with {@code host}, which must resolve to the loopback address. */
+    String url(String host) {
+        return (ssl != null ? "wss://" : "ws://") + host + ":" + ((InetSocketAddress) channel.localAddress()).getPort() + "/ws";
+    }
+
+    @Override
+    public void close() {
+        channel.close().syncUninterruptibly();
+        group.shutdownGracefully().syncUninterruptibly();
+    }
+}
@@ -0,0 +1,73 @@
+package co.dvchain.trade.websocket;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import co.dvchain.trade.clientmessages.Clientmessages.ClientMessage;
+import co.dvchain.trade.clientmessages.Clientmessages.CreateOrderMessage;
+import co.dvchain.trade.clientmessages.Clientmessages.OrderSide;
+import co.dvchain.trade.clientmessages.Clientmessages.OrderType;
+import co.dvchain.trade.clientmessages.Clientmessages.Types;
+import okio.ByteString;
+
+/**
+ * Encodes a market order the way sendMarketOrder used to, through the protobuf
+ * builders, and through an {@link OrderTemplate}. Both produce the frame handed
+ * to WebSocket.send.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class OrderEncodeBenchmark {
+    private static final String REQUEST_ID = "6b1f0c52-0d8e-4f3a-9a57-2d0c4b7e9f11";
+    private static final String QUOTE_ID = "2f6c1d0e-8a4b-4c5d-9e7f-0a1b2c3d4e5f";
+
+    private OrderTemplate template;
+    private double price;
+
+    @Setup
+    public void setup() {
+        template = OrderTemplate.market("BTC", "USD", OrderSide.Buy);
+        price = 64010.25;
+    }
+
+    @Benchmark
+    public ByteString builders() {
+        CreateOrderMessage order = CreateOrderMessage.newBuilder()
+                .setPrice(price)
+                .setQty(0.5)
+                .setQuoteId(QUOTE_ID)
+                .setSide(OrderSide.Buy)
+                .setOrderType(OrderType.MARKET)
+                .setAsset("BTC")
+                .setCounterAsset("USD")
+                .setClientTag("dv-sample-order")
+                .setExpires(-1)
+                .build();
+        ClientMessage orderMessage = ClientMessage.newBuilder()
+                .setType(Types.requestresponse)
+                .setEvent(REQUEST_ID)
+                .setTopic("createorder")
+                .setCreateOrderRequest(order)
+                .build();
+        return new ByteString(orderMessage.toByteArray());
+    }
+
+    @Benchmark
+    public ByteString template() {
+        return template.encode(REQUEST_ID, price, 0.5, QUOTE_ID, "dv-sample-order");
+    }
+}
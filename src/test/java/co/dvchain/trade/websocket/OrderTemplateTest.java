@@ -0,0 +1,60 @@
+package co.dvchain.trade.websocket;
+
+import static org.junit.Assert.assertArrayEquals;
+
+import org.junit.Test;
+
+import co.dvchain.trade.clientmessages.Clientmessages.ClientMessage;
+import co.dvchain.trade.clientmessages.Clientmessages.CreateOrderMessage;
+import co.dvchain.trade.clientmessages.Clientmessages.OrderSide;
+import co.dvchain.trade.clientmessages.Clientmessages.OrderType;
+import co.dvchain.trade.clientmessages.Clientmessages.Types;
+
+public class OrderTemplateTest {
+    @Test
+    public void testMarketOrderMatchesBuilderOutput() {
+        OrderTemplate template = OrderTemplate.market("BTC", "USD", OrderSide.Buy);
+        CreateOrderMessage order = CreateOrderMessage.newBuilder()
+                .setPrice(64010.25)
+                .setQty(0.5)
+                .setQuoteId("2f6c1d0e-8a4b-4c5d-9e7f-0a1b2c3d4e5f")
+                .setSide(OrderSide.Buy)
+                .setOrderType(OrderType.MARKET)
+                .setAsset("BTC")
+                .setCounterAsset("USD")
+                .setClientTag("dv-sample-order")
+                .setExpires(-1)
+                .build();
+
+        assertArrayEquals(createOrder("req-1", order),
+                template.encode("req-1", 64010.25, 0.5, "2f6c1d0e-8a4b-4c5d-9e7f-0a1b2c3d4e5f", "dv-sample-order").toByteArray());
+    }
+
+    @Test
+    public void testLimitSellOrderMatchesBuilderOutput() {
+        OrderTemplate template = OrderTemplate.limit("ETH", "USD", OrderSide.Sell);
+        CreateOrderMessage order = CreateOrderMessage.newBuilder()
+                .setLimitPrice(3100)
+                .setQty(12)
+                .setSide(OrderSide.Sell)
+                .setOrderType(OrderType.LIMIT)
+                .setAsset("ETH")
+                .setCounterAsset("USD")
+                .setClientTag("tag-é中")
+                .setExpires(-1)
+                .build();
+
+        assertArrayEquals(createOrder("req-2", order),
+                template.encode("req-2", 3100, 12, null, "tag-é中").toByteArray());
+    }
+
+    private static byte[] createOrder(String requestId, CreateOrderMessage order) {
+        return ClientMessage.newBuilder()
+                .setType(Types.requestresponse)
+                .setEvent(requestId)
+                .setTopic("createorder")
+                .setCreateOrderRequest(order)
+                .build()
+                .toByteArray();
+    }
+}
@@ -0,0 +1,117 @@
+package co.dvchain.trade.websocket;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import org.junit.Test;
+
+public class PendingRequestsTest {
+    @Test
+    public void testPutAndRemoveManyIds() {
+        PendingRequests pending = new PendingRequests();
+        int count = 10000;
+        CompletableFuture<?>[] futures = new CompletableFuture<?>[count + 1];
+        for (int id = 1; id <= count; id++) {
+            futures[id] = new CompletableFuture<Object>();
+            pending.put(id, futures[id]);
+        }
+        assertEquals(count, pending.size());
+
+        for (int id = 1; id <= count; id += 2) {
+            assertSame(futures[id], pending.remove(id));
+        }
+        for (int id = 1; id <= count; id += 2) {
+            assertNull(pending.remove(id));
+        }
+        for (int id = 2; id <= count; id += 2) {
+            assertSame(futures[id], pending.remove(id));
+        }
+        assertEquals(0, pending.size());
+    }
+
+    @Test
+    public void testExpiresRequestsPastTheirDeadline() throws Exception {
+        TimingWheel wheel = new TimingWheel(1, 64, "test-request-timeouts");
+        try {
+            PendingRequests pending = new PendingRequests(wheel);
+            CompletableFuture<Object> expiring = new CompletableFuture<>();
+            CompletableFuture<Object> answered = new CompletableFuture<>();
+            pending.put(1, expiring, "limits", 20, TimeUnit.MILLISECONDS);
+            pending.put(2, answered, "limits", 20, TimeUnit.MILLISECONDS);
+            assertSame(answered, pending.remove(2));
+
+            try {
+                expiring.get(5, TimeUnit.SECONDS);
+            } catch (ExecutionException e) {
+                assertTrue(e.getCause() instanceof TimeoutException);
+            }
+            assertTrue(expiring.isCompletedExceptionally());
+            assertEquals(0, pending.size());
+            assertTrue(!answered.isDone());
+        } finally {
+            wheel.stop();
+        }
+    }
+
+    @Test
+    public void testFailAllCompletesEveryFuture() {
+        PendingRequests pending = new PendingRequests();
+        CompletableFuture<Object> first = new CompletableFuture<>();
+        CompletableFuture<Object> second = new CompletableFuture<>();
+        pending.put(1, first);
+        pending.put(17, second);
+
+        assertEquals(2, pending.failAll(new Exception("Connection closed")));
+        assertTrue(first.isCompletedExceptionally());
+        assertTrue(second.isCompletedExceptionally());
+        assertEquals(0, pending.size());
+    }
+
+    @Test
+    public void testTimeoutsScheduledWhileTheTickerRunsAreNotDelayedARotation() throws Exception {
+        // 1 ms ticks, a rotation is about a second.
+        TimingWheel wheel = new TimingWheel(1, 1024, "test-request-timeouts");
+        try {
+            int threads = 4;
+            int perThread = 50000;
+            CountDownLatch expired = new CountDownLatch(threads * perThread);
+            AtomicLong slowest = new AtomicLong();
+            Thread[] schedulers = new Thread[threads];
+            for (int t = 0; t < threads; t++) {
+                schedulers[t] = new Thread(() -> {
+                    for (int i = 0; i < perThread; i++) {
+                        long scheduledAt = System.nanoTime();
+                        wheel.schedule(new TimingWheel.Timeout() {
+                            @Override
+                            void expire() {
+                                slowest.accumulateAndGet(System.nanoTime() - scheduledAt, Math::max);
+                                expired.countDown();
+                            }
+                        }, 0, TimeUnit.MILLISECONDS);
+                        if (i % 500 == 0) {
+                            LockSupport.parkNanos(100_000);
+                        }
+                    }
+                });
+                schedulers[t].start();
+            }
+            for (Thread scheduler : schedulers) {
+                scheduler.join();
+            }
+            assertTrue(expired.await(10, TimeUnit.SECONDS));
+            assertTrue(slowest.get() + " ns", slowest.get() < TimeUnit.MILLISECONDS.toNanos(500));
+        } finally {
+            wheel.stop();
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package co.dvchain.trade.websocket;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import co.dvchain.trade.clientmessages.Clientmessages.Level;
+import co.dvchain.trade.clientmessages.Clientmessages.LevelData;
+import co.dvchain.trade.clientmessages.Clientmessages.OrderSide;
+
+/**
+ * The cost a level update adds on the reader thread, with and without a depth
+ * query after it. {@code update} is what every market pays; {@code
+ * updateAndSize} adds the {@link DepthBook} build that only markets sized
+ * against pay, once per update.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class QuoteManagerBenchmark {
+    private QuoteManager quotes;
+    private MarketHandle btc;
+    private LevelData[] updates;
+    private int next;
+
+    @Setup
+    public void setup() {
+        quotes = new QuoteManager();
+        btc = quotes.handle("BTC/USD");
+        // Distinct instances, as the feed never stores the same quote twice.
+        updates = new LevelData[64];
+        for (int u = 0; u < updates.length; u++) {
+            LevelData.Builder levelData = LevelData.newBuilder()
+                    .setLastUpdate(System.currentTimeMillis() + u)
+                    .setMarket("BTC/USD");
+            for (int i = 0; i < 10; i++) {
+                levelData.addLevels(Level.newBuilder()
+                        .setSellPrice(64000 - i * 5)
+                        .setBuyPrice(64010 + i * 5)
+                        .setMaxQuantity(0.5 * (i + 1)));
+            }
+            updates[u] = levelData.build();
+        }
+    }
+
+    @Benchmark
+    public void update() {
+        quotes.updateQuote(btc.getId(), updates[next++ & (updates.length - 1)]);
+    }
+
+    @Benchmark
+    public double updateAndSize() {
+        quotes.updateQuote(btc.getId(), updates[next++ & (updates.length - 1)]);
+        return btc.depth().priceForQuantity(OrderSide.Buy, 2.5);
+    }
+}
@@ -0,0 +1,110 @@
+package co.dvchain.trade.websocket;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+
+import co.dvchain.trade.clientmessages.Clientmessages.AvailableTickerResponse;
+import co.dvchain.trade.clientmessages.Clientmessages.LevelData;
+
+public class QuoteManagerTest {
+    @Test
+    public void testHandlesFollowQuotesByMarketId() {
+        MarketRegistry markets = new MarketRegistry();
+        markets.register(AvailableTickerResponse.newBuilder().addTickers("BTC/USD").addTickers("ETH/USD").build());
+        QuoteManager quotes = new QuoteManager(markets);
+        assertEquals(1, markets.id("ETH/USD"));
+        assertEquals(-1, markets.id("SOL/USD"));
+
+        MarketHandle eth = quotes.handle("ETH/USD");
+        MarketHandle sol = quotes.handle("SOL/USD");
+        assertEquals(1, eth.getId());
+        assertEquals(2, sol.getId());
+        assertEquals("SOL/USD", markets.name(2));
+        assertNull(eth.latestQuote());
+
+        LevelData update = LevelData.newBuilder().setMarket("ETH/USD").setLastUpdate(7).build();
+        quotes.updateQuote(update);
+        assertSame(update, eth.latestQuote());
+        assertSame(update, quotes.getQuote(1));
+        assertSame(update, quotes.getQuote("ETH/USD"));
+        assertNull(sol.latestQuote());
+    }
+
+    @Test
+    public void testSnapshotsNeverMixUpdates() throws Exception {
+        QuoteManager quotes = new QuoteManager();
+        assertNull(quotes.getQuote("BTC/USD"));
+        assertTrue(quotes.getQuotes(Arrays.asList("BTC/USD", "ETH/USD")).isEmpty());
+
+        AtomicBoolean running = new AtomicBoolean(true);
+        Thread writer = new Thread(() -> {
+            // Each round updates BTC then ETH, so ETH is at most one round behind.
+            for (long round = 1; running.get(); round++) {
+                quotes.updateQuote(LevelData.newBuilder().setMarket("BTC/USD").setLastUpdate(round).build());
+                quotes.updateQuote(LevelData.newBuilder().setMarket("ETH/USD").setLastUpdate(round).build());
+            }
+        });
+        AtomicReference<String> failure = new AtomicReference<>();
+        Thread[] readers = new Thread[2];
+        for (int r = 0; r < readers.length; r++) {
+            readers[r] = new Thread(() -> {
+                while (running.get()) {
+                    Map<String, LevelData> snapshot = quotes.getQuotes(Arrays.asList("BTC/USD", "ETH/USD"));
+                    LevelData btc = snapshot.get("BTC/USD");
+                    LevelData eth = snapshot.get("ETH/USD");
+                    long lag = (btc != null ? btc.getLastUpdate() : 0) - (eth != null ? eth.getLastUpdate() : 0);
+                    if (lag != 0 && lag != 1) {
+                        failure.compareAndSet(null, "BTC " + btc + " ETH " + eth);
+                    }
+                }
+            });
+        }
+        writer.start();
+        for (Thread reader : readers) {
+            reader.start();
+        }
+        Thread.sleep(300);
+        running.set(false);
+        writer.join();
+        for (Thread reader : readers) {
+            reader.join();
+        }
+
+        assertNull(failure.get());
+        assertEquals(quotes.getQuote("BTC/USD").getLastUpdate(), quotes.getQuote("ETH/USD").getLastUpdate());
+    }
+
+    @Test
+    public void testSnapshotsFinishWhileTheirMarketIsUpdatedNonStop() throws Exception {
+        QuoteManager quotes = new QuoteManager();
+        AtomicBoolean running = new AtomicBoolean(true);
+        Thread writer = new Thread(() -> {
+            for (long round = 1; running.get(); round++) {
+                quotes.updateQuote(LevelData.newBuilder().setMarket("BTC/USD").setLastUpdate(round).build());
+            }
+        });
+        writer.start();
+        try {
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            int snapshots = 0;
+            while (snapshots < 10000 && System.nanoTime() < deadline) {
+                quotes.getQuotes(Arrays.asList("BTC/USD", "ETH/USD"));
+                snapshots++;
+            }
+            assertEquals(10000, snapshots);
+        } finally {
+            running.set(false);
+            writer.join();
+        }
+    }
+}
@@ -0,0 +1,168 @@
+package co.dvchain.trade.websocket;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+import co.dvchain.trade.clientmessages.Clientmessages.ClientMessage;
+import co.dvchain.trade.clientmessages.Clientmessages.LevelData;
+import co.dvchain.trade.clientmessages.Clientmessages.Notification;
+import co.dvchain.trade.clientmessages.Clientmessages.OrderFilled;
+import co.dvchain.trade.clientmessages.Clientmessages.OrderCancelled;
+import co.dvchain.trade.clientmessages.Clientmessages.OrderFilledData;
+import co.dvchain.trade.clientmessages.Clientmessages.OrderOpened;
+import co.dvchain.trade.clientmessages.Clientmessages.PricesData;
+import co.dvchain.trade.clientmessages.Clientmessages.Types;
+
+public class RedundantWebsocketClientTest {
+    private static WebsocketClient newClient() {
+        return new WebsocketClient("ws://sandbox.trade.dvchain.co/ws", "183c5515-a3de-44a1-bdeb-cf70aab4c2c6", "126d644fc423bf8dbf1d56027bb7edf3");
+    }
+
+    private static ClientMessage levels(String market, long lastUpdate) {
+        return ClientMessage.newBuilder()
+                .setType(Types.subscribe)
+                .setEvent("levels")
+                .setTopic(market)
+                .setLevelData(LevelData.newBuilder().setMarket(market).setLastUpdate(lastUpdate))
+                .build();
+    }
+
+    @Test
+    public void testDeliversEachUpdateOnceWhicheverConnectionIsFirst() {
+        WebsocketClient primary = newClient();
+        WebsocketClient standby = newClient();
+        RedundantWebsocketClient client = new RedundantWebsocketClient(primary, standby);
+        WebsocketListener listener = mock(WebsocketListener.class);
+        client.setMessageHandler(listener);
+
+        primary.dispatch(levels("BTC/USD", 1));
+        standby.dispatch(levels("BTC/USD", 1));
+        standby.dispatch(levels("BTC/USD", 2));
+        primary.dispatch(levels("BTC/USD", 2));
+        primary.dispatch(levels("ETH/USD", 1));
+
+        ArgumentCaptor<LevelData> delivered = ArgumentCaptor.forClass(LevelData.class);
+        verify(listener, times(3)).onLevelUpdate(delivered.capture());
+        assertEquals(2, delivered.getAllValues().get(1).getLastUpdate());
+        assertEquals("ETH/USD", delivered.getAllValues().get(2).getMarket());
+        assertEquals(2, client.getDuplicateCount());
+    }
+
+    @Test
+    public void testDeduplicatesOrderNotifications() {
+        WebsocketClient primary = newClient();
+        WebsocketClient standby = newClient();
+        RedundantWebsocketClient client = new RedundantWebsocketClient(primary, standby);
+        WebsocketListener listener = mock(WebsocketListener.class);
+        client.setMessageHandler(listener);
+
+        OrderFilled filled = OrderFilled.newBuilder()
+                .setData(OrderFilledData.newBuilder().setId("order-1").setFilledAt("2024-01-01T00:00:00Z"))
+                .build();
+        ClientMessage notification = ClientMessage.newBuilder()
+                .setType(Types.subscribe)
+                .setEvent("notifications")
+                .setTopic("ORDER_FILLED")
+                .setNotification(Notification.newBuilder().setOrderFilled(filled))
+                .build();
+        primary.dispatch(notification);
+        standby.dispatch(notification);
+
+        verify(listener, times(1)).onOrderFill(any(OrderFilled.class));
+        assertSame(primary, client.active());
+    }
+
+    @Test
+    public void testDeliversEachMarketInIncreasingOrderFromTwoReaderThreads() throws Exception {
+        WebsocketClient primary = newClient();
+        WebsocketClient standby = newClient();
+        RedundantWebsocketClient client = new RedundantWebsocketClient(primary, standby);
+        OrderCheckingListener listener = new OrderCheckingListener();
+        client.setMessageHandler(listener);
+
+        int updates = 20000;
+        CountDownLatch start = new CountDownLatch(1);
+        Thread[] readers = new Thread[2];
+        WebsocketClient[] connections = { primary, standby };
+        for (int r = 0; r < readers.length; r++) {
+            WebsocketClient connection = connections[r];
+            int offset = r;
+            readers[r] = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                for (int i = 1; i <= updates; i++) {
+                    // Each reader skips a different half of the updates now and then, so neither is always first.
+                    if ((i / 64) % 2 == offset && i % 3 == 0) {
+                        continue;
+                    }
+                    connection.dispatch(levels("BTC/USD", i));
+                }
+            });
+            readers[r].start();
+        }
+        start.countDown();
+        for (Thread reader : readers) {
+            reader.join();
+        }
+
+        assertEquals(0, listener.overlaps.get());
+        List<Long> delivered = listener.delivered;
+        for (int i = 1; i < delivered.size(); i++) {
+            assertTrue("delivered " + delivered.get(i) + " after " + delivered.get(i - 1), delivered.get(i) > delivered.get(i - 1));
+        }
+        assertEquals(updates, (long) delivered.get(delivered.size() - 1));
+    }
+
+    /** Records one market's timestamps and counts callbacks that overlapped another. */
+    private static final class OrderCheckingListener implements WebsocketListener {
+        final List<Long> delivered = new ArrayList<>();
+        final AtomicInteger inside = new AtomicInteger();
+        final AtomicInteger overlaps = new AtomicInteger();
+
+        @Override
+        public void onLevelUpdate(LevelData levelData) {
+            if (inside.incrementAndGet() != 1) {
+                overlaps.incrementAndGet();
+            }
+            delivered.add(levelData.getLastUpdate());
+            Thread.yield();
+            inside.decrementAndGet();
+        }
+
+        @Override
+        public void onClientMessage(ClientMessage message) {
+        }
+
+        @Override
+        public void onPriceUpdate(PricesData pricesData) {
+        }
+
+        @Override
+        public void onOrderFill(OrderFilled orderFilled) {
+        }
+
+        @Override
+        public void onOrderCancel(OrderCancelled orderCancelled) {
+        }
+
+        @Override
+        public void onOrderOpened(OrderOpened orderOpened) {
+        }
+    }
+}
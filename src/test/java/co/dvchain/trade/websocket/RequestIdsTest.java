@@ -0,0 +1,21 @@
+package co.dvchain.trade.websocket;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+public class RequestIdsTest {
+    @Test
+    public void testRequestIdsRoundTrip() {
+        RequestIds requestIds = new RequestIds("abc12345");
+        long id = requestIds.next();
+        String event = requestIds.format(id).toString();
+
+        assertEquals("abc12345-" + id, event);
+        assertEquals(id, requestIds.parse(event));
+        assertEquals(id, requestIds.last());
+        assertEquals(-1, requestIds.parse("zzz12345-" + id));
+        assertEquals(-1, requestIds.parse("abc12345-12x"));
+        assertEquals(-1, requestIds.parse("6b1f0c52-0d8e-4f3a-9a57-2d0c4b7e9f11"));
+    }
+}
@@ -0,0 +1,101 @@
+package co.dvchain.trade.websocket;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import org.junit.Test;
+
+public class RingBufferTest {
+    @Test
+    public void testDeliversInOrderWithEveryWaitStrategy() throws InterruptedException {
+        for (WaitStrategy waitStrategy : WaitStrategy.values()) {
+            int count = 20000;
+            List<Integer> received = Collections.synchronizedList(new ArrayList<Integer>());
+            CountDownLatch done = new CountDownLatch(count);
+            RingBuffer<Integer> ring = new RingBuffer<Integer>(64, waitStrategy, value -> {
+                received.add(value);
+                done.countDown();
+            }, "ring-test");
+
+            for (int i = 0; i < count; i++) {
+                ring.publish(i);
+            }
+            assertTrue(waitStrategy.name(), done.await(10, TimeUnit.SECONDS));
+            while (ring.depth() > 0) {
+                Thread.sleep(1);
+            }
+            ring.stop();
+
+            for (int i = 0; i < count; i++) {
+                assertEquals(Integer.valueOf(i), received.get(i));
+            }
+            assertTrue(ring.highWaterMark() <= ring.capacity());
+        }
+    }
+
+    @Test
+    public void testReplacementRingWaitsForDrainedPredecessor() throws InterruptedException {
+        int count = 1000;
+        List<Integer> received = Collections.synchronizedList(new ArrayList<Integer>());
+        CountDownLatch done = new CountDownLatch(2 * count);
+        RingBuffer<Integer> first = new RingBuffer<Integer>(2048, WaitStrategy.BLOCKING, value -> {
+            received.add(value);
+            done.countDown();
+            LockSupport.parkNanos(10_000);
+        }, "ring-test");
+        for (int i = 0; i < count; i++) {
+            first.publish(i);
+        }
+        RingBuffer<Integer> second = new RingBuffer<Integer>(2048, WaitStrategy.BLOCKING, value -> {
+            received.add(value);
+            done.countDown();
+        }, "ring-test", first);
+        for (int i = count; i < 2 * count; i++) {
+            second.publish(i);
+        }
+        first.drain();
+        assertEquals(0, first.depth());
+
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        second.stop();
+        for (int i = 0; i < 2 * count; i++) {
+            assertEquals(Integer.valueOf(i), received.get(i));
+        }
+    }
+
+    @Test(timeout = 10_000)
+    public void testPublishingToAFullStoppedRingDoesNotHang() throws InterruptedException {
+        CountDownLatch blocked = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        RingBuffer<Integer> ring = new RingBuffer<Integer>(2, WaitStrategy.BLOCKING, value -> {
+            blocked.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }, "ring-test");
+        ring.publish(0);
+        assertTrue(blocked.await(5, TimeUnit.SECONDS));
+        ring.publish(1);
+        ring.stop();
+        release.countDown();
+        // The consumer finishes 0 and exits, leaving 1 and 2 behind.
+        ring.publish(2);
+        // Full, and nobody left to empty it.
+        ring.publish(3);
+        assertEquals(2, ring.depth());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testRejectsNonPowerOfTwoCapacity() {
+        new RingBuffer<Integer>(100, WaitStrategy.BLOCKING, value -> { }, "ring-test");
+    }
+}
@@ -0,0 +1,129 @@
+package co.dvchain.trade.websocket;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import co.dvchain.trade.clientmessages.Clientmessages.ClientMessage;
+import co.dvchain.trade.clientmessages.Clientmessages.LevelData;
+import co.dvchain.trade.clientmessages.Clientmessages.OrderCancelled;
+import co.dvchain.trade.clientmessages.Clientmessages.OrderFilled;
+import co.dvchain.trade.clientmessages.Clientmessages.OrderOpened;
+import co.dvchain.trade.clientmessages.Clientmessages.PricesData;
+
+public class ShardedListenerTest {
+    private static final String[] MARKETS = { "BTC/USD", "ETH/USD", "LTC/USD", "XRP/USD", "BCH/USD", "ETH/BTC" };
+
+    @Test
+    public void testKeepsEachMarketInOrderOnOneShard() throws InterruptedException {
+        RecordingListener recorder = new RecordingListener();
+        ShardedListener sharded = new ShardedListener(recorder, 3);
+        int updates = 2000;
+        for (int i = 1; i <= updates; i++) {
+            for (String market : MARKETS) {
+                sharded.onLevelUpdate(LevelData.newBuilder().setMarket(market).setLastUpdate(i).build());
+            }
+        }
+        sharded.shutdown(10, TimeUnit.SECONDS);
+
+        for (String market : MARKETS) {
+            List<Long> timestamps = recorder.timestamps.get(market);
+            assertEquals(market, updates, timestamps.size());
+            for (int i = 0; i < updates; i++) {
+                assertEquals(market, Long.valueOf(i + 1), timestamps.get(i));
+            }
+            List<Thread> threads = recorder.threads.get(market);
+            assertEquals(market, 1, threads.size());
+            assertEquals("websocket-shard-" + sharded.shardOf(market), threads.get(0).getName());
+        }
+    }
+
+    @Test
+    public void testShutdownDeliversQueuedUpdatesAndStopsWorkers() throws InterruptedException {
+        RecordingListener recorder = new RecordingListener();
+        recorder.delayNanos = TimeUnit.MICROSECONDS.toNanos(200);
+        ShardedListener sharded = new ShardedListener(recorder, 2);
+        for (int i = 1; i <= 500; i++) {
+            sharded.onLevelUpdate(LevelData.newBuilder().setMarket("BTC/USD").setLastUpdate(i).build());
+        }
+        sharded.shutdown(10, TimeUnit.SECONDS);
+
+        assertEquals(500, recorder.timestamps.get("BTC/USD").size());
+        for (Thread worker : recorder.threads.get("BTC/USD")) {
+            worker.join(TimeUnit.SECONDS.toMillis(5));
+            assertFalse(worker.isAlive());
+        }
+        try {
+            sharded.onLevelUpdate(LevelData.newBuilder().setMarket("BTC/USD").setLastUpdate(501).build());
+            fail("expected RejectedExecutionException");
+        } catch (RejectedExecutionException expected) {
+        }
+    }
+
+    @Test
+    public void testPassesNotificationsThroughOnTheCallingThread() throws InterruptedException {
+        WebsocketListener delegate = mock(WebsocketListener.class);
+        ShardedListener sharded = new ShardedListener(delegate, 2);
+        OrderFilled filled = OrderFilled.getDefaultInstance();
+        sharded.onOrderFill(filled);
+        verify(delegate).onOrderFill(filled);
+        sharded.shutdown(1, TimeUnit.SECONDS);
+    }
+
+    private static final class RecordingListener implements WebsocketListener {
+        final Map<String, List<Long>> timestamps = new ConcurrentHashMap<>();
+        final Map<String, List<Thread>> threads = new ConcurrentHashMap<>();
+        volatile long delayNanos;
+
+        @Override
+        public void onLevelUpdate(LevelData levelData) {
+            String market = levelData.getMarket();
+            timestamps.computeIfAbsent(market, key -> Collections.synchronizedList(new ArrayList<Long>()))
+                    .add(levelData.getLastUpdate());
+            List<Thread> seen = threads.computeIfAbsent(market, key -> Collections.synchronizedList(new ArrayList<Thread>()));
+            synchronized (seen) {
+                if (!seen.contains(Thread.currentThread())) {
+                    seen.add(Thread.currentThread());
+                }
+            }
+            if (delayNanos > 0) {
+                long end = System.nanoTime() + delayNanos;
+                while (System.nanoTime() < end) {
+                    Thread.yield();
+                }
+            }
+        }
+
+        @Override
+        public void onClientMessage(ClientMessage message) {
+        }
+
+        @Override
+        public void onPriceUpdate(PricesData pricesData) {
+        }
+
+        @Override
+        public void onOrderFill(OrderFilled orderFilled) {
+        }
+
+        @Override
+        public void onOrderCancel(OrderCancelled orderCancelled) {
+        }
+
+        @Override
+        public void onOrderOpened(OrderOpened orderOpened) {
+        }
+    }
+}
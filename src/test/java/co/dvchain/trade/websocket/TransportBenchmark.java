@@ -0,0 +1,140 @@
+package co.dvchain.trade.websocket;
+
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Echo round trips through each {@link WebsocketTransport} against a
+ * {@link NettyEchoServer}: {@code roundTrip} is the latency of one frame
+ * there and back, {@code pipelined} keeps {@link #WINDOW} frames in flight and
+ * measures throughput. Frames are the size of a ten level update.
+ */
+@State(Scope.Thread)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TransportBenchmark {
+    static final int WINDOW = 64;
+
+    @Param({"okhttp", "jdk", "netty"})
+    public String transport;
+
+    @Param({"300"})
+    public int frameSize;
+
+    private NettyEchoServer server;
+    private WebsocketTransport engine;
+    private WebsocketTransport.Session session;
+    private ByteBuffer frame;
+    private final SynchronousQueue<Boolean> echoes = new SynchronousQueue<>();
+    private final Semaphore window = new Semaphore(WINDOW);
+    private volatile boolean pipelining;
+    private volatile boolean closing;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        server = new NettyEchoServer();
+        switch (transport) {
+            case "jdk":
+                engine = WebsocketTransport.javaHttpClient();
+                break;
+            case "netty":
+                engine = new NettyTransport();
+                break;
+            default:
+                engine = WebsocketTransport.okHttp();
+        }
+        CountDownLatch opened = new CountDownLatch(1);
+        session = engine.connect(server.url(), Collections.<String, String>emptyMap(), new WebsocketTransport.Listener() {
+            @Override
+            public void onOpen(WebsocketTransport.Session session) {
+                opened.countDown();
+            }
+
+            @Override
+            public void onMessage(WebsocketTransport.Session session, ByteBuffer frame) {
+                if (pipelining) {
+                    window.release();
+                } else {
+                    try {
+                        echoes.put(Boolean.TRUE);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            }
+
+            @Override
+            public void onClosing(WebsocketTransport.Session session, int code, String reason) {
+            }
+
+            @Override
+            public void onClosed(WebsocketTransport.Session session, int code, String reason) {
+            }
+
+            @Override
+            public void onFailure(WebsocketTransport.Session session, Throwable failure) {
+                if (!closing) {
+                    failure.printStackTrace();
+                }
+            }
+        });
+        if (!opened.await(10, TimeUnit.SECONDS)) {
+            throw new IllegalStateException("transport did not connect");
+        }
+        frame = ByteBuffer.allocate(frameSize);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        closing = true;
+        session.close(1000, null);
+        server.close();
+        if (engine instanceof NettyTransport) {
+            ((NettyTransport) engine).shutdown();
+        }
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SampleTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public Boolean roundTrip() throws InterruptedException {
+        pipelining = false;
+        session.send(frame.duplicate());
+        return echoes.take();
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    @OperationsPerInvocation(WINDOW)
+    public void pipelined() throws InterruptedException {
+        pipelining = true;
+        for (int i = 0; i < WINDOW; i++) {
+            window.acquire();
+            session.send(frame.duplicate());
+        }
+        // Drain so the next invocation starts with an empty pipe.
+        window.acquire(WINDOW);
+        window.release(WINDOW);
+    }
+}
@@ -0,0 +1,148 @@
+package co.dvchain.trade.websocket;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+import co.dvchain.trade.clientmessages.Clientmessages.ClientMessage;
+import co.dvchain.trade.clientmessages.Clientmessages.LevelData;
+import co.dvchain.trade.clientmessages.Clientmessages.Notification;
+import co.dvchain.trade.clientmessages.Clientmessages.OrderFilled;
+import co.dvchain.trade.clientmessages.Clientmessages.OrderFilledData;
+import co.dvchain.trade.clientmessages.Clientmessages.Types;
+
+public class WebsocketClientPoolTest {
+    private static WebsocketClient[] newConnections(int count) {
+        WebsocketClient[] connections = new WebsocketClient[count];
+        for (int i = 0; i < connections.length; i++) {
+            connections[i] = new WebsocketClient("ws://sandbox.trade.dvchain.co/ws", "183c5515-a3de-44a1-bdeb-cf70aab4c2c6", "126d644fc423bf8dbf1d56027bb7edf3");
+        }
+        return connections;
+    }
+
+    private static ClientMessage levels(String market, long lastUpdate) {
+        return ClientMessage.newBuilder()
+                .setType(Types.subscribe)
+                .setEvent("levels")
+                .setTopic(market)
+                .setLevelData(LevelData.newBuilder().setMarket(market).setLastUpdate(lastUpdate))
+                .build();
+    }
+
+    @Test
+    public void testSpreadsAndRebalancesByMessageRate() {
+        WebsocketClient[] connections = newConnections(2);
+        WebsocketClientPool pool = new WebsocketClientPool(connections);
+        WebsocketListener listener = mock(WebsocketListener.class);
+        pool.setMessageHandler(listener);
+
+        pool.subscribeLevels(Arrays.asList("BTC/USD", "ETH/USD", "SOL/USD", "LTC/USD"));
+        assertEquals(0, pool.connectionOfLevel("BTC/USD"));
+        assertEquals(1, pool.connectionOfLevel("ETH/USD"));
+        assertEquals(0, pool.connectionOfLevel("SOL/USD"));
+        assertEquals(1, pool.connectionOfLevel("LTC/USD"));
+
+        for (int i = 1; i <= 100; i++) {
+            connections[0].dispatch(levels("BTC/USD", i));
+            connections[0].dispatch(levels("SOL/USD", i));
+        }
+        connections[1].dispatch(levels("ETH/USD", 1));
+        connections[1].dispatch(levels("LTC/USD", 1));
+        verify(listener, times(202)).onLevelUpdate(any(LevelData.class));
+
+        assertEquals(2, pool.rebalance());
+        assertNotEquals(pool.connectionOfLevel("BTC/USD"), pool.connectionOfLevel("SOL/USD"));
+        assertNotEquals(pool.connectionOfLevel("ETH/USD"), pool.connectionOfLevel("LTC/USD"));
+    }
+
+    @Test
+    public void testDropsCopiesWhileAMovedSymbolIsOnBothConnections() {
+        WebsocketClient[] connections = newConnections(2);
+        WebsocketClientPool pool = new WebsocketClientPool(connections);
+        WebsocketListener listener = mock(WebsocketListener.class);
+        pool.setMessageHandler(listener);
+        pool.subscribeLevels(Arrays.asList("BTC/USD", "ETH/USD", "SOL/USD"));
+        for (int i = 1; i <= 100; i++) {
+            connections[0].dispatch(levels("BTC/USD", i));
+            connections[0].dispatch(levels("SOL/USD", i));
+        }
+        pool.rebalance();
+        String moved = pool.connectionOfLevel("BTC/USD") == 1 ? "BTC/USD" : "SOL/USD";
+        assertEquals(1, pool.connectionOfLevel(moved));
+
+        // Right after the move both connections carry the symbol.
+        WebsocketListener merged = mock(WebsocketListener.class);
+        pool.setMessageHandler(merged);
+        connections[0].dispatch(levels(moved, 1));
+        connections[1].dispatch(levels(moved, 1));
+        connections[1].dispatch(levels(moved, 2));
+        connections[1].dispatch(levels(moved, 2));
+        connections[0].dispatch(levels(moved, 2));
+        connections[0].dispatch(levels(moved, 1));
+
+        ArgumentCaptor<LevelData> delivered = ArgumentCaptor.forClass(LevelData.class);
+        verify(merged, times(3)).onLevelUpdate(delivered.capture());
+        assertEquals(1, delivered.getAllValues().get(0).getLastUpdate());
+        assertEquals(2, delivered.getAllValues().get(1).getLastUpdate());
+        assertEquals(2, delivered.getAllValues().get(2).getLastUpdate());
+        assertEquals(3, pool.getDuplicateCount());
+    }
+
+    @Test
+    public void testPassesUpdatesOnAsTheyAreOutsideAMove() {
+        WebsocketClient[] connections = newConnections(2);
+        WebsocketClientPool pool = new WebsocketClientPool(connections);
+        WebsocketListener listener = mock(WebsocketListener.class);
+        pool.setMessageHandler(listener);
+        pool.subscribeLevel("BTC/USD");
+
+        // Equal timestamps and a clock going back are the feed's business, not copies.
+        connections[0].dispatch(levels("BTC/USD", 5));
+        connections[0].dispatch(levels("BTC/USD", 5));
+        connections[0].dispatch(levels("BTC/USD", 1));
+        pool.unsubscribeLevel("BTC/USD");
+        pool.subscribeLevel("BTC/USD");
+        connections[0].dispatch(levels("BTC/USD", 1));
+
+        verify(listener, times(4)).onLevelUpdate(any(LevelData.class));
+        assertEquals(0, pool.getDuplicateCount());
+    }
+
+    @Test
+    public void testForwardsOrderNotificationsFromEveryConnectionOnce() {
+        WebsocketClient[] connections = newConnections(3);
+        WebsocketClientPool pool = new WebsocketClientPool(connections);
+        WebsocketListener listener = mock(WebsocketListener.class);
+        pool.setMessageHandler(listener);
+
+        // Connection 0 is down, so only the others see the first fill.
+        connections[1].dispatch(filled("order-1"));
+        connections[2].dispatch(filled("order-1"));
+        connections[0].dispatch(filled("order-2"));
+        connections[1].dispatch(filled("order-2"));
+        connections[2].dispatch(filled("order-2"));
+
+        ArgumentCaptor<OrderFilled> delivered = ArgumentCaptor.forClass(OrderFilled.class);
+        verify(listener, times(2)).onOrderFill(delivered.capture());
+        assertEquals("order-1", delivered.getAllValues().get(0).getData().getId());
+        assertEquals("order-2", delivered.getAllValues().get(1).getData().getId());
+    }
+
+    private static ClientMessage filled(String orderId) {
+        return ClientMessage.newBuilder()
+                .setType(Types.subscribe)
+                .setEvent("notifications")
+                .setTopic("ORDER_FILLED")
+                .setNotification(Notification.newBuilder().setOrderFilled(OrderFilled.newBuilder()
+                        .setData(OrderFilledData.newBuilder().setId(orderId).setFilledAt("2024-01-01T00:00:00Z"))))
+                .build();
+    }
+}
@@ -1,17 +1,46 @@
 package co.dvchain.trade.websocket;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.atLeastOnce;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
 import org.junit.Test;
+import org.mockito.ArgumentCaptor;
 
+import co.dvchain.trade.clientmessages.Clientmessages.ClientMessage;
+import co.dvchain.trade.clientmessages.Clientmessages.ErrorMessage;
+import co.dvchain.trade.clientmessages.Clientmessages.Level;
+import co.dvchain.trade.clientmessages.Clientmessages.LevelData;
+import co.dvchain.trade.clientmessages.Clientmessages.LimitsResponse;
+import co.dvchain.trade.clientmessages.Clientmessages.Notification;
+import co.dvchain.trade.clientmessages.Clientmessages.OrderOpened;
+import co.dvchain.trade.clientmessages.Clientmessages.Types;
 import okhttp3.OkHttpClient;
 import okhttp3.Request;
 import okhttp3.WebSocket;
 import okhttp3.WebSocketListener;
+import okio.ByteString;
 
 public class WebsocketClientTest {
     @Test
@@ -24,5 +53,315 @@ public class WebsocketClientTest {
         client.connect();
         verify(mockClient).newWebSocket(any(Request.class), any(WebSocketListener.class));
     }
-    
+
+    @Test
+    public void testDispatchesUpdatesAndNotifications() {
+        WebsocketClient client = new WebsocketClient("ws://sandbox.trade.dvchain.co/ws", "183c5515-a3de-44a1-bdeb-cf70aab4c2c6", "126d644fc423bf8dbf1d56027bb7edf3");
+        WebsocketListener listener = mock(WebsocketListener.class);
+        client.setMessageHandler(listener);
+
+        LevelData levelData = LevelData.newBuilder().setMarket("BTC/USD").setLastUpdate(1).build();
+        client.dispatch(ClientMessage.newBuilder()
+                .setType(Types.subscribe)
+                .setEvent("levels")
+                .setTopic("BTC/USD")
+                .setLevelData(levelData)
+                .build());
+        OrderOpened orderOpened = OrderOpened.newBuilder().setTopic("ORDER_OPENED").build();
+        client.dispatch(ClientMessage.newBuilder()
+                .setType(Types.subscribe)
+                .setEvent("notifications")
+                .setTopic("ORDER_OPENED")
+                .setNotification(Notification.newBuilder().setOrderOpened(orderOpened))
+                .build());
+
+        verify(listener).onLevelUpdate(levelData);
+        verify(listener).onOrderOpened(orderOpened);
+    }
+
+    @Test
+    public void testErrorTopicFailsPendingRequest() throws Exception {
+        OkHttpClient mockClient = mock(OkHttpClient.class);
+        WebSocket mockSocket = mock(WebSocket.class);
+        ArgumentCaptor<WebSocketListener> socketListener = ArgumentCaptor.forClass(WebSocketListener.class);
+        when(mockClient.newWebSocket(any(Request.class), socketListener.capture())).thenReturn(mockSocket);
+        WebsocketClient client = new WebsocketClient("ws://sandbox.trade.dvchain.co/ws", "183c5515-a3de-44a1-bdeb-cf70aab4c2c6", "126d644fc423bf8dbf1d56027bb7edf3");
+        client.setClient(mockClient);
+        client.connect();
+        socketListener.getValue().onOpen(mockSocket, null);
+
+        CompletableFuture<LimitsResponse> future = client.getLimits();
+        ArgumentCaptor<ByteString> sent = ArgumentCaptor.forClass(ByteString.class);
+        verify(mockSocket, atLeastOnce()).send(sent.capture());
+        ClientMessage request = ClientMessage.parseFrom(sent.getValue().toByteArray());
+
+        ClientMessage response = ClientMessage.newBuilder()
+                .setType(Types.requestresponse)
+                .setEvent(request.getEvent())
+                .setTopic("error")
+                .setErrorMessage(ErrorMessage.newBuilder().setMessage("rejected"))
+                .build();
+        socketListener.getValue().onMessage(mockSocket, ByteString.of(response.toByteArray()));
+
+        assertTrue(future.isCompletedExceptionally());
+        try {
+            future.get();
+            fail("expected ExecutionException");
+        } catch (ExecutionException e) {
+            assertEquals("rejected", e.getCause().getMessage());
+        }
+    }
+
+    @Test
+    public void testLazyDecodingSkipsUnsubscribedMarkets() {
+        OkHttpClient mockClient = mock(OkHttpClient.class);
+        WebSocket mockSocket = mock(WebSocket.class);
+        ArgumentCaptor<WebSocketListener> socketListener = ArgumentCaptor.forClass(WebSocketListener.class);
+        when(mockClient.newWebSocket(any(Request.class), socketListener.capture())).thenReturn(mockSocket);
+        WebsocketClient client = new WebsocketClient("ws://sandbox.trade.dvchain.co/ws", "183c5515-a3de-44a1-bdeb-cf70aab4c2c6", "126d644fc423bf8dbf1d56027bb7edf3");
+        WebsocketListener listener = mock(WebsocketListener.class);
+        client.setClient(mockClient);
+        client.setMessageHandler(listener);
+        client.setLazyDecoding(true);
+        client.connect();
+        socketListener.getValue().onOpen(mockSocket, null);
+        client.subscribeLevel("BTC/USD");
+
+        for (String market : new String[] { "BTC/USD", "ETH/USD" }) {
+            ClientMessage update = ClientMessage.newBuilder()
+                    .setType(Types.subscribe)
+                    .setEvent("levels")
+                    .setTopic(market)
+                    .setLevelData(LevelData.newBuilder().setMarket(market).setLastUpdate(1))
+                    .build();
+            socketListener.getValue().onMessage(mockSocket, ByteString.of(update.toByteArray()));
+        }
+
+        ArgumentCaptor<LevelData> delivered = ArgumentCaptor.forClass(LevelData.class);
+        verify(listener).onLevelUpdate(delivered.capture());
+        assertEquals("BTC/USD", delivered.getValue().getMarket());
+        assertEquals(1, client.getSkippedFrames());
+    }
+
+    @Test
+    public void testReplacingTheDispatchRingKeepsEveryFrameInOrder() throws InterruptedException {
+        OkHttpClient mockClient = mock(OkHttpClient.class);
+        WebSocket mockSocket = mock(WebSocket.class);
+        ArgumentCaptor<WebSocketListener> socketListener = ArgumentCaptor.forClass(WebSocketListener.class);
+        when(mockClient.newWebSocket(any(Request.class), socketListener.capture())).thenReturn(mockSocket);
+        WebsocketClient client = new WebsocketClient("ws://sandbox.trade.dvchain.co/ws", "183c5515-a3de-44a1-bdeb-cf70aab4c2c6", "126d644fc423bf8dbf1d56027bb7edf3");
+        client.setClient(mockClient);
+        int count = 300;
+        List<Long> received = Collections.synchronizedList(new ArrayList<Long>());
+        CountDownLatch done = new CountDownLatch(count);
+        client.setMessageHandler(new WebsocketListenerImpl() {
+            @Override
+            public void onLevelUpdate(LevelData levelData) {
+                // Slow enough that frames are still queued when the ring is replaced.
+                LockSupport.parkNanos(20_000);
+                received.add(levelData.getLastUpdate());
+                done.countDown();
+            }
+        });
+        client.subscribeLevel("BTC/USD");
+        client.enableDispatchRing(1024, WaitStrategy.BLOCKING);
+        client.connect();
+        socketListener.getValue().onOpen(mockSocket, null);
+
+        for (int i = 0; i < count; i++) {
+            if (i % 100 == 50) {
+                client.enableDispatchRing(64, i < 200 ? WaitStrategy.BLOCKING : WaitStrategy.YIELDING);
+            }
+            socketListener.getValue().onMessage(mockSocket, ByteString.of(levels("BTC/USD", i, 1).toByteArray()));
+        }
+
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        for (int i = 0; i < count; i++) {
+            assertEquals(Long.valueOf(i), received.get(i));
+        }
+        client.disconnect();
+    }
+
+    @Test
+    public void testLevelArrayHandlerReadsFramesIntoReusedArrays() {
+        OkHttpClient mockClient = mock(OkHttpClient.class);
+        WebSocket mockSocket = mock(WebSocket.class);
+        ArgumentCaptor<WebSocketListener> socketListener = ArgumentCaptor.forClass(WebSocketListener.class);
+        when(mockClient.newWebSocket(any(Request.class), socketListener.capture())).thenReturn(mockSocket);
+        WebsocketClient client = new WebsocketClient("ws://sandbox.trade.dvchain.co/ws", "183c5515-a3de-44a1-bdeb-cf70aab4c2c6", "126d644fc423bf8dbf1d56027bb7edf3");
+        client.setClient(mockClient);
+        List<double[][]> arrays = new ArrayList<>();
+        List<double[][]> copies = new ArrayList<>();
+        List<Object[]> calls = new ArrayList<>();
+        client.setLevelArrayHandler((marketId, market, lastUpdate, buyPrices, sellPrices, maxQuantities, depth) -> {
+            arrays.add(new double[][] { buyPrices, sellPrices, maxQuantities });
+            copies.add(new double[][] {
+                    Arrays.copyOf(buyPrices, depth), Arrays.copyOf(sellPrices, depth), Arrays.copyOf(maxQuantities, depth) });
+            calls.add(new Object[] { market, lastUpdate, depth, marketId });
+        });
+        MarketHandle btc = client.subscribeLevel("BTC/USD");
+        client.connect();
+        socketListener.getValue().onOpen(mockSocket, null);
+
+        socketListener.getValue().onMessage(mockSocket, ByteString.of(levels("BTC/USD", 7, 3).toByteArray()));
+        socketListener.getValue().onMessage(mockSocket, ByteString.of(levels("ETH/USD", 8, 2).toByteArray()));
+
+        assertEquals(2, calls.size());
+        assertEquals("BTC/USD", calls.get(0)[0]);
+        assertEquals(7L, calls.get(0)[1]);
+        assertEquals(3, calls.get(0)[2]);
+        assertEquals(btc.getId(), calls.get(0)[3]);
+        assertArrayEquals(new double[] { 101, 102, 103 }, copies.get(0)[0], 0);
+        assertArrayEquals(new double[] { 99, 98, 97 }, copies.get(0)[1], 0);
+        assertArrayEquals(new double[] { 1, 2, 3 }, copies.get(0)[2], 0);
+        assertEquals("ETH/USD", calls.get(1)[0]);
+        assertEquals(8L, calls.get(1)[1]);
+        assertEquals(2, calls.get(1)[2]);
+        // Not subscribed, so it has no id.
+        assertEquals(-1, calls.get(1)[3]);
+        assertArrayEquals(new double[] { 101, 102 }, copies.get(1)[0], 0);
+        // The same arrays are handed out again, the first update's third level is left behind.
+        for (int i = 0; i < 3; i++) {
+            assertSame(arrays.get(0)[i], arrays.get(1)[i]);
+        }
+        assertEquals(103, arrays.get(1)[0][2], 0);
+    }
+
+    @Test
+    public void testTracksQuotesOfSubscribedMarketsOnly() {
+        WebsocketClient client = new WebsocketClient("ws://sandbox.trade.dvchain.co/ws", "183c5515-a3de-44a1-bdeb-cf70aab4c2c6", "126d644fc423bf8dbf1d56027bb7edf3");
+        List<MarketHandle> handles = client.subscribeLevels(Arrays.asList("BTC/USD", "ETH/USD"));
+        assertEquals(2, handles.size());
+        assertEquals("ETH/USD", handles.get(1).getMarket());
+
+        client.dispatch(levels("ETH/USD", 5, 1));
+        client.dispatch(levels("SOL/USD", 6, 1));
+
+        assertNull(handles.get(0).latestQuote());
+        assertEquals(5, handles.get(1).latestQuote().getLastUpdate());
+        assertEquals(-1, client.getMarkets().id("SOL/USD"));
+    }
+
+    private static ClientMessage levels(String market, long lastUpdate, int depth) {
+        LevelData.Builder levelData = LevelData.newBuilder().setMarket(market).setLastUpdate(lastUpdate);
+        for (int i = 1; i <= depth; i++) {
+            levelData.addLevels(Level.newBuilder().setBuyPrice(100 + i).setSellPrice(100 - i).setMaxQuantity(i));
+        }
+        return ClientMessage.newBuilder()
+                .setType(Types.subscribe)
+                .setEvent("levels")
+                .setTopic(market)
+                .setLevelData(levelData)
+                .build();
+    }
+
+    @Test
+    public void testConnectCanBeRetriedAfterTheSocketFailsToStart() {
+        OkHttpClient mockClient = mock(OkHttpClient.class);
+        WebSocket mockSocket = mock(WebSocket.class);
+        when(mockClient.newWebSocket(any(Request.class), any(WebSocketListener.class)))
+                .thenThrow(new IllegalArgumentException("bad url"))
+                .thenReturn(mockSocket);
+        WebsocketClient client = new WebsocketClient("ws://sandbox.trade.dvchain.co/ws", "183c5515-a3de-44a1-bdeb-cf70aab4c2c6", "126d644fc423bf8dbf1d56027bb7edf3");
+        client.setClient(mockClient);
+        try {
+            client.connect();
+            fail("expected IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+            assertEquals("bad url", e.getMessage());
+        }
+        assertEquals(ConnectionState.DISCONNECTED, client.getConnectionState());
+
+        client.connect();
+        assertEquals(ConnectionState.CONNECTING, client.getConnectionState());
+        verify(mockClient, times(2)).newWebSocket(any(Request.class), any(WebSocketListener.class));
+        client.disconnect();
+    }
+
+    @Test
+    public void testReconnectsOnceAndIgnoresStaleSocket() {
+        OkHttpClient mockClient = mock(OkHttpClient.class);
+        WebSocket mockSocket = mock(WebSocket.class);
+        ArgumentCaptor<WebSocketListener> socketListener = ArgumentCaptor.forClass(WebSocketListener.class);
+        when(mockClient.newWebSocket(any(Request.class), socketListener.capture())).thenReturn(mockSocket);
+        WebsocketClient client = new WebsocketClient("ws://sandbox.trade.dvchain.co/ws", "183c5515-a3de-44a1-bdeb-cf70aab4c2c6", "126d644fc423bf8dbf1d56027bb7edf3");
+        client.setClient(mockClient);
+        client.setReconnectBackoff(1, 1, TimeUnit.MILLISECONDS);
+        client.connect();
+        client.connect();
+        WebSocketListener first = socketListener.getValue();
+        first.onOpen(mockSocket, null);
+        assertEquals(ConnectionState.OPEN, client.getConnectionState());
+
+        first.onFailure(mockSocket, new IOException("reset"), null);
+        first.onClosed(mockSocket, 1006, "reset");
+        verify(mockClient, timeout(2000).times(2)).newWebSocket(any(Request.class), any(WebSocketListener.class));
+        WebSocketListener second = socketListener.getValue();
+        assertTrue(first != second);
+        assertEquals(ConnectionState.CONNECTING, client.getConnectionState());
+
+        second.onOpen(mockSocket, null);
+        first.onClosed(mockSocket, 1006, "reset");
+        assertEquals(ConnectionState.OPEN, client.getConnectionState());
+        assertEquals(1, client.getReconnectCount());
+        verify(mockClient, times(2)).newWebSocket(any(Request.class), any(WebSocketListener.class));
+        client.disconnect();
+        assertEquals(ConnectionState.DISCONNECTED, client.getConnectionState());
+    }
+
+    @Test
+    public void testBackoffIsCappedAndJittered() {
+        WebsocketClient client = new WebsocketClient("ws://sandbox.trade.dvchain.co/ws", "183c5515-a3de-44a1-bdeb-cf70aab4c2c6", "126d644fc423bf8dbf1d56027bb7edf3");
+        client.setReconnectBackoff(100, 1000, TimeUnit.MILLISECONDS);
+        for (int attempt = 0; attempt < 40; attempt++) {
+            long expected = Math.min(1000, attempt < 31 ? 100L << attempt : 1000);
+            long delay = client.backoffDelay(attempt);
+            assertTrue(delay >= expected / 2 && delay <= expected);
+        }
+    }
+
+    @Test
+    public void testSubscriptionsAreRefCountedAndResentOnOpen() throws Exception {
+        OkHttpClient mockClient = mock(OkHttpClient.class);
+        WebSocket mockSocket = mock(WebSocket.class);
+        ArgumentCaptor<WebSocketListener> socketListener = ArgumentCaptor.forClass(WebSocketListener.class);
+        when(mockClient.newWebSocket(any(Request.class), socketListener.capture())).thenReturn(mockSocket);
+        WebsocketClient client = new WebsocketClient("ws://sandbox.trade.dvchain.co/ws", "183c5515-a3de-44a1-bdeb-cf70aab4c2c6", "126d644fc423bf8dbf1d56027bb7edf3");
+        client.setClient(mockClient);
+        client.subscribeLevels(Arrays.asList("BTC/USD", "ETH/USD", "BTC/USD"));
+        client.subscribePrices("BTC/USD");
+        client.connect();
+        socketListener.getValue().onOpen(mockSocket, null);
+
+        ArgumentCaptor<ByteString> sent = ArgumentCaptor.forClass(ByteString.class);
+        verify(mockSocket, times(5)).send(sent.capture());
+        List<ByteString> frames = sent.getAllValues();
+        ClientMessage last = ClientMessage.parseFrom(frames.get(4).toByteArray());
+        assertEquals("prices", last.getEvent());
+        assertEquals("BTC/USD", last.getTopic());
+
+        client.unsubscribeLevel("BTC/USD");
+        verify(mockSocket, times(5)).send(any(ByteString.class));
+        client.unsubscribeLevel("BTC/USD");
+        verify(mockSocket, times(6)).send(sent.capture());
+        ClientMessage unsubscribe = ClientMessage.parseFrom(sent.getValue().toByteArray());
+        assertEquals(Types.unsubscribe, unsubscribe.getType());
+        assertEquals("levels", unsubscribe.getEvent());
+        assertEquals("BTC/USD", unsubscribe.getTopic());
+    }
+
+    @Test
+    public void testWarmUpLeavesClientUntouched() {
+        WebsocketClient client = new WebsocketClient("ws://sandbox.trade.dvchain.co/ws", "183c5515-a3de-44a1-bdeb-cf70aab4c2c6", "126d644fc423bf8dbf1d56027bb7edf3");
+        WebsocketListener listener = mock(WebsocketListener.class);
+        client.setMessageHandler(listener);
+        client.setLazyDecoding(true);
+
+        WarmUpReport report = client.warmUp(200, TimeUnit.MILLISECONDS);
+
+        assertTrue(report.getIterations() > 0);
+        assertEquals(ConnectionState.DISCONNECTED, client.getConnectionState());
+        assertEquals(0, client.getPendingRequestCount());
+        verify(listener, times(0)).onLevelUpdate(any(LevelData.class));
+    }
 }
@@ -0,0 +1,196 @@
+package co.dvchain.trade.websocket;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.security.KeyStore;
+import java.security.cert.X509Certificate;
+import java.util.Collections;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLHandshakeException;
+
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import io.netty.handler.ssl.SslContext;
+import io.netty.handler.ssl.SslContextBuilder;
+
+public class WebsocketTransportTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private LocalWebsocketServer server;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new LocalWebsocketServer();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        server.close();
+    }
+
+    @Test
+    public void testOkHttpEchoesFrames() throws Exception {
+        assertEchoes(WebsocketTransport.okHttp());
+    }
+
+    @Test
+    public void testJavaHttpClientEchoesFrames() throws Exception {
+        WebsocketTransport transport;
+        try {
+            transport = WebsocketTransport.javaHttpClient();
+        } catch (UnsupportedOperationException e) {
+            Assume.assumeNoException(e);
+            return;
+        }
+        assertEchoes(transport);
+    }
+
+    @Test
+    public void testNettyEchoesFrames() throws Exception {
+        NettyTransport transport = new NettyTransport();
+        try {
+            assertEchoes(transport);
+        } finally {
+            transport.shutdown();
+        }
+    }
+
+    @Test
+    public void testNettyVerifiesTheServerHostname() throws Exception {
+        // A certificate the client trusts, but issued for localhost only.
+        char[] password = "changeit".toCharArray();
+        File keyStoreFile = new File(folder.getRoot(), "server.p12");
+        Process keytool = new ProcessBuilder(
+                new File(System.getProperty("java.home"), "bin/keytool").getPath(),
+                "-genkeypair", "-alias", "server", "-keyalg", "RSA", "-keysize", "2048", "-validity", "2",
+                "-dname", "CN=localhost", "-ext", "SAN=dns:localhost",
+                "-storetype", "PKCS12", "-keystore", keyStoreFile.getPath(),
+                "-storepass", "changeit", "-keypass", "changeit")
+                .redirectErrorStream(true)
+                .start();
+        assertTrue(keytool.waitFor(60, TimeUnit.SECONDS));
+        assertEquals(0, keytool.exitValue());
+        KeyStore keyStore = KeyStore.getInstance("PKCS12");
+        try (InputStream in = new FileInputStream(keyStoreFile)) {
+            keyStore.load(in, password);
+        }
+        KeyManagerFactory keyManagers = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
+        keyManagers.init(keyStore, password);
+        SslContext clientContext = SslContextBuilder.forClient()
+                .trustManager((X509Certificate) keyStore.getCertificate("server"))
+                .build();
+
+        NettyEchoServer tlsServer = new NettyEchoServer(SslContextBuilder.forServer(keyManagers).build());
+        NettyTransport transport = new NettyTransport(1, clientContext);
+        try {
+            RecordingListener matching = new RecordingListener();
+            transport.connect(tlsServer.url("localhost"), Collections.emptyMap(), matching);
+            assertTrue(matching.opened.await(5, TimeUnit.SECONDS));
+
+            RecordingListener mismatched = new RecordingListener();
+            transport.connect(tlsServer.url("127.0.0.1"), Collections.emptyMap(), mismatched);
+            Throwable failure = mismatched.failures.poll(5, TimeUnit.SECONDS);
+            assertNotNull(failure);
+            while (failure.getCause() != null && !(failure instanceof SSLHandshakeException)) {
+                failure = failure.getCause();
+            }
+            assertTrue(String.valueOf(failure), failure instanceof SSLHandshakeException);
+            assertEquals(1, mismatched.opened.getCount());
+        } finally {
+            transport.shutdown();
+            tlsServer.close();
+        }
+    }
+
+    private void assertEchoes(WebsocketTransport transport) throws Exception {
+        CountDownLatch opened = new CountDownLatch(1);
+        BlockingQueue<byte[]> received = new LinkedBlockingQueue<>();
+        WebsocketTransport.Session session = transport.connect(server.url(), Collections.singletonMap("DV-API-KEY", "key"),
+                new WebsocketTransport.Listener() {
+                    @Override
+                    public void onOpen(WebsocketTransport.Session session) {
+                        opened.countDown();
+                    }
+
+                    @Override
+                    public void onMessage(WebsocketTransport.Session session, ByteBuffer frame) {
+                        byte[] bytes = new byte[frame.remaining()];
+                        frame.get(bytes);
+                        received.add(bytes);
+                    }
+
+                    @Override
+                    public void onClosing(WebsocketTransport.Session session, int code, String reason) {
+                    }
+
+                    @Override
+                    public void onClosed(WebsocketTransport.Session session, int code, String reason) {
+                    }
+
+                    @Override
+                    public void onFailure(WebsocketTransport.Session session, Throwable failure) {
+                    }
+                });
+        assertTrue(opened.await(5, TimeUnit.SECONDS));
+
+        byte[] small = {1, 2, 3};
+        byte[] large = new byte[70000];
+        for (int i = 0; i < large.length; i++) {
+            large[i] = (byte) i;
+        }
+        // The buffer is reused straight away; send must not keep it.
+        ByteBuffer buffer = ByteBuffer.wrap(small.clone());
+        assertTrue(session.send(buffer));
+        buffer.put(0, (byte) 9);
+        assertTrue(session.send(ByteBuffer.wrap(large)));
+
+        assertArrayEquals(small, received.poll(5, TimeUnit.SECONDS));
+        assertArrayEquals(large, received.poll(5, TimeUnit.SECONDS));
+        session.close(1000, "done");
+    }
+
+    private static final class RecordingListener implements WebsocketTransport.Listener {
+        final CountDownLatch opened = new CountDownLatch(1);
+        final BlockingQueue<Throwable> failures = new LinkedBlockingQueue<>();
+
+        @Override
+        public void onOpen(WebsocketTransport.Session session) {
+            opened.countDown();
+        }
+
+        @Override
+        public void onMessage(WebsocketTransport.Session session, ByteBuffer frame) {
+        }
+
+        @Override
+        public void onClosing(WebsocketTransport.Session session, int code, String reason) {
+        }
+
+        @Override
+        public void onClosed(WebsocketTransport.Session session, int code, String reason) {
+        }
+
+        @Override
+        public void onFailure(WebsocketTransport.Session session, Throwable failure) {
+            failures.add(failure);
+        }
+    }
+}